@@ -0,0 +1,248 @@
+package com.esplibrary.bluetooth;
+
+import com.esplibrary.packets.ESPPacket;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Tracks the {@link ESPPacket packets} written by the library that are awaiting an echo.
+ *
+ * <p>Pending packets are indexed by packet ID and destination, and every entry keeps a copy of the
+ * byte data as it was written along with its hash, so matching a received packet only compares
+ * the few packets with the same packet ID, destination and hash. The copy is what the echo is
+ * compared to, so a packet that is re-framed for another V1 type while pending still matches. Entries are additionally kept in a FIFO in transmission
+ * order, which is also deadline order, so expiring packets only looks at the oldest entries.</p>
+ *
+ * <p>This class is not thread-safe; callers synchronize on the tracker instance. Only {@link
+ * #isEmpty()} may be called without synchronizing.</p>
+ */
+final class EchoTracker {
+
+    /**
+     * Number of addressable ESP devices; destinations are identified by the low nibble of the
+     * destination byte.
+     */
+    final static int DESTINATION_COUNT = 16;
+
+    private final static class Entry {
+        final ESPPacket packet;
+        final byte [] data;
+        final int hash;
+        final int index;
+        Entry next;
+        boolean removed;
+
+        Entry(ESPPacket packet, int index) {
+            this.packet = packet;
+            this.data = packet.getPacketData().clone();
+            this.hash = Arrays.hashCode(data);
+            this.index = index;
+        }
+    }
+
+    /**
+     * Chains of pending entries, indexed by {@link #indexOf(int, int)}. The most recent entry is
+     * at the head of its chain.
+     */
+    private final Entry [] mIndex = new Entry[256 * DESTINATION_COUNT];
+    /**
+     * Entries in transmission order. Removed entries are skipped lazily.
+     */
+    private final ArrayDeque<Entry> mDeadlines = new ArrayDeque<>();
+    private final int [] mCounts = new int[DESTINATION_COUNT];
+    private int mSize = 0;
+    /**
+     * Published copy of mSize == 0 for the lock-free {@link #isEmpty()}.
+     */
+    private volatile boolean mEmpty = true;
+
+    private static int indexOf(int packetId, int destination) {
+        return ((packetId & 0xFF) * DESTINATION_COUNT) | (destination & 0x0F);
+    }
+
+    /**
+     * Starts tracking packet. Must be called once packet has been framed for the V1 type it is
+     * written with.
+     *
+     * @param packet Written packet that will be echoed
+     */
+    void add(ESPPacket packet) {
+        final int index = indexOf(packet.getPacketID(), packet.getDestinationByte());
+        final Entry entry = new Entry(packet, index);
+        entry.next = mIndex[index];
+        mIndex[index] = entry;
+        mDeadlines.addLast(entry);
+        mCounts[index & 0x0F]++;
+        mSize++;
+        mEmpty = false;
+    }
+
+    /**
+     * Removes the pending packet that was written with the same byte data as packet.
+     *
+     * @param packet Received packet or the written packet itself
+     *
+     * @return True if a pending packet was removed
+     */
+    boolean remove(ESPPacket packet) {
+        final int index = indexOf(packet.getPacketID(), packet.getDestinationByte());
+        final int hash = packet.hashCode();
+        for (Entry entry = mIndex[index]; entry != null; entry = entry.next) {
+            if (entry.packet == packet || (entry.hash == hash && Arrays.equals(entry.data, packet.getPacketData()))) {
+                unlink(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the most recent pending packet with packetId destined to destination, for which
+     * sameDestinationAsOrigin matches {@link ESPPacket#isSameDestinationAsOrigin()}.
+     *
+     * @return True if a pending packet was removed
+     */
+    boolean remove(int packetId, int destination, boolean sameDestinationAsOrigin) {
+        for (Entry entry = mIndex[indexOf(packetId, destination)]; entry != null; entry = entry.next) {
+            if (entry.packet.isSameDestinationAsOrigin() == sameDestinationAsOrigin) {
+                unlink(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the most recent pending packet with packetId, preferring the packets destined to
+     * destination.
+     *
+     * @return True if a pending packet was removed
+     */
+    boolean removeAnyDestination(int packetId, int destination) {
+        for (int i = 0; i < DESTINATION_COUNT; i++) {
+            final Entry entry = mIndex[indexOf(packetId, destination + i)];
+            if (entry != null) {
+                unlink(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the pending packets whose echo has not been received within timeout. While hold
+     * is true, expired packets are kept and their transmission time is reset instead.
+     *
+     * @param now       Current time in milliseconds
+     * @param timeout   Number of milliseconds to wait for an echo
+     * @param hold      True to keep expired packets
+     * @param listener  Invoked for every removed packet; may be null
+     *
+     * @return Number of removed packets
+     */
+    int removeExpired(long now, long timeout, boolean hold, ExpiredListener listener) {
+        int removed = 0;
+        // Entries that are re-armed while holding go to the back, so only look at each entry once.
+        for (int i = mDeadlines.size(); i > 0; i--) {
+            final Entry entry = mDeadlines.peekFirst();
+            if (entry.removed) {
+                mDeadlines.pollFirst();
+                continue;
+            }
+            if (entry.packet.getTransmissionTime() + timeout >= now) {
+                break;
+            }
+            mDeadlines.pollFirst();
+            if (hold) {
+                entry.packet.setTransmissionTime(now);
+                mDeadlines.addLast(entry);
+                continue;
+            }
+            unlinkFromIndex(entry);
+            removed++;
+            if (listener != null) {
+                listener.onExpired(entry.packet);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the time at which the oldest pending packet expires.
+     *
+     * @param timeout Number of milliseconds to wait for an echo
+     *
+     * @return Time in milliseconds or {@link Long#MAX_VALUE} if nothing is pending
+     */
+    long nextDeadline(long timeout) {
+        Entry entry;
+        while ((entry = mDeadlines.peekFirst()) != null && entry.removed) {
+            mDeadlines.pollFirst();
+        }
+        return entry != null ? entry.packet.getTransmissionTime() + timeout : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of packets destined to destination awaiting an echo.
+     *
+     * @param destination Destination Id (upper nibble removed)
+     *
+     * @return Number of pending packets
+     */
+    int count(int destination) {
+        return mCounts[destination & 0x0F];
+    }
+
+    /**
+     * Indicates if no packet is awaiting an echo. May be called without synchronizing.
+     *
+     * @return True if nothing is pending
+     */
+    boolean isEmpty() {
+        return mEmpty;
+    }
+
+    /**
+     * Stops tracking every packet.
+     */
+    void clear() {
+        Arrays.fill(mIndex, null);
+        Arrays.fill(mCounts, 0);
+        mDeadlines.clear();
+        mSize = 0;
+        mEmpty = true;
+    }
+
+    private void unlink(Entry entry) {
+        // The entry is dropped from the deadline FIFO once it reaches the front.
+        entry.removed = true;
+        unlinkFromIndex(entry);
+    }
+
+    private void unlinkFromIndex(Entry entry) {
+        Entry prev = null;
+        for (Entry e = mIndex[entry.index]; e != null; prev = e, e = e.next) {
+            if (e == entry) {
+                if (prev == null) {
+                    mIndex[entry.index] = e.next;
+                }
+                else {
+                    prev.next = e.next;
+                }
+                break;
+            }
+        }
+        mCounts[entry.index & 0x0F]--;
+        if (--mSize == 0) {
+            mEmpty = true;
+        }
+    }
+
+    /**
+     * Callback for packets removed because their echo wasn't received in time.
+     */
+    interface ExpiredListener {
+        void onExpired(ESPPacket packet);
+    }
+}
@@ -4,13 +4,20 @@ import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGattCallback;
 import android.content.Context;
 
+import com.esplibrary.client.CallbackExecutors;
 import com.esplibrary.client.ESPClientListener;
 import com.esplibrary.client.ESPRequest;
+import com.esplibrary.client.RetryPolicy;
 import com.esplibrary.client.callbacks.ESPWriteListener;
 import com.esplibrary.client.callbacks.MalformedDataListener;
 import com.esplibrary.client.callbacks.NoDataListener;
 import com.esplibrary.client.callbacks.NotificationListener;
 import com.esplibrary.constants.DeviceId;
+import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.PacketFilter;
+import com.esplibrary.utilities.RingByteBuffer;
+
+import java.util.concurrent.Executor;
 
 /**
  * Interface to operate a V1 Bluetooth device.
@@ -133,6 +140,100 @@ public interface IV1connectionWrapper {
      */
     void addRequest(ESPRequest request, boolean nextToSend);
 
+    /**
+     * Removes an {@link ESPRequest packet} that hasn't been sent yet. The request is
+     * {@link ESPRequest#cancel() cancelled}, so it isn't sent even if the writer has already taken
+     * it off the queue.
+     *
+     * @param request The packet to remove.
+     *
+     * @return True if the packet was still waiting to be sent and has been removed.
+     */
+    boolean removeRequest(ESPRequest request);
+
+    /**
+     * Sets the maximum number of packets that may be awaiting an echo from destination before
+     * further requests to it are held back. Requests to other destinations are unaffected.
+     *
+     * @param destination   Destination device
+     * @param window        Maximum number of in-flight packets; must be at least 1
+     */
+    void setInFlightWindow(DeviceId destination, int window);
+
+    /**
+     * Returns the maximum number of packets that may be awaiting an echo from destination.
+     *
+     * @param destination Destination device
+     *
+     * @return In-flight window
+     */
+    int getInFlightWindow(DeviceId destination);
+
+    /**
+     * Sets the policy used for retrying failed requests with packetId. Requests that must not be
+     * sent twice, such as {@link com.esplibrary.constants.PacketId#REQFACTORYDEFAULT}, are never
+     * retried.
+     *
+     * @param packetId  Packet ID of the request
+     * @param policy    Retry policy; null to use the {@link #setDefaultRetryPolicy(RetryPolicy)
+     *                  default policy}
+     */
+    void setRetryPolicy(int packetId, RetryPolicy policy);
+
+    /**
+     * Sets the policy used for retrying failed requests without a policy of their own.
+     *
+     * @param policy Retry policy; {@link RetryPolicy#NONE} by default
+     */
+    void setDefaultRetryPolicy(RetryPolicy policy);
+
+    /**
+     * Enables batched transmission. When enabled, the writer gathers up to maxBatchSize packets
+     * that can be sent right now, waiting up to maxLingerMicros for more to become available, and
+     * hands them to the transport in a single write. Connections that can't combine packets into
+     * a single write ignore this setting.
+     *
+     * @param maxBatchSize      Maximum number of packets per write; 1 disables batching
+     * @param maxLingerMicros   Maximum number of microseconds to wait for more packets once a
+     *                          batch has been started; 0 sends whatever is available immediately
+     */
+    void setWriteBatching(int maxBatchSize, long maxLingerMicros);
+
+    /**
+     * Sets when packets destined to the V1 are transmitted while time slicing is enabled.
+     *
+     * @param mode Transmit mode; {@link TransmitMode#Immediate} by default
+     */
+    void setTransmitMode(TransmitMode mode);
+
+    /**
+     * Returns when packets destined to the V1 are transmitted while time slicing is enabled.
+     *
+     * @return Transmit mode
+     */
+    TransmitMode getTransmitMode();
+
+    /**
+     * Returns the fraction of the packets written in mode that the V1 replied to with {@link
+     * com.esplibrary.constants.PacketId#RESPREQUESTNOTPROCESSED}.
+     *
+     * @param mode Transmit mode
+     *
+     * @return Not-processed rate between 0 and 1
+     */
+    double getNotProcessedRate(TransmitMode mode);
+
+    /**
+     * Sets how received data is handled when it arrives faster than it can be decoded and the
+     * receive buffer fills up. With {@link RingByteBuffer.OverflowPolicy#DROP_OLDEST} the oldest
+     * buffered bytes are discarded; with {@link RingByteBuffer.OverflowPolicy#SIGNAL_MALFORMED} the
+     * data that didn't fit is reported to the {@link MalformedDataListener} instead.
+     *
+     * @param policy Receive buffer overflow policy; {@link
+     *               RingByteBuffer.OverflowPolicy#DROP_OLDEST} by default
+     */
+    void setReceiveOverflowPolicy(RingByteBuffer.OverflowPolicy policy);
+
     /**
      * Register a listener to be invoked when ESP data has been received.
      *
@@ -207,6 +308,33 @@ public interface IV1connectionWrapper {
      */
     void clearNotificationListener();
 
+    /**
+     * Sets a {@link PacketFilter filter} for ESP traffic that isn't addressed to the library, such as
+     * packets sent between the V1 and other accessories. Accepted packets are delivered to
+     * {@link ESPClientListener#onPacketReceived(ESPPacket)}. All other foreign traffic is discarded
+     * before a packet is constructed.
+     *
+     * @param filter The {@link PacketFilter filter} for foreign ESP traffic.
+     */
+    void setPacketFilter(PacketFilter filter);
+
+    /**
+     * Clears the registered {@link PacketFilter filter}. All ESP traffic that isn't addressed to the
+     * library will be discarded.
+     */
+    void clearPacketFilter();
+
+    /**
+     * Sets the executor that request callbacks are dispatched on, unless the request's {@link
+     * com.esplibrary.client.ResponseHandler#callbackExecutor handler} has an executor of its own.
+     * Callbacks are always dispatched after the library's internal locks have been released.
+     *
+     * @param executor Callback executor; {@link CallbackExecutors#DIRECT} by default
+     *
+     * @see CallbackExecutors
+     */
+    void setCallbackExecutor(Executor executor);
+
     /**
      * Register a listener to be invoked when ESP data has been sent.
      *
@@ -0,0 +1,245 @@
+package com.esplibrary.bluetooth;
+
+/**
+ * Learns the cadence of the V1's {@link com.esplibrary.packets.InfDisplayData} packets and the
+ * part of that period in which the V1 accepts packets.
+ *
+ * <p>The display data period is tracked with an exponentially weighted moving average of the
+ * arrival intervals, and the phase is the arrival time of the last display data packet. The
+ * period is split into {@link #SLOT_COUNT} slots. Every packet written is attributed to the slot it
+ * was written in, and every {@link com.esplibrary.constants.PacketId#RESPREQUESTNOTPROCESSED} reply
+ * is attributed back to the slot of the rejected packet, so the slot with the lowest rejection
+ * rate can be predicted. Slots that were never written in are tried first, and one in
+ * {@link #EXPLORATION_INTERVAL} predictions goes to the least sampled slot so a slot that looked
+ * bad keeps being re-evaluated.</p>
+ *
+ * <p>The not-processed rate is measured separately for each {@link TransmitMode} so the modes
+ * can be compared on the same connection.</p>
+ */
+public class TimeSlotPredictor {
+
+    /**
+     * Number of slots the display data period is divided into.
+     */
+    public final static int SLOT_COUNT = 8;
+    /**
+     * Number of display data intervals that must be observed before slots are predicted.
+     */
+    private final static int MIN_INTERVALS = 8;
+    /**
+     * Intervals longer than this many periods are gaps in the data, not a change of cadence.
+     */
+    private final static int MAX_INTERVAL_PERIODS = 3;
+    /**
+     * Weight of a new interval in the period's moving average, as a power of two.
+     */
+    private final static int PERIOD_SMOOTHING_SHIFT = 3;
+    /**
+     * Slot statistics are halved once a slot has this many samples so the predictor keeps
+     * adapting.
+     */
+    private final static int SLOT_SAMPLE_LIMIT = 64;
+    /**
+     * Number of recent writes remembered for attributing not-processed replies.
+     */
+    private final static int WRITE_HISTORY = 16;
+    /**
+     * One in this many predictions explores the least sampled slot instead of the best slot.
+     */
+    private final static int EXPLORATION_INTERVAL = 8;
+
+    private long mPeriodNanos;
+    private long mLastDisplayNanos;
+    private int mIntervalCount;
+    private int mPredictionCount;
+
+    private final int [] mSlotWrites = new int[SLOT_COUNT];
+    private final int [] mSlotRejects = new int[SLOT_COUNT];
+
+    private final long [] mModeWrites = new long[TransmitMode.values().length];
+    private final long [] mModeRejects = new long[TransmitMode.values().length];
+
+    // Ring of recent writes: packet ID, slot (-1 if unknown) and transmit mode.
+    private final int [] mHistoryIds = new int[WRITE_HISTORY];
+    private final int [] mHistorySlots = new int[WRITE_HISTORY];
+    private final TransmitMode [] mHistoryModes = new TransmitMode[WRITE_HISTORY];
+    private int mHistoryNext = 0;
+
+    /**
+     * Records the arrival of an {@link com.esplibrary.packets.InfDisplayData} packet.
+     *
+     * @param nanos Arrival time, in {@link System#nanoTime()}
+     */
+    public synchronized void onDisplayData(long nanos) {
+        if (mLastDisplayNanos != 0) {
+            final long interval = nanos - mLastDisplayNanos;
+            if (mPeriodNanos == 0) {
+                mPeriodNanos = interval;
+            }
+            else if (interval > 0 && interval < mPeriodNanos * MAX_INTERVAL_PERIODS) {
+                mPeriodNanos += (interval - mPeriodNanos) >> PERIOD_SMOOTHING_SHIFT;
+                mIntervalCount++;
+            }
+        }
+        mLastDisplayNanos = nanos;
+    }
+
+    /**
+     * Indicates if enough display data has been observed to predict slots.
+     *
+     * @return True if slots are predicted
+     */
+    public synchronized boolean isLocked() {
+        return mIntervalCount >= MIN_INTERVALS && mPeriodNanos > 0;
+    }
+
+    /**
+     * Returns the learned display data period.
+     *
+     * @return Period in nanoseconds; 0 if unknown
+     */
+    public synchronized long getPeriodNanos() {
+        return mPeriodNanos;
+    }
+
+    /**
+     * Returns the number of nanoseconds until the predicted open slot begins.
+     *
+     * @param nanos Current time, in {@link System#nanoTime()}
+     *
+     * @return Nanoseconds to wait; 0 if the current slot is the predicted slot or nothing has been
+     * learned yet
+     */
+    public synchronized long nanosUntilSlot(long nanos) {
+        if (mIntervalCount < MIN_INTERVALS || mPeriodNanos <= 0) {
+            return 0;
+        }
+        final int slot = slotAt(nanos);
+        final int best = predictSlot();
+        if (slot == best) {
+            return 0;
+        }
+        final long slotNanos = mPeriodNanos / SLOT_COUNT;
+        final long phase = phaseAt(nanos);
+        long wait = (best * slotNanos) - phase;
+        if (wait < 0) {
+            wait += mPeriodNanos;
+        }
+        return wait;
+    }
+
+    /**
+     * Records a packet written to the V1.
+     *
+     * @param packetId  Packet ID of the written packet
+     * @param mode      Transmit mode the packet was written in
+     * @param nanos     Time the packet was written, in {@link System#nanoTime()}
+     */
+    public synchronized void onPacketWritten(int packetId, TransmitMode mode, long nanos) {
+        final int slot = mIntervalCount >= MIN_INTERVALS && mPeriodNanos > 0 ? slotAt(nanos) : -1;
+        if (slot != -1) {
+            if (++mSlotWrites[slot] > SLOT_SAMPLE_LIMIT) {
+                mSlotWrites[slot] >>= 1;
+                mSlotRejects[slot] >>= 1;
+            }
+        }
+        mModeWrites[mode.ordinal()]++;
+        mHistoryIds[mHistoryNext] = packetId & 0xFF;
+        mHistorySlots[mHistoryNext] = slot;
+        mHistoryModes[mHistoryNext] = mode;
+        mHistoryNext = (mHistoryNext + 1) % WRITE_HISTORY;
+    }
+
+    /**
+     * Records a {@link com.esplibrary.constants.PacketId#RESPREQUESTNOTPROCESSED} reply and
+     * attributes it to the most recent write of the rejected packet ID.
+     *
+     * @param packetId Packet ID the V1 did not process
+     */
+    public synchronized void onNotProcessed(int packetId) {
+        packetId &= 0xFF;
+        for (int i = 1; i <= WRITE_HISTORY; i++) {
+            final int idx = (mHistoryNext - i + WRITE_HISTORY) % WRITE_HISTORY;
+            final TransmitMode mode = mHistoryModes[idx];
+            if (mode != null && mHistoryIds[idx] == packetId) {
+                mModeRejects[mode.ordinal()]++;
+                final int slot = mHistorySlots[idx];
+                if (slot != -1 && mSlotRejects[slot] < mSlotWrites[slot]) {
+                    mSlotRejects[slot]++;
+                }
+                // Each write is only rejected once.
+                mHistoryModes[idx] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the fraction of the packets written in mode that the V1 did not process.
+     *
+     * @param mode Transmit mode
+     *
+     * @return Not-processed rate between 0 and 1; 0 if no packet has been written in mode
+     */
+    public synchronized double getNotProcessedRate(TransmitMode mode) {
+        final long writes = mModeWrites[mode.ordinal()];
+        return writes == 0 ? 0 : (double) mModeRejects[mode.ordinal()] / writes;
+    }
+
+    /**
+     * Forgets the learned cadence; the statistics are kept.
+     */
+    public synchronized void reset() {
+        mPeriodNanos = 0;
+        mLastDisplayNanos = 0;
+        mIntervalCount = 0;
+    }
+
+    private long phaseAt(long nanos) {
+        final long phase = (nanos - mLastDisplayNanos) % mPeriodNanos;
+        return phase < 0 ? phase + mPeriodNanos : phase;
+    }
+
+    private int slotAt(long nanos) {
+        final long phase = phaseAt(nanos);
+        return (int) Math.min(SLOT_COUNT - 1, (phase * SLOT_COUNT) / mPeriodNanos);
+    }
+
+    /**
+     * Returns the slot the next packet should be written in. Untried slots are predicted first,
+     * then one in {@link #EXPLORATION_INTERVAL} predictions explores the least sampled slot and
+     * the rest go to the slot with the lowest estimated rejection rate.
+     */
+    private int predictSlot() {
+        int leastSampled = 0;
+        for (int slot = 1; slot < SLOT_COUNT; slot++) {
+            if (mSlotWrites[slot] < mSlotWrites[leastSampled]) {
+                leastSampled = slot;
+            }
+        }
+        if (++mPredictionCount % EXPLORATION_INTERVAL == 0 || mSlotWrites[leastSampled] == 0) {
+            return leastSampled;
+        }
+        return bestSlot();
+    }
+
+    /**
+     * Returns the slot with the lowest estimated rejection rate; ties go to the earliest slot.
+     */
+    private int bestSlot() {
+        int best = 0;
+        // Compare (rejects + 1) / (writes + 2) without dividing.
+        long bestNum = mSlotRejects[0] + 1;
+        long bestDen = mSlotWrites[0] + 2;
+        for (int slot = 1; slot < SLOT_COUNT; slot++) {
+            final long num = mSlotRejects[slot] + 1;
+            final long den = mSlotWrites[slot] + 2;
+            if (num * bestDen < bestNum * den) {
+                best = slot;
+                bestNum = num;
+                bestDen = den;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,16 @@
+package com.esplibrary.bluetooth;
+
+/**
+ * Controls when the writer transmits packets destined to the V1 while time slicing is enabled.
+ */
+public enum TransmitMode {
+    /**
+     * Transmit as soon as the TS hold-off bit allows it.
+     */
+    Immediate,
+    /**
+     * Transmit in the part of the {@link com.esplibrary.packets.InfDisplayData} period that the V1
+     * has been accepting packets in, as learned by the {@link TimeSlotPredictor}.
+     */
+    Predictive
+}
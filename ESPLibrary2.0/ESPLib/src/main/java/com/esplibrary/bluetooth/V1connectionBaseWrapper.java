@@ -8,10 +8,15 @@ import android.os.Looper;
 import android.os.Message;
 
 import com.esplibrary.client.AlertDataProcessor;
+import com.esplibrary.client.BusyPacketIds;
 import com.esplibrary.client.ESPClientListener;
 import com.esplibrary.client.ESPRequest;
+import com.esplibrary.client.FailureClass;
+import com.esplibrary.client.RequestRetrier;
 import com.esplibrary.client.ResponseHandler;
+import com.esplibrary.client.RequestScheduler;
 import com.esplibrary.client.ResponseProcessor;
+import com.esplibrary.client.RetryPolicy;
 import com.esplibrary.client.callbacks.ESPWriteListener;
 import com.esplibrary.client.callbacks.MalformedDataListener;
 import com.esplibrary.client.callbacks.NoDataListener;
@@ -22,14 +27,22 @@ import com.esplibrary.data.AlertData;
 import com.esplibrary.packets.ESPPacket;
 import com.esplibrary.packets.InfDisplayData;
 import com.esplibrary.packets.PacketFactory;
+import com.esplibrary.packets.PacketFilter;
+import com.esplibrary.packets.PacketSink;
 import com.esplibrary.packets.response.ResponseRequestNotProcessed;
-import com.esplibrary.utilities.ByteList;
 import com.esplibrary.utilities.ESPLogger;
+import com.esplibrary.utilities.RingByteBuffer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 
 public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, Handler.Callback, Runnable {
 
@@ -40,9 +53,15 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      */
     private final static long ECHO_TIMEOUT = 1000;
     /**
-     * Maximum number of {@link ESPPacket packets} allowed in the echo queue.
+     * Default maximum number of {@link ESPPacket packets} awaiting an echo from a single
+     * destination.
      */
-    private final static int MAXPACKETECHOS = 4;
+    public final static int DEFAULT_IN_FLIGHT_WINDOW = 4;
+    /**
+     * Maximum number of received bytes that can be buffered before the {@link #mBuffer overflow
+     * policy} is applied.
+     */
+    protected final static int RECEIVE_BUFFER_CAPACITY = 2048;
     /**
      * Disconnected connection state-machine constants
      */
@@ -97,14 +116,45 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      * Handler for performing various actions on the Main (UI) thread.
      */
     private final Handler mHandler;
+    /**
+     * Decides which failed requests are sent again.
+     */
+    private final RequestRetrier mRetrier;
     /**
      * Handler used for checking the ResponseHandlers for expiration.
      */
-    private Handler mExpirationH;
+    private volatile Handler mExpirationH;
+    /**
+     * Maximum number of packets handed to the transport in a single write. Batching is disabled
+     * when set to 1.
+     */
+    private volatile int mMaxBatchSize = 1;
+    /**
+     * Maximum number of nanoseconds the writer waits for more packets once a batch is started.
+     */
+    private volatile long mMaxBatchLingerNanos = 0;
+    /**
+     * Packets of the batch being assembled; only accessed by the writer thread.
+     */
+    private final List<ESPPacket> mWriteBatch = new ArrayList<>();
+    /**
+     * Learns when the V1 accepts packets during its display data period.
+     */
+    private final TimeSlotPredictor mSlotPredictor = new TimeSlotPredictor();
+    private volatile TransmitMode mTransmitMode = TransmitMode.Immediate;
+    /**
+     * Expiration check posted to {@link #mExpirationH}.
+     */
+    private final Runnable mExpiryCheck = this::checkRequestForExpiration;
+    /**
+     * Time the posted expiration check is due; {@link Long#MAX_VALUE} if none is posted. Guarded
+     * by {@link #mExpiryCheck}.
+     */
+    private long mExpiryCheckTime = Long.MAX_VALUE;
     /**
      * Thread used for writing ESP data to the ESP bus.
      */
-    private Thread mWriterThread;
+    private volatile Thread mWriterThread;
     /**
      *
      */
@@ -123,17 +173,23 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      */
     private NoDataListener mNoDataCB;
     /**
-     * Queue of {@link ESPRequest} that will be sent on the ESP bus.
+     * Scheduler of the {@link ESPRequest} that will be sent on the ESP bus. Also serves as the
+     * monitor the writer thread parks on.
+     */
+    protected final RequestScheduler mRequestQueue;
+    /**
+     * {@link ESPPacket Packets} awaiting an echo. The tracker also guards {@link
+     * #mInFlightWindows}.
      */
-    protected final List<ESPRequest> mRequestQueue;
+    private final EchoTracker mEchoTracker = new EchoTracker();
     /**
-     * Echo queue of {@link ESPPacket packets}
+     * Maximum number of packets awaiting an echo for each destination Id.
      */
-    private final List<ESPPacket> mEchoQueue;
+    private final int [] mInFlightWindows;
     /**
-     * List of ESP packet ID's that the V1 is busy processing.
+     * ESP packet ID's that the V1 is busy processing.
      */
-    private List<Integer> mBusyPacketIDs;
+    private final BusyPacketIds mBusyPacketIDs = new BusyPacketIds();
     /**
      * Contains the connection state.
      */
@@ -142,6 +198,11 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      * Indicates the last V1 type received from an ESP packet.
      */
     protected DeviceId mLastV1Type = DeviceId.UNKNOWN_DEVICE;
+    /**
+     * Supplies {@link #mLastV1Type} to the frame decoders so every frame is validated against the
+     * V1 type known when it is decoded.
+     */
+    protected final Supplier<DeviceId> mLastV1TypeSupplier = () -> mLastV1Type;
     /**
      * Flag that controls of ESP should be protected while in Legacy mode. Setting this to true will prevent packets from being put on the ESP bus, while it is in <i>Legacy</i>mode.
      */
@@ -183,7 +244,7 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
     /**
      * Buffer used to store bytes received from the BT connect.
      */
-    protected ByteList mBuffer;
+    protected final RingByteBuffer mBuffer;
     /**
      * Used to complete in-flight {@link ResponseHandler resp. handlers}
      */
@@ -198,6 +259,31 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
     private ESPClientListener mESPListener;
 
     private ESPWriteListener mWriteListener;
+    /**
+     * Integrator supplied filter for frames that aren't addressed to the library.
+     */
+    private volatile PacketFilter mPacketFilter;
+    /**
+     * Header filter used when decoding received data. Accepts all traffic the library needs and
+     * any other traffic accepted by {@link #mPacketFilter}.
+     */
+    protected final PacketFilter mHeaderFilter = this::acceptHeader;
+    /**
+     * Sink handed to the frame decoders that {@link #dispatchReceivedPacket(ESPPacket) dispatches}
+     * every decoded packet.
+     */
+    protected final PacketSink mReceivedPacketSink = this::dispatchReceivedPacket;
+    /**
+     * Predicate form of {@link #isDestinationReady(int)} handed to the request scheduler.
+     */
+    private final IntPredicate mDestinationReady = this::isDestinationReady;
+    /**
+     * Logs the {@link ESPPacket packets} purged from the echo tracker.
+     */
+    private final EchoTracker.ExpiredListener mExpiredEchoLogger = packet ->
+            ESPLogger.e(LOG_TAG, String.format("Purging expired %s packet (%d) destined to %s",
+                    PacketId.getNameForPacketIdentifier(packet.getPacketID()), packet.getPacketID(),
+                    packet.getDestination().toString()));
 
     private BluetoothDevice mV1BTDevice;
 
@@ -210,11 +296,14 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
     public V1connectionBaseWrapper(ESPClientListener listener, PacketFactory factory, long timeoutInMillis) {
         mHandler = new Handler(Looper.getMainLooper(), this);
         mResponseProcessor = new ResponseProcessor(RESPONSE_TIMEOUT);
-        mRequestQueue = new ArrayList<>(6);
+        mResponseProcessor.setExpiryListener(this::scheduleExpiryCheck);
+        mRetrier = new RequestRetrier(this::resubmit);
+        mResponseProcessor.setRetrier(mRetrier);
+        mRequestQueue = new RequestScheduler();
         mConnections = new ArrayList<>(4);
-        mEchoQueue = new ArrayList<>(5);
-        mBusyPacketIDs = new ArrayList<>();
-        mBuffer = new ByteList(22);
+        mInFlightWindows = new int[EchoTracker.DESTINATION_COUNT];
+        Arrays.fill(mInFlightWindows, DEFAULT_IN_FLIGHT_WINDOW);
+        mBuffer = new RingByteBuffer(RECEIVE_BUFFER_CAPACITY, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
 
         mFactory = factory;
         setESPClientListener(listener);
@@ -254,14 +343,37 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      * Check if any of the queue {@link ESPRequest packet} or in flight packet have expired.
      */
     public void checkRequestForExpiration() {
-        if (mResponseProcessor != null) {
-            mResponseProcessor.checkForExpiry(mRequestQueue);
+        synchronized (mExpiryCheck) {
+            mExpiryCheckTime = Long.MAX_VALUE;
         }
-        // As long as we are connected, we should check for expired packet and response handlers
+        final long next = mResponseProcessor.checkForExpiry(mRequestQueue);
+        // As long as we are connected, we should check again when the next packet or response
+        // handler is due to expire.
         if (isConnected()) {
-            if (mExpirationH != null) {
-                mExpirationH.postDelayed(this::checkRequestForExpiration, 80);
+            scheduleExpiryCheck(next);
+        }
+    }
+
+    /**
+     * Makes sure an expiration check is posted no later than expiryTime. The expiration thread
+     * stays idle while nothing is pending.
+     *
+     * @param expiryTime Time, in milliseconds since the epoch, the next packet or response
+     *                   handler expires. {@link Long#MAX_VALUE} if nothing is pending.
+     */
+    private void scheduleExpiryCheck(long expiryTime) {
+        final Handler handler = mExpirationH;
+        if (handler == null || expiryTime == Long.MAX_VALUE) {
+            return;
+        }
+        synchronized (mExpiryCheck) {
+            // An earlier check is already posted; it'll schedule the following one.
+            if (expiryTime >= mExpiryCheckTime) {
+                return;
             }
+            mExpiryCheckTime = expiryTime;
+            handler.removeCallbacks(mExpiryCheck);
+            handler.postDelayed(mExpiryCheck, Math.max(0, expiryTime - System.currentTimeMillis()));
         }
     }
 
@@ -321,6 +433,10 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         synchronized (mRealValentineType) {
             mRealValentineType = newType;
         }
+        // The writer doesn't send anything until the V1 type is known.
+        if(newType != DeviceId.UNKNOWN_DEVICE) {
+            signalWriter();
+        }
     }
 
     @Override
@@ -387,6 +503,8 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         setCanPerformBTWrite(true);
         mDisplayCount = 0;
         mBusyPacketIDs.clear();
+        // The display data cadence has to be learned again for the new connection.
+        mSlotPredictor.reset();
 
         // Whenever we connect, we want to enable echoing.
         mUseEchoQ = true;
@@ -395,13 +513,15 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         mWriterThread = new Thread(this, "WriterThread");
         mWriterThread.start();
 
-        // Create a worker thread that will wake up every 100 milliseconds and check for expired
-        // packets.
+        // Create a worker thread that wakes up whenever a packet or response handler is due to
+        // expire.
         mRequestExpiryThread = new HandlerThread("Expiration Thread");
         mRequestExpiryThread.start();
+        synchronized (mExpiryCheck) {
+            mExpiryCheckTime = Long.MAX_VALUE;
+        }
         mExpirationH = new Handler(mRequestExpiryThread.getLooper());
-        // Every 100 milliseconds check to see if any packet have expired.
-        mExpirationH.postDelayed(this::checkRequestForExpiration, 80);
+        scheduleExpiryCheck(mResponseProcessor.getNextExpiryTime());
 
         boolean isDemo = getConnectionType() == ConnectionType.Demo;
         // Set the state to connected only if we are currently in the connecting state otherwise we
@@ -473,6 +593,7 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         mResponseProcessor.expireRequestsForDisconnection();
 
         // Stop the handler thread.
+        mExpirationH = null;
         if (mRequestExpiryThread != null) {
             mRequestExpiryThread.quit();
             mRequestExpiryThread = null;
@@ -493,32 +614,66 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         // may timeout before a connection has been established, so its better to fail fast and
         // establish waiting for a connection prior to sending ESP packet.
         if(shouldAutoFailRequest(request)) {
-            ResponseHandler respHandler = request.respHandler;
-            if (respHandler != null) {
-                if (respHandler.failureCallback != null) {
-                    String error;
-                    if(!isConnected()) {
-                        error = "Request failed to send because library isn't connected!";
-                    }
-                    else {
-                        error = "Request failed to send for unknown reason";
-                    }
-                    respHandler.failureCallback.onFailure(error);
-                }
+            String error;
+            if(!isConnected()) {
+                error = "Request failed to send because library isn't connected!";
+            }
+            else {
+                error = "Request failed to send for unknown reason";
             }
+            mResponseProcessor.onRequestFailed(request.respHandler, null, error);
             return;
         }
 
+        // Hand the request to the writer without taking any locks; the writer moves it into the
+        // scheduler. If next to send is true, we want to add the packet next in its lane
+        mRequestQueue.submit(request, nextToSend);
+        // Wake up the potentially waiting writer thread.
+        signalWriter();
+    }
+
+    @Override
+    public boolean removeRequest(ESPRequest request) {
+        // The writer may have taken the request off the queue without having sent it yet, so mark
+        // it cancelled before looking for it.
+        request.cancel();
+        // Submitted requests that the writer hasn't moved into the scheduler are removed as well.
         synchronized (mRequestQueue) {
-            // If next to send is true, we want to add the packet next in the queue
-            if (nextToSend) {
-                mRequestQueue.add(0, request);
+            return mRequestQueue.remove(request);
+        }
+    }
+
+    /**
+     * Moves every submitted request into the scheduler and starts tracking their deadlines. Called
+     * by the writer thread.
+     */
+    private void drainSubmissions() {
+        ESPRequest request;
+        while((request = mRequestQueue.pollSubmission()) != null) {
+            if(request.isCancelled()) {
+                continue;
             }
-            else {
-                mRequestQueue.add(request);
+            // An identical read-only request that's already queued or awaiting its response will
+            // satisfy this request as well, so don't put another packet on the bus. The in-flight
+            // requests are checked without holding the queue lock so the response handler lock is
+            // never acquired while holding it.
+            boolean coalesced = mResponseProcessor.coalesceWithInFlight(request);
+            if(!coalesced) {
+                synchronized (mRequestQueue) {
+                    // removeRequest() may have run while the request was off the queue.
+                    if(request.isCancelled()) {
+                        continue;
+                    }
+                    coalesced = !mRequestQueue.addSubmission(request);
+                }
             }
-            // Notify the potentially waiting writer thread.
-            mRequestQueue.notify();
+            if(coalesced) {
+                ESPLogger.d(LOG_TAG, String.format("Coalesced %s request to %s",
+                        PacketId.getNameForPacketIdentifier(request.packet.getPacketID()),
+                        request.packet.getDestination().toString()));
+                continue;
+            }
+            mResponseProcessor.addPendingRequest(request);
         }
     }
 
@@ -590,6 +745,21 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         setNoDataListener(null);
     }
 
+    @Override
+    public void setPacketFilter(PacketFilter filter) {
+        mPacketFilter = filter;
+    }
+
+    @Override
+    public void clearPacketFilter() {
+        setPacketFilter(null);
+    }
+
+    @Override
+    public void setCallbackExecutor(Executor executor) {
+        mResponseProcessor.setCallbackExecutor(executor);
+    }
+
     @Override
     public void setNotificationListener(NotificationListener listener) {/*INTENTIONALLY LEFT BLANK*/}
 
@@ -637,6 +807,46 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
     //endregion
 
     //region ESP processing.
+    /**
+     * Determines if a received frame should be decoded based on its header. Frames addressed to the
+     * library, broadcast frames and echos of frames written by the library are always decoded,
+     * everything else is only decoded if accepted by the {@link #setPacketFilter(PacketFilter)
+     * packet filter}.
+     *
+     * @param destination   Destination Id byte
+     * @param origin        Origin Id byte
+     * @param packetId      Packet identifier
+     *
+     * @return True if the frame should be decoded
+     */
+    private boolean acceptHeader(byte destination, byte origin, int packetId) {
+        if(destination == DeviceId.V1CONNECTION.toByte() || destination == DeviceId.GENERAL_BROADCAST.toByte()
+                || origin == DeviceId.V1CONNECTION.toByte()) {
+            return true;
+        }
+        PacketFilter filter = mPacketFilter;
+        return filter != null && filter.accept(destination, origin, packetId);
+    }
+
+    /**
+     * Processes a {@link ESPPacket} decoded from the received byte data, ignoring echos of packets
+     * written by the library. The packet is {@link ESPPacket#release() released} once processing
+     * has finished.
+     *
+     * @param packet Decoded {@link ESPPacket}.
+     */
+    protected void dispatchReceivedPacket(ESPPacket packet) {
+        try {
+            // Check the packets for echos, skip if this is an echo packet.
+            if(!checkForEchos(packet)) {
+                processESPPacket(packet);
+            }
+        }
+        finally {
+            packet.release();
+        }
+    }
+
     /**
      * Perform processing on the provided {@link ESPPacket}.
      * This method should be called from the bluetooth data receipt method/callback from the
@@ -668,13 +878,16 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
                 // The V1 busy packet's payload minus the checksum contains the packet
                 // ID's of busy packets.
                 mDisplayCount = V1_BUSY_RESET_VAL;
-                for (byte busyID : packet.getPayloadData()) {
-                    mBusyPacketIDs.add(Integer.valueOf(busyID));
+                for (int i = 0, len = packet.getPayloadLength(); i < len; i++) {
+                    mBusyPacketIDs.add(packet.getPayloadByte(i));
                 }
             }
             else if(packetId == PacketId.RESPREQUESTNOTPROCESSED ||
                     packetId == PacketId.RESPUNSUPPORTEDPACKET ||
                     packetId == PacketId.RESPDATAERROR) {
+                if(packetId == PacketId.RESPREQUESTNOTPROCESSED && packet.getPayloadLength() > 0) {
+                    mSlotPredictor.onNotProcessed(packet.getPayloadByte(0));
+                }
                 mResponseProcessor.onFailurePacket(packet);
             }
 
@@ -704,6 +917,19 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
                 listener.onPacketReceived(packet);
             }
         }
+        else {
+            // Deliver traffic between other devices if the integrator has subscribed to it.
+            PacketFilter filter = mPacketFilter;
+            if(filter != null && filter.accept(packet.getDestinationByte(), packet.getOriginByte(), packetId)) {
+                ESPClientListener listener;
+                synchronized (this) {
+                    listener = mESPListener;
+                }
+                if (listener != null) {
+                    listener.onPacketReceived(packet);
+                }
+            }
+        }
     }
 
     /**
@@ -712,6 +938,7 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      * @param displayData {@link InfDisplayData} to process.
      */
     protected void processDisplayData(InfDisplayData displayData) {
+        mSlotPredictor.onDisplayData(System.nanoTime());
         final DeviceId deviceType;
         // Determine the V1 type for this information display data.
         if(displayData.isLegacyMode()) {
@@ -765,10 +992,21 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         if (mDisplayCount == V1_NOT_BUSY_THRESH) {
             // We've determined that that V1 is no longer busy so we should clear the busy queue.
             mBusyPacketIDs.clear();
+            final int released;
+            synchronized (mRequestQueue) {
+                released = mRequestQueue.releaseDeferred();
+            }
+            if(released > 0) {
+                signalWriter();
+            }
         }
         if(getValentineType() != DeviceId.UNKNOWN_DEVICE) {
             // Use the TS hold-off bit inside of the display data to allow packet.
-            mTSHoldoff.set(displayData.isTSHoldOff());
+            final boolean holdoff = displayData.isTSHoldOff();
+            if(mTSHoldoff.getAndSet(holdoff) && !holdoff) {
+                // Time slicing has been enabled so wake up the writer.
+                signalWriter();
+            }
         }
     }
     //endregion
@@ -802,37 +1040,99 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
     }
 
     /**
-     * Blocks until there is an {@link ESPRequest} available.
-     * @return
-     * @throws InterruptedException
+     * Wakes up the writer thread so it re-evaluates whether a request can be sent. Must be called
+     * whenever one of the conditions checked by {@link #getNextRequestBlocking()} may have changed.
+     *
+     * <p>This method doesn't acquire any locks, so it can be called from any thread at any time.</p>
+     */
+    protected void signalWriter() {
+        LockSupport.unpark(mWriterThread);
+    }
+
+    /**
+     * Blocks until there is an {@link ESPRequest} that can be sent right now. The calling thread
+     * is parked until {@link #signalWriter() signalled} instead of polling the send conditions.
+     *
+     * @return The next request to send
+     *
+     * @throws InterruptedException If the writer thread was interrupted while waiting
      */
     private ESPRequest getNextRequestBlocking() throws InterruptedException {
-        synchronized (mRequestQueue) {
-            // We wanna block as long as the packet queue is empty.
-            while(mRequestQueue.isEmpty()) {
-                mRequestQueue.wait();
+        while(true) {
+            drainSubmissions();
+            long echoDeadline = Long.MAX_VALUE;
+            synchronized (mRequestQueue) {
+                ESPRequest request = pollNextRequest();
+                if(request != null) {
+                    return request;
+                }
+                // If requests are queued and the transport is ready, every queued request is held
+                // back by a full in-flight window (or time slicing).
+                if(determinedV1Type() && !mRequestQueue.isEmpty() && canPerformBTWrite()) {
+                    // Wait for an echo to be received. Echos are purged after ECHO_TIMEOUT so
+                    // make sure we wake up when the oldest one expires even if nothing is received.
+                    if(removeExpiredPackets() > 0) {
+                        continue;
+                    }
+                    echoDeadline = nextEchoDeadline();
+                }
+            }
+            if(echoDeadline != Long.MAX_VALUE) {
+                long delay = Math.max(echoDeadline - System.currentTimeMillis(), 1);
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(delay));
+            }
+            else {
+                LockSupport.park(this);
+            }
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
             }
-            return mRequestQueue.remove(0);
         }
     }
 
     /**
+     * Removes the next {@link ESPRequest} that can be sent right now, without blocking. Must be
+     * called while holding the {@link #mRequestQueue} lock.
      *
-     * @return
+     * @return The next request to send or null if none can be sent right now
      */
-    private ESPRequest getV1cBoundPacket() {
-        synchronized (mRequestQueue) {
-            for (int i = 0, size = mRequestQueue.size(); i < size; i++) {
-                ESPRequest request = mRequestQueue.get(i);
-                // Any packet whose destination and origin values match, they are destined to a V1c device.
-                if(request.packet.getDestination() == request.packet.getOrigin()) {
-                    return mRequestQueue.remove(i);
-                }
+    private ESPRequest pollNextRequest() {
+        // We don't wanna try writing a single thing until we've determined the V1 type,
+        // and there is nothing to do while the queue is empty or the transport is busy.
+        if(!determinedV1Type() || mRequestQueue.isEmpty() || !canPerformBTWrite()) {
+            return null;
+        }
+        // While time slicing is disabled we aren't allowed to send data unless it's to a V1c, so
+        // only consider V1c bound packets. Either way, skip destinations whose in-flight window
+        // is full so a busy device doesn't stall the others.
+        ESPRequest request;
+        while((request = mTSHoldoff.get() ? removeV1cBoundRequest()
+                : mRequestQueue.poll(mDestinationReady)) != null) {
+            // Don't hand the V1 another request it's still busy processing; park it until the V1
+            // is no longer busy.
+            if(request.packet.isForV1() && mBusyPacketIDs.contains(request.packet.getPacketID())) {
+                ESPLogger.d(LOG_TAG, String.format("Deferring %s request because the V1 is busy",
+                        PacketId.getNameForPacketIdentifier(request.packet.getPacketID())));
+                mRequestQueue.defer(request);
+                continue;
             }
+            return request;
         }
         return null;
     }
 
+    /**
+     * Removes the first queued request destined to a V1c device. Must be called while holding the
+     * {@link #mRequestQueue} lock.
+     *
+     * @return V1c bound request or null if there isn't one queued
+     */
+    private ESPRequest removeV1cBoundRequest() {
+        // Any packet whose destination and origin values match, they are destined to a V1c device.
+        return mRequestQueue.pollMatching(request -> request.packet.getDestination() == request.packet.getOrigin()
+                && isDestinationReady(request.packet.getDestinationByte() & 0x0F));
+    }
+
     /**
      * Indicates if the specified ESPPacket should be sent.
      * @param packet    The packet to check for transmission.
@@ -868,6 +1168,18 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
             // correctly listen for it's receipt.
             addToEchoQueue(packet);
         }
+        notifyPacketWritten(packet);
+    }
+
+    /**
+     * Invokes the registered {@link ESPWriteListener} for a written packet.
+     *
+     * @param packet the written packet
+     */
+    private void notifyPacketWritten(ESPPacket packet) {
+        if(packet.isForV1()) {
+            mSlotPredictor.onPacketWritten(packet.getPacketID(), mTransmitMode, System.nanoTime());
+        }
         synchronized (this) {
             if (mWriteListener != null) {
                 mWriteListener.onPacketWritten(packet);
@@ -887,86 +1199,204 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         final ResponseHandler respHndlr = mResponseProcessor.removeResponseHandlerForPacket(packet);
         // Remove queued request that has the same response expector
         synchronized (mRequestQueue) {
-            for (int i = mRequestQueue.size() - 1; i >= 0; i--) {
-                final ESPRequest espRequest = mRequestQueue.get(i);
-                if (espRequest.respHandler == respHndlr) {
-                    mRequestQueue.remove(i);
-                }
-            }
+            mRequestQueue.removeIf(espRequest -> espRequest.respHandler == respHndlr);
         }
 
-        if (respHndlr != null) {
-            if (respHndlr.failureCallback != null) {
-                respHndlr.failureCallback.onFailure("BTError: Failed to send ESPPacket");
-            }
-        }
+        mResponseProcessor.onRequestFailed(respHndlr, FailureClass.WriteFailed,
+                "BTError: Failed to send ESPPacket");
     }
     //region ECHO methods.
 
+    @Override
+    public void setInFlightWindow(DeviceId destination, int window) {
+        if(window < 1) {
+            throw new IllegalArgumentException("The in-flight window must be at least 1");
+        }
+        synchronized (mEchoTracker) {
+            mInFlightWindows[destination.toByte() & 0x0F] = window;
+        }
+        // The window may have grown so the writer may be able to continue.
+        signalWriter();
+    }
+
+    @Override
+    public int getInFlightWindow(DeviceId destination) {
+        synchronized (mEchoTracker) {
+            return mInFlightWindows[destination.toByte() & 0x0F];
+        }
+    }
+
+    @Override
+    public void setRetryPolicy(int packetId, RetryPolicy policy) {
+        mRetrier.setPolicy(packetId, policy);
+    }
+
+    @Override
+    public void setDefaultRetryPolicy(RetryPolicy policy) {
+        mRetrier.setDefaultPolicy(policy);
+    }
+
+    /**
+     * Sends a request that failed again once its backoff has elapsed. If the connection was lost
+     * in the meantime, the request is failed by {@link #addRequest(ESPRequest)}.
+     *
+     * @param request       Request to send again
+     * @param delayMillis   Number of milliseconds to wait
+     */
+    private void resubmit(ESPRequest request, long delayMillis) {
+        mHandler.postDelayed(() -> addRequest(request), delayMillis);
+    }
+
+    @Override
+    public void setWriteBatching(int maxBatchSize, long maxLingerMicros) {
+        if(maxBatchSize < 1) {
+            throw new IllegalArgumentException("The maximum batch size must be at least 1");
+        }
+        if(maxLingerMicros < 0) {
+            throw new IllegalArgumentException("The maximum linger time cannot be negative");
+        }
+        mMaxBatchLingerNanos = TimeUnit.MICROSECONDS.toNanos(maxLingerMicros);
+        mMaxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public void setTransmitMode(TransmitMode mode) {
+        BTUtil.nullCheck(mode, "TransmitMode cannot be null");
+        mTransmitMode = mode;
+    }
+
+    @Override
+    public TransmitMode getTransmitMode() {
+        return mTransmitMode;
+    }
+
+    @Override
+    public double getNotProcessedRate(TransmitMode mode) {
+        return mSlotPredictor.getNotProcessedRate(mode);
+    }
+
+    @Override
+    public void setReceiveOverflowPolicy(RingByteBuffer.OverflowPolicy policy) {
+        BTUtil.nullCheck(policy, "OverflowPolicy cannot be null");
+        mBuffer.setOverflowPolicy(policy);
+    }
+
+    /**
+     * Indicates if the implementation can deliver several packets with a single call to {@link
+     * #write(List)}. Batched transmission is only used when this returns true.
+     *
+     * @return True if writes may be batched
+     */
+    protected boolean supportsWriteBatching() {
+        return false;
+    }
+
+    /**
+     * Indicates if another packet can be sent to destination without overflowing its in-flight
+     * window.
+     *
+     * Note: if echoing is disabled, this always returns true.
+     *
+     * @param destination Destination Id (upper nibble removed)
+     *
+     * @return True if a packet can be sent to destination
+     */
+    private boolean isDestinationReady(int destination) {
+        if(!mUseEchoQ) {
+            return true;
+        }
+        // Wait while the destination's echo queue is full to avoid the packet not processed from
+        // the V1connection due to a full packet buffer in the hardware.
+        synchronized (mEchoTracker) {
+            return mEchoTracker.count(destination) < mInFlightWindows[destination];
+        }
+    }
+
+    /**
+     * Returns the time at which the oldest packet awaiting an echo will be purged.
+     *
+     * @return Time in milliseconds or {@link Long#MAX_VALUE} if no packet is awaiting an echo
+     */
+    private long nextEchoDeadline() {
+        if(mEchoTracker.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        synchronized (mEchoTracker) {
+            return mEchoTracker.nextDeadline(ECHO_TIMEOUT);
+        }
+    }
+
     /**
      * Removes the specified packet from the Echo queue
      * @param packet Packet to be removed
      */
     protected void removePacketFormEchoQueue(ESPPacket packet) {
-        synchronized (mEchoQueue) {
-            for (int i = mEchoQueue.size() - 1; i >= 0; i--) {
-                mEchoQueue.remove(packet);
-                return;
-            }
+        boolean removed;
+        synchronized (mEchoTracker) {
+            removed = mEchoTracker.remove(packet);
+        }
+        if(removed) {
+            signalWriter();
         }
     }
 
     /**
      * Checks if packet is an echo.
      *
+     * <p>Besides true echos, a received packet satisfies a pending packet in two cases:</p>
+     * <ul>
+     *     <li>{@link PacketId#RESPREQUESTNOTPROCESSED} removes the pending packet that wasn't
+     *     processed, preferring the packets sent to the device that rejected it.</li>
+     *     <li>{@link PacketId#REQVERSION} sent to the V1connection isn't echoed, so the {@link
+     *     PacketId#RESPVERSION} from the V1connection removes it.</li>
+     * </ul>
+     * <p>Only true echos are swallowed; the other packets must still be processed.</p>
+     *
+     * <p>Expired packets are not purged here; the writer thread purges them when their deadline
+     * passes.</p>
+     *
      * @param packet Packet to check
      *
      * @return True if echo
      */
     protected boolean checkForEchos(ESPPacket packet) {
+        // Skip the lock entirely when nothing is awaiting an echo, which is the case for the vast
+        // majority of the received packets.
+        if(mEchoTracker.isEmpty()) {
+            return false;
+        }
+        final int packetId = packet.getPacketID();
         boolean retResult = false;
-        synchronized (mEchoQueue) {
-            for (int i = mEchoQueue.size() - 1; i >= 0; i--) {
-                ESPPacket testPacket = mEchoQueue.get(i);
-                if(packet.getPacketID() == PacketId.RESPREQUESTNOTPROCESSED) {
-                    @PacketId.PacketID int notProcessedPacketId = ((ResponseRequestNotProcessed) packet).getUnprocesedPacketId();
-                    if(testPacket.getPacketID() == notProcessedPacketId) {
-                        ESPLogger.i(LOG_TAG, "Handling packet not processed as an echo");
-                        mEchoQueue.remove(i);
-                        retResult = false;
-                        break;
-                    }
-                }
-                else {
-                    // Normal usecase, if the packet is inside of the echo list, remove it.
-                    if(packet.equals(testPacket)) {
-                        ESPLogger.i(LOG_TAG, "Removing echo packet #" + i);
-                        mEchoQueue.remove(i);
-                        retResult = true;
-                        break;
-                    }
-                    else {
-                        // This is a special use case,
-                        // If the packet was a version packet to the V1connectionWrapper, the packet will not be echoed
-                        // back so we should check if the new packet is the resp
-                        if(testPacket.getDestination() == testPacket.getOrigin()) {
-                            if(packet.getDestination() == packet.getOrigin()) {
-                                if(packet.getPacketID() == PacketId.RESPVERSION
-                                        && testPacket.getPacketID() == PacketId.REQVERSION) {
-                                    // If the packet is indeed a version response set the index and break.
-                                    mEchoQueue.remove(i);
-                                    retResult = false;
-                                    break;
-                                }
-                            }
-                        }
-                    }
+        boolean removed;
+        synchronized (mEchoTracker) {
+            if(packetId == PacketId.RESPREQUESTNOTPROCESSED) {
+                // The device that couldn't process the request is the origin of this packet.
+                @PacketId.PacketID int notProcessedPacketId = ((ResponseRequestNotProcessed) packet).getUnprocesedPacketId();
+                removed = mEchoTracker.removeAnyDestination(notProcessedPacketId, packet.getOriginByte());
+                if(removed) {
+                    ESPLogger.i(LOG_TAG, "Handling packet not processed as an echo");
                 }
             }
-            // Purge possibly expired packets.
-            removeExpiredPackets();
-            return retResult;
+            else if(mEchoTracker.remove(packet)) {
+                // Normal usecase, the packet is the echo of a written packet.
+                ESPLogger.i(LOG_TAG, String.format("Removing echo packet Id: %02X", packetId));
+                removed = true;
+                retResult = true;
+            }
+            else if(packetId == PacketId.RESPVERSION && packet.isSameDestinationAsOrigin()) {
+                // If the packet was a version packet to the V1connection, the packet will not be
+                // echoed back so the version response takes its place.
+                removed = mEchoTracker.remove(PacketId.REQVERSION, packet.getDestinationByte(), true);
+            }
+            else {
+                removed = false;
+            }
+        }
+        // Room was made in an echo queue so the writer may be able to continue.
+        if(removed) {
+            signalWriter();
         }
+        return retResult;
     }
 
     /**
@@ -975,9 +1405,10 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      * @param enabled True to enable packet echoing
      */
     protected void enabledEchoing(boolean enabled) {
-        synchronized (mEchoQueue) {
+        synchronized (mEchoTracker) {
             mUseEchoQ = enabled;
         }
+        signalWriter();
     }
 
     /**
@@ -995,70 +1426,76 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
 
         ESPLogger.i(LOG_TAG, String.format("Adding %s (%d), packet destined to %s to echo queue", PacketId.getNameForPacketIdentifier(packet.getPacketID()), packet.getPacketID(), packet.getDestination().toString()));
 
-        synchronized (mEchoQueue) {
-            // Add the ESPPacket into the echo packet list.
-            mEchoQueue.add(packet);
+        synchronized (mEchoTracker) {
+            mEchoTracker.add(packet);
         }
     }
 
     /**
-     * Clears the expired {@link ESPPacket ESPPackets} inside of the echo list.
+     * Clears the expired {@link ESPPacket ESPPackets} inside of the echo lists.
      *
      * <p><b>NOTE:</b> This method will update the packets transmission time if the TS Holdoff flag is set.</p>
+     *
+     * @return Number of packets removed from the echo lists
      */
-    protected void removeExpiredPackets() {
-        synchronized (mEchoQueue) {
-            // Don't do work we don't have too.
-            if(mEchoQueue.isEmpty()) {
-                return;
-            }
+    protected int removeExpiredPackets() {
+        if(mEchoTracker.isEmpty()) {
+            return 0;
+        }
+        synchronized (mEchoTracker) {
+            return mEchoTracker.removeExpired(System.currentTimeMillis(), ECHO_TIMEOUT,
+                    mTSHoldoff.get(), mExpiredEchoLogger);
+        }
+    }
 
-            long minKeepTime = System.currentTimeMillis() - ECHO_TIMEOUT;
-            for (int i = mEchoQueue.size() - 1; i >= 0; i--) {
-                ESPPacket packet = mEchoQueue.get(i);
-                if(packet.getTransmissionTime() < minKeepTime) {
-                    // If the time slicing holdoff is enabled, reset the last sent time and don't
-                    // remove the packet from the echo list.
-                    if(mTSHoldoff.get()) {
-                        packet.setTransmissionTime(System.currentTimeMillis());
-                        continue;
-                    }
-                    ESPLogger.e(LOG_TAG, String.format("Purging expired %s packet (%d) destined to %s",
-                            PacketId.getNameForPacketIdentifier(packet.getPacketID()), packet.getPacketID(),
-                            packet.getDestination().toString()));
-                    mEchoQueue.remove(i);
-                }
-            }
+    /**
+     * Empties the Echo Queues.
+     */
+    private void clearEchoQueue() {
+        synchronized (mEchoTracker) {
+            mEchoTracker.clear();
         }
+        signalWriter();
     }
+    //endregion
 
     /**
-     * Indicates if the Echo queue is full. Max 5 packets.
+     * Appends received byte data to {@link #mBuffer}. If the buffer overflows and is configured to
+     * signal malformed data, the rejected bytes are reported using {@link #malformedData(byte[])}.
      *
-     * Note: if echoing is disabled, this always returns false.
+     * @param data Received byte data
+     * @param length Number of bytes in data to buffer
      *
-     * @return True if the echo queue is full.
+     * @return True if the data was buffered without overflowing.
      */
-    private boolean isEchoQueueFull() {
-        if(!mUseEchoQ) {
-            return false;
-        }
-        // Wait while the echo wait queue is full to avoid the packet not processed from the V1connectionWrapper due to
-        // a full packet buffer in the hardware.
-        synchronized (mEchoQueue) {
-            return mEchoQueue.size() >= MAXPACKETECHOS;
-        }
+    protected boolean bufferReceivedData(byte [] data, int length) {
+        return bufferReceivedData(mBuffer, data, length);
     }
 
     /**
-     * Empties the Echo Queue.
+     * Appends received byte data to buffer. If the buffer overflows and is configured to signal
+     * malformed data, the rejected bytes are reported using {@link #malformedData(byte[])}.
+     *
+     * @param buffer Receive buffer
+     * @param data Received byte data
+     * @param length Number of bytes in data to buffer
+     *
+     * @return True if the data was buffered without overflowing.
      */
-    private void clearEchoQueue() {
-        synchronized (mEchoQueue) {
-            mEchoQueue.clear();
+    protected boolean bufferReceivedData(RingByteBuffer buffer, byte [] data, int length) {
+        if(buffer.write(data, 0, length)) {
+            return true;
+        }
+        if(buffer.getOverflowPolicy() == RingByteBuffer.OverflowPolicy.SIGNAL_MALFORMED) {
+            byte [] rejected = new byte[length];
+            System.arraycopy(data, 0, rejected, 0, length);
+            malformedData(rejected);
         }
+        else {
+            ESPLogger.d(LOG_TAG, "Receive buffer overflowed, dropped the oldest bytes");
+        }
+        return false;
     }
-    //endregion
 
     /**
      * Send a message to perform the bad data callback based on the provided byte array.
@@ -1094,6 +1531,37 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
      */
     protected abstract boolean write(byte [] data);
 
+    /**
+     * Writes the byte data of packet to the implementation's endpoint. Implementations that can
+     * use the packet's {@link ESPPacket#getEncodedFrame() pre-encoded frame} should override this
+     * method.
+     *
+     * @param packet    {@link ESPPacket} to send
+     *
+     * @return True if the packet was written
+     */
+    protected boolean write(ESPPacket packet) {
+        return write(packet.getPacketData());
+    }
+
+    /**
+     * Writes the byte data of every packet in packets to the implementation's endpoint, in order.
+     * Implementations that can deliver several packets in a single transfer should override this
+     * method; the default implementation writes each packet individually.
+     *
+     * @param packets   {@link List} of {@link ESPPacket packets} to send
+     *
+     * @return Number of packets that were successfully written before a write failed.
+     */
+    protected int write(List<ESPPacket> packets) {
+        for (int i = 0, size = packets.size(); i < size; i++) {
+            if (!write(packets.get(i))) {
+                return i;
+            }
+        }
+        return packets.size();
+    }
+
     /**
      * Indicates if wrapper has determined the V1's type... We know if the V1 has checksum, or is
      * Legacy.
@@ -1113,71 +1581,204 @@ public abstract class V1connectionBaseWrapper implements IV1connectionWrapper, H
         final Thread thread = Thread.currentThread();
         // Run until the writer thread gets interrupted
         while(!thread.isInterrupted()) {
-            // We don't wanna try writing a single thing until we've determined the V1 type.
-            if(determinedV1Type()) {
-                ESPRequest sendReq = null;
-                // If Time slicing is disabled, we wanna loop until it's not
-                while(mTSHoldoff.get()) {
-                    if(thread.isInterrupted()) {
-                        // When the writer thread is interrupted, we wanna return because it's
-                        // shutting down
-                        return;
-                    }
-                    // Normally we don't wanna do anything because we aren't allowed to send data
-                    // unless it's to a V1c, so check the request queue for a V1c bound packet.
-                    sendReq = getV1cBoundPacket();
+            final ESPRequest sendReq;
+            // Park until a request can be sent. The writer is woken up whenever a request is
+            // queued, time slicing is enabled, an echo is received or the transport becomes
+            // writable.
+            try {
+                sendReq = getNextRequestBlocking();
+            } catch (InterruptedException e) {
+                // When the writer thread is interrupted, we wanna return because it's
+                // shutting down
+                break;
+            }
+
+            if(mMaxBatchSize > 1 && supportsWriteBatching()) {
+                writeBatch(sendReq);
+                continue;
+            }
+
+            final ESPPacket packet = sendReq.packet;
+            if(packet.isForV1() && !awaitTransmitSlot(sendReq)) {
+                continue;
+            }
+            if(prepareToSend(sendReq)) {
+                // Immediately before writing the packets byte data we need to capture the
+                // most recent time.
+                packet.setTransmissionTime(System.currentTimeMillis());
+                // Attempt to write the packet byte data.
+                if(!write(packet)) {
+                    onPacketWriteFailed(packet);
+                    continue;
                 }
-                if(sendReq == null) {
-                    // We wanna ask the queue for the next packet to send
-                    try {
-                        sendReq = getNextRequestBlocking();
-                    } catch (InterruptedException e) {
-                        // When the writer thread is interrupted, we wanna return because it's
-                        // shutting down
-                        break;
-                    }
+                onPacketWritten(packet);
+            }
+        }
+    }
+
+    /**
+     * Prepares request to be written: the packet is framed for the current V1 type and its
+     * response handler starts awaiting a response.
+     *
+     * @param request Request about to be written
+     *
+     * @return False if the packet must not be sent
+     */
+    private boolean prepareToSend(ESPRequest request) {
+        final ESPPacket packet = request.packet;
+        if(request.isCancelled() || !canSendPacket(packet)) {
+            return false;
+        }
+        packet.setV1Type(getValentineType());
+        // If the packet has a response respHandler add it to the response handlers
+        // list.
+        ResponseHandler respHandler = request.respHandler;
+        if(respHandler != null) {
+            // Store the packet registered
+            respHandler.addSentRequest(request);
+            mResponseProcessor.addResponse(respHandler);
+        }
+        return true;
+    }
+
+    /**
+     * Gathers a batch of packets, starting with first, and writes them with a single call to
+     * {@link #write(List)}. Every packet is added to the echo queue as soon as it joins the batch so
+     * the in-flight windows account for packets that haven't been written yet.
+     *
+     * @param first First request of the batch
+     */
+    private void writeBatch(ESPRequest first) {
+        final List<ESPPacket> batch = mWriteBatch;
+        final int maxBatchSize = mMaxBatchSize;
+        final long lingerDeadline = System.nanoTime() + mMaxBatchLingerNanos;
+        ESPRequest request = first;
+        boolean awaitedSlot = false;
+        while(true) {
+            // The batch is written in the transmit slot, so wait for it before the first V1 bound
+            // packet joins the batch.
+            boolean send = true;
+            if(request.packet.isForV1()) {
+                if(!awaitedSlot) {
+                    awaitedSlot = true;
+                    send = awaitTransmitSlot(request);
                 }
-                // If we can't perform a BT write or the echo queue is full, wait until we can send
-                while(!canPerformBTWrite() || isEchoQueueFull()) {
-                    if(thread.isInterrupted()) {
-                        // When the writer thread is interrupted, we wanna return because it's
-                        // shutting down
-                        return;
-                    }
-                    if (sendReq != null) {
-                        // Requeue the request and wait until we are allowed to send BT data...
-                        // We do this so that we don't send a potentially expired req.. This will
-                        // allow the timeout mechanism to properly expire unset request... Place it
-                        // at the head so it's the next to be sent.
-                        addRequest(sendReq, true);
-                        sendReq = null;
-                    }
+                else if(requeueIfHeldOff(request)) {
+                    // Time slicing was disabled while the batch lingered, write what was gathered
+                    // before it.
+                    break;
                 }
+            }
+            if(send && prepareToSend(request)) {
+                request.packet.setTransmissionTime(System.currentTimeMillis());
+                addToEchoQueue(request.packet);
+                batch.add(request.packet);
+            }
+            if(batch.size() >= maxBatchSize) {
+                break;
+            }
+            request = pollNextRequestLingering(lingerDeadline);
+            if(request == null) {
+                break;
+            }
+        }
+        if(batch.isEmpty()) {
+            return;
+        }
+        // Immediately before writing the packets byte data we need to capture the most recent
+        // time.
+        final long now = System.currentTimeMillis();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            batch.get(i).setTransmissionTime(now);
+        }
+        final int written = write(batch);
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            if(i < written) {
+                notifyPacketWritten(batch.get(i));
+            }
+            else {
+                onPacketWriteFailed(batch.get(i));
+            }
+        }
+        batch.clear();
+    }
 
-                if (sendReq != null) {
-                    final ESPPacket packet = sendReq.packet;
-                    if(canSendPacket(packet)) {
-                        packet.setV1Type(getValentineType());
-                        // If the packet has a response respHandler add it to the response handlers
-                        // list.
-                        ResponseHandler respHandler = sendReq.respHandler;
-                        if(respHandler != null) {
-                            // Store the packet registered
-                            respHandler.addSentRequest(sendReq);
-                            mResponseProcessor.addResponse(respHandler);
-                        }
-                        // Immediately before writing the packets byte data we need to capture the
-                        // most recent time.
-                        packet.setTransmissionTime(System.currentTimeMillis());
-                        // Attempt to write the packet byte data.
-                        if(!write(packet.getPacketData())) {
-                            onPacketWriteFailed(packet);
-                            continue;
-                        }
-                        onPacketWritten(packet);
-                    }
+    /**
+     * Waits for the transmit slot of a V1 bound request. Time slicing may be disabled while waiting,
+     * in which case the request is put back at the front of the queue until it's enabled again.
+     *
+     * @param request V1 bound request about to be sent
+     *
+     * @return False if the request was put back in the queue and must not be sent
+     */
+    private boolean awaitTransmitSlot(ESPRequest request) {
+        awaitTransmitSlot();
+        return !requeueIfHeldOff(request);
+    }
+
+    /**
+     * Puts a V1 bound request back at the front of the queue if time slicing is disabled.
+     *
+     * @param request V1 bound request about to be sent
+     *
+     * @return True if the request was put back in the queue and must not be sent
+     */
+    private boolean requeueIfHeldOff(ESPRequest request) {
+        if(!mTSHoldoff.get()) {
+            return false;
+        }
+        synchronized (mRequestQueue) {
+            mRequestQueue.add(request, true);
+        }
+        return true;
+    }
+
+    /**
+     * In {@link TransmitMode#Predictive} mode, waits for the slot of the display data period that
+     * the V1 is predicted to accept packets in. Returns immediately in {@link
+     * TransmitMode#Immediate} mode or while the period hasn't been learned yet.
+     */
+    private void awaitTransmitSlot() {
+        if(mTransmitMode != TransmitMode.Predictive) {
+            return;
+        }
+        long wait = mSlotPredictor.nanosUntilSlot(System.nanoTime());
+        if(wait <= 0) {
+            return;
+        }
+        final long deadline = System.nanoTime() + wait;
+        final Thread thread = Thread.currentThread();
+        // Park until the slot opens; the writer may be unparked early by unrelated signals.
+        while(wait > 0 && !thread.isInterrupted()) {
+            LockSupport.parkNanos(this, wait);
+            wait = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Removes the next {@link ESPRequest} that can be sent, waiting until lingerDeadline for one to
+     * become available.
+     *
+     * @param lingerDeadline {@link System#nanoTime()} after which to stop waiting
+     *
+     * @return The next request to send or null if none became available in time
+     */
+    private ESPRequest pollNextRequestLingering(long lingerDeadline) {
+        final Thread thread = Thread.currentThread();
+        while(!thread.isInterrupted()) {
+            drainSubmissions();
+            synchronized (mRequestQueue) {
+                ESPRequest request = pollNextRequest();
+                if(request != null) {
+                    return request;
                 }
             }
+            final long remaining = lingerDeadline - System.nanoTime();
+            if(remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
         }
+        return null;
     }
 }
@@ -7,6 +7,7 @@ import android.os.Message;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.esplibrary.client.BusyPacketIds;
 import com.esplibrary.client.ESPClientListener;
 import com.esplibrary.client.ESPRequest;
 import com.esplibrary.client.ResponseHandler;
@@ -17,7 +18,8 @@ import com.esplibrary.constants.DeviceId;
 import com.esplibrary.constants.PacketId;
 import com.esplibrary.packets.ESPPacket;
 import com.esplibrary.packets.PacketFactory;
-import com.esplibrary.packets.PacketUtils;
+import com.esplibrary.packets.PacketSink;
+import com.esplibrary.packets.SPPFrameDecoder;
 import com.esplibrary.packets.response.ResponseBatteryVoltage;
 import com.esplibrary.packets.response.ResponseMaxSweepIndex;
 import com.esplibrary.packets.response.ResponseSAVVYStatus;
@@ -55,10 +57,14 @@ public class V1connectionDemoWrapper extends V1connectionBaseWrapper {
     private boolean mRepeat = true;
 
     private Thread mThread;
+    /**
+     * Decoder used for converting the SPP demo data into ESP packets.
+     */
+    private final SPPFrameDecoder mDecoder;
     /**
      * List of ESP packet ID's that the V1 is busy processing.
      */
-    private final List<Integer> EMPTY = new ArrayList<>();
+    private final BusyPacketIds EMPTY = new BusyPacketIds();
 
     /**
      *
@@ -75,6 +81,7 @@ public class V1connectionDemoWrapper extends V1connectionBaseWrapper {
      */
     public V1connectionDemoWrapper(@Nullable ESPClientListener listener, PacketFactory factory, long timeoutInMillis) {
         super(listener, factory, timeoutInMillis);
+        mDecoder = new SPPFrameDecoder(factory);
 
         mVersions = new HashMap<>();
         mSerialNumbers = new HashMap<>();
@@ -262,6 +269,18 @@ public class V1connectionDemoWrapper extends V1connectionBaseWrapper {
         protected static final String DEMO_FILE_SEMI_COLON_CHARACTER = ":";
         protected static final String DEMO_FILE_END_COMMENT_CHARACTER = ">";
 
+        /**
+         * Processes and then releases every packet decoded from the demo data.
+         */
+        private final PacketSink mDemoPacketSink = packet -> {
+            try {
+                processDemoData(packet);
+            }
+            finally {
+                packet.release();
+            }
+        };
+
         @Override
         public void run() {
             try {
@@ -294,11 +313,8 @@ public class V1connectionDemoWrapper extends V1connectionBaseWrapper {
                             handleNoticationMessage(currentLine.substring(startLoc + 1, endLoc));
                         } else {
                             byte[] bytes = convertStringToByteArray(currentLine);
-                            mBuffer.addAll(bytes);
-                            ESPPacket newPacket = PacketUtils.makeFromBufferSPP(mFactory, mBuffer, DeviceId.VALENTINE_ONE);
-                            if (newPacket != null) {
-                                processDemoData(newPacket);
-                            }
+                            // Decode the line in place, a partial frame is kept by the decoder.
+                            mDecoder.decodeAll(bytes, 0, bytes.length, () -> DeviceId.VALENTINE_ONE, mDemoPacketSink);
                             // To emulate data coming in from the bluetooth stack sleep for 68 milliseconds
                             Thread.sleep(68);
                         }
@@ -335,6 +351,23 @@ public class V1connectionDemoWrapper extends V1connectionBaseWrapper {
             });
         }
 
+        /**
+         * Retains a packet that will be cached to answer requests and releases the packet it
+         * replaces.
+         *
+         * @param old Previously cached packet, may be null
+         * @param packet Packet to cache
+         *
+         * @return packet
+         */
+        private <T extends ESPPacket> T retainCached(T old, T packet) {
+            if(old != null) {
+                old.release();
+            }
+            packet.retain();
+            return packet;
+        }
+
         /**
          * Processes packet
          *
@@ -355,45 +388,45 @@ public class V1connectionDemoWrapper extends V1connectionBaseWrapper {
                 ResponseProcessor responseProcessor = getResponseProcessor();
                 switch(packetID) {
                     case PacketId.RESPVERSION:
-                        mVersions.put(packet.getOrigin(), (ResponseVersion) packet);
+                        mVersions.put(packet.getOrigin(), retainCached(mVersions.get(packet.getOrigin()), (ResponseVersion) packet));
                         // Whenever we receive a version we wanna see if we have any response
                         // handlers to complete.
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPSERIALNUMBER:
-                        mSerialNumbers.put(packet.getOrigin(), (ResponseSerialNumber) packet);
+                        mSerialNumbers.put(packet.getOrigin(), retainCached(mSerialNumbers.get(packet.getOrigin()), (ResponseSerialNumber) packet));
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPSAVVYSTATUS:
-                        mSAVVYStatus = (ResponseSAVVYStatus) packet;
+                        mSAVVYStatus = retainCached(mSAVVYStatus, (ResponseSAVVYStatus) packet);
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPSWEEPSECTIONS:
                         if(mSweepSections.size() < 2) {
-                            mSweepSections.add((ResponseSweepSections) packet);
+                            mSweepSections.add(retainCached(null, (ResponseSweepSections) packet));
                         }
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPSWEEPDEFINITION:
                         if(mSweepDefinitions.size() < 6) {
-                            mSweepDefinitions.add((ResponseSweepDefinition) packet);
+                            mSweepDefinitions.add(retainCached(null, (ResponseSweepDefinition) packet));
                         }
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPMAXSWEEPINDEX:
-                        mMaxSweepIndex = (ResponseMaxSweepIndex) packet;
+                        mMaxSweepIndex = retainCached(mMaxSweepIndex, (ResponseMaxSweepIndex) packet);
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPBATTERYVOLTAGE:
-                        mVoltage = (ResponseBatteryVoltage) packet;
+                        mVoltage = retainCached(mVoltage, (ResponseBatteryVoltage) packet);
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPVEHICLESPEED:
-                        mVehicleSpeed = (ResponseVehicleSpeed) packet;
+                        mVehicleSpeed = retainCached(mVehicleSpeed, (ResponseVehicleSpeed) packet);
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                     case PacketId.RESPUSERBYTES:
-                        mV1UserBytes = (ResponseUserBytes) packet;
+                        mV1UserBytes = retainCached(mV1UserBytes, (ResponseUserBytes) packet);
                         responseProcessor.onPacketReceivedBlocking(packet, EMPTY);
                         break;
                 }
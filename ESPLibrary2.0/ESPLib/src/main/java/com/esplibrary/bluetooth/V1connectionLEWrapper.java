@@ -7,6 +7,7 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothProfile;
+import android.bluetooth.BluetoothStatusCodes;
 import android.content.Context;
 import android.os.Build;
 import android.os.Handler;
@@ -15,18 +16,25 @@ import androidx.annotation.Nullable;
 
 import com.esplibrary.client.ESPClientListener;
 import com.esplibrary.client.ESPRequest;
+import com.esplibrary.client.FailureClass;
+import com.esplibrary.client.RequestScheduler;
 import com.esplibrary.client.ResponseHandler;
 import com.esplibrary.client.callbacks.NoDataListener;
 import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.LEFrameDecoder;
 import com.esplibrary.packets.PacketFactory;
-import com.esplibrary.packets.PacketUtils;
 import com.esplibrary.utilities.ESPLogger;
+import com.esplibrary.utilities.RingByteBuffer;
 
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class V1connectionLEWrapper extends V1connectionBaseWrapper implements GattCallback {
 
     private final static String LOG_TAG = "LEV1cWrpr";
+    /**
+     * Number of milliseconds after the last bulk transfer write before the connection priority is
+     * returned to balanced.
+     */
+    private final static long BULK_PRIORITY_HOLD = 2000;
 
     private final V1cGattCallback mGattCallback;
     protected BluetoothGatt mGatt;
@@ -36,7 +44,57 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
     private int mRSSI = -127;
     private RSSICallback mPendingRSSICB;
 
-    protected final AtomicBoolean mCanWrite = new AtomicBoolean(false);
+    /**
+     * Guards the write pipeline state below.
+     */
+    private final Object mWriteLock = new Object();
+    /**
+     * Payload handed to the stack whose {@link #onCharacteristicWrite} callback hasn't been
+     * received, or null if no write is outstanding. {@link BluetoothGatt} runs one operation at a
+     * time, so at most one write is outstanding; packets are pipelined to the V1 by the in-flight
+     * windows instead.
+     */
+    private byte [] mPendingWrite;
+    /**
+     * False while writes are held back by {@link #setCanPerformBTWrite(boolean)}.
+     */
+    private boolean mWritesEnabled;
+    /**
+     * True while a remote RSSI read is outstanding.
+     */
+    private boolean mRssiReadPending;
+    /**
+     * True if an RSSI read was requested while a write was outstanding. The read is started once
+     * the write completes.
+     */
+    private boolean mRssiReadDeferred;
+    /**
+     * True if the client-out characteristic is written using {@link
+     * BluetoothGattCharacteristic#WRITE_TYPE_NO_RESPONSE}.
+     */
+    private boolean mWriteWithoutResponse;
+    /**
+     * True while the high connection priority is requested for a bulk transfer.
+     */
+    private boolean mHighPriority;
+    /**
+     * Returns the connection priority to balanced once a bulk transfer is over.
+     */
+    private final Runnable mEndBulkPriority = this::endBulkPriority;
+    /**
+     * Decoder used for reassembling the ESP frames inside of {@link #mBuffer}.
+     */
+    private final LEFrameDecoder mDecoder;
+    /**
+     * Buffer used to store bytes received on the long V1-out/client-in characteristic. The long
+     * characteristic is a separate byte stream, so its frames are reassembled apart from the
+     * short characteristic's.
+     */
+    private final RingByteBuffer mLongBuffer;
+    /**
+     * Decoder used for reassembling the ESP frames inside of {@link #mLongBuffer}.
+     */
+    private final LEFrameDecoder mLongDecoder;
 
     /**
      * Constructs a Bluetooth Low-Energy {@link IV1connectionWrapper} instance.
@@ -51,8 +109,12 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
         // Create a V1GattCallback and pass a reference to our self so it pass along the GATT callbacks to us.
         // We do this because BluetoothGattCallback is an abstract class and we cannot have duel inheritance in java.
         mGattCallback = new V1cGattCallback(this);
+        mDecoder = new LEFrameDecoder(factory);
+        mDecoder.setPacketFilter(mHeaderFilter);
+        mLongBuffer = new RingByteBuffer(RECEIVE_BUFFER_CAPACITY, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        mLongDecoder = new LEFrameDecoder(factory, LEFrameDecoder.MAX_LONG_PAYLOAD_LENGTH);
+        mLongDecoder.setPacketFilter(mHeaderFilter);
         mHandler = new Handler();
-        mCanWrite.set(false);
     }
 
     @Override
@@ -60,6 +122,22 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
         return ConnectionType.LE;
     }
 
+    @Override
+    protected void onConnected() {
+        // Throw away any partial frame left over from a previous connection.
+        mBuffer.clear();
+        mDecoder.reset();
+        mLongBuffer.clear();
+        mLongDecoder.reset();
+        super.onConnected();
+    }
+
+    @Override
+    public void setReceiveOverflowPolicy(RingByteBuffer.OverflowPolicy policy) {
+        super.setReceiveOverflowPolicy(policy);
+        mLongBuffer.setOverflowPolicy(policy);
+    }
+
     @Override
     public int getCachedRSSI() {
         synchronized (this) {
@@ -172,6 +250,13 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
             mRSSI = -127;
             mPendingRSSICB = null;
         }
+        getHandler().removeCallbacks(mEndBulkPriority);
+        synchronized (mWriteLock) {
+            mHighPriority = false;
+            mPendingWrite = null;
+            mRssiReadPending = false;
+            mRssiReadDeferred = false;
+        }
     }
 
     /**
@@ -194,14 +279,151 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
         return gatt.writeDescriptor(descriptor);
     }
 
+    /**
+     * Indicates if another write can be handed to the stack. {@link BluetoothGatt} only accepts an
+     * operation once the previous one has completed, so a write can only be made while no write or
+     * RSSI read is outstanding. A write without response completes as soon as the controller has
+     * buffered it, which is what keeps the link busy during bulk transfers.
+     *
+     * @return True if the stack is idle
+     */
     @Override
     public boolean canPerformBTWrite() {
-        return mCanWrite.get();
+        synchronized (mWriteLock) {
+            return isGattIdle();
+        }
     }
 
+    /**
+     * Indicates if no GATT operation made by this wrapper is outstanding. Must be called while
+     * holding {@link #mWriteLock}.
+     */
+    private boolean isGattIdle() {
+        return mWritesEnabled && mPendingWrite == null && !mRssiReadPending;
+    }
+
+    /**
+     * Resets the write pipeline. True allows writes to be made, false holds them back. Either way,
+     * operations outstanding from a previous connection are forgotten.
+     *
+     * @param canWrite True if data can be written
+     */
     @Override
     public void setCanPerformBTWrite(boolean canWrite) {
-        mCanWrite.set(canWrite);
+        synchronized (mWriteLock) {
+            mWritesEnabled = canWrite;
+            mPendingWrite = null;
+            mRssiReadPending = false;
+            mRssiReadDeferred = false;
+        }
+        // The stack is idle so wake up the writer to send the next packet.
+        if(canWrite) {
+            signalWriter();
+        }
+    }
+
+    /**
+     * Clears the outstanding write once the stack has finished with it and starts an RSSI
+     * read that was deferred while the write was outstanding.
+     *
+     * @param gatt Bluetooth connection the write was made on
+     *
+     * @return Payload of the completed write or null if no write was outstanding
+     */
+    private byte [] onWriteCompleted(BluetoothGatt gatt) {
+        final byte [] data;
+        synchronized (mWriteLock) {
+            data = mPendingWrite;
+            mPendingWrite = null;
+            if(mRssiReadDeferred) {
+                mRssiReadDeferred = false;
+                mRssiReadPending = gatt.readRemoteRssi();
+                if(!mRssiReadPending) {
+                    ESPLogger.e(LOG_TAG, "Unable to read the remote device's RSSI");
+                }
+            }
+        }
+        signalWriter();
+        return data;
+    }
+
+    /**
+     * Configures the write pipeline for the client-out characteristic. Writes without response
+     * are used when the characteristic supports them.
+     *
+     * @param clientOut The V1-in, client-out characteristic
+     */
+    private void configureWritePipeline(BluetoothGattCharacteristic clientOut) {
+        final boolean noResponse = (clientOut.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+        synchronized (mWriteLock) {
+            mWriteWithoutResponse = noResponse;
+            mHighPriority = false;
+        }
+        ESPLogger.d(LOG_TAG, noResponse ? "Using write without response for the client-out characteristic"
+                : "Using acknowledged writes for the client-out characteristic");
+    }
+
+    /**
+     * Falls back to acknowledged writes after the stack failed a write without response.
+     */
+    private void fallBackToAcknowledgedWrites() {
+        synchronized (mWriteLock) {
+            if(!mWriteWithoutResponse) {
+                return;
+            }
+            mWriteWithoutResponse = false;
+        }
+        ESPLogger.w(LOG_TAG, "Write without response failed, falling back to acknowledged writes");
+    }
+
+    /**
+     * Requests the high connection priority while a bulk transfer, such as reading or writing
+     * sweep definitions, is in progress. The priority returns to balanced once no bulk transfer
+     * packet has been written for {@link #BULK_PRIORITY_HOLD} milliseconds.
+     */
+    private void beginBulkPriority(BluetoothGatt gatt) {
+        final Handler handler = getHandler();
+        handler.removeCallbacks(mEndBulkPriority);
+        handler.postDelayed(mEndBulkPriority, BULK_PRIORITY_HOLD);
+        synchronized (mWriteLock) {
+            if(mHighPriority) {
+                return;
+            }
+            mHighPriority = true;
+        }
+        if(!gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH)) {
+            ESPLogger.d(LOG_TAG, "Failed to request the high connection priority");
+        }
+    }
+
+    private void endBulkPriority() {
+        synchronized (mWriteLock) {
+            if(!mHighPriority) {
+                return;
+            }
+            mHighPriority = false;
+        }
+        final BluetoothGatt gatt;
+        synchronized (this) {
+            gatt = mGatt;
+        }
+        if(gatt != null) {
+            gatt.requestConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+        }
+    }
+
+    @Override
+    protected boolean write(ESPPacket packet) {
+        if(RequestScheduler.laneFor(packet.getPacketID()) == RequestScheduler.Lane.BULK) {
+            final BluetoothGatt gatt;
+            synchronized (this) {
+                gatt = mGatt;
+            }
+            if(gatt != null) {
+                beginBulkPriority(gatt);
+            }
+        }
+        return super.write(packet);
     }
 
     @Override
@@ -222,9 +444,59 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
             ESPLogger.d(LOG_TAG, "write(byte[]) -> byte array == null");
             return false;
         }
-        setCanPerformBTWrite(false);
+        // The write is made while holding the lock so its callback can't be received before the
+        // payload is queued.
+        synchronized (mWriteLock) {
+            if(!writeCharacteristic(gatt, charac, data)) {
+                return false;
+            }
+            // Keep a copy because the packet's buffer may be reused before the callback.
+            mPendingWrite = data.clone();
+        }
+        return true;
+    }
+
+    /**
+     * Hands data to the stack. Must be called while holding {@link #mWriteLock}. A write rejected
+     * because the stack is busy fails without changing the write type. A write without response
+     * rejected for any other reason is retried as an acknowledged write.
+     *
+     * @return True if the stack accepted the write
+     */
+    private boolean writeCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic charac, byte [] data) {
+        final int status = writeCharacteristic(gatt, charac, data, mWriteWithoutResponse);
+        if(status == BluetoothStatusCodes.SUCCESS) {
+            return true;
+        }
+        if(status == BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY || !mWriteWithoutResponse) {
+            return false;
+        }
+        fallBackToAcknowledgedWrites();
+        return writeCharacteristic(gatt, charac, data, false) == BluetoothStatusCodes.SUCCESS;
+    }
+
+    /**
+     * Hands data to the stack using the requested write type. Must be called while holding {@link
+     * #mWriteLock}.
+     *
+     * @return {@link BluetoothStatusCodes} describing the result of the write
+     */
+    private int writeCharacteristic(BluetoothGatt gatt, BluetoothGattCharacteristic charac, byte [] data,
+                                    boolean noResponse) {
+        final int writeType = noResponse ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT;
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return gatt.writeCharacteristic(charac, data, writeType);
+        }
+        charac.setWriteType(writeType);
         charac.setValue(data);
-        return gatt.writeCharacteristic(charac);
+        if(gatt.writeCharacteristic(charac)) {
+            return BluetoothStatusCodes.SUCCESS;
+        }
+        // Older APIs don't say why a write was rejected, assume the stack was busy if one of our
+        // operations is outstanding.
+        return isGattIdle() ? BluetoothStatusCodes.ERROR_UNKNOWN
+                : BluetoothStatusCodes.ERROR_GATT_WRITE_REQUEST_BUSY;
     }
 
     //region GattCallback impl
@@ -362,6 +634,7 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
             return;
         }
         mClientOut = clientOut;
+        configureWritePipeline(clientOut);
         ESPLogger.d(LOG_TAG, "Enabling notifications for the V1-Out/Client-In short BluetoothGattCharacteristic...");
         if(!enableCharacteristicNotifications(gatt, v1OutClientIn, true)){
             ESPLogger.d(LOG_TAG, "Failed to enable notifications for the V1-Out/Client-In short BluetoothGattCharacteristic...");
@@ -398,58 +671,73 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
 
     @Override
     public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-        // Whenever, we receive this callback, we are able to to write again to the V1-in, client-out characteristic.
-        setCanPerformBTWrite(true);
+        // Whenever, we receive this callback, the stack is done with the outstanding write to the
+        // V1-in, client-out characteristic.
+        if(status != BluetoothGatt.GATT_SUCCESS) {
+            // Don't write without response on a link that is dropping writes.
+            fallBackToAcknowledgedWrites();
+        }
+        final byte [] value = onWriteCompleted(gatt);
 
         if(status != BluetoothGatt.GATT_SUCCESS) {
-            byte [] value = characteristic.getValue();
             ESPLogger.e(LOG_TAG, String.format("%s failed to write: %s", characteristic.getUuid().toString(), BTUtil.toHexString(value)));
 
-            final ResponseHandler respHndlr = getResponseProcessor().removeResponseHandlerForData(value);
+            final ResponseHandler<?> respHndlr = getResponseProcessor().removeResponseHandlerForData(value);
+            // Requests without a response handler (and writes no handler was found for) have
+            // nothing to retry or fail. Matching on a null handler would drop every queued request
+            // that doesn't await a response.
+            if(respHndlr == null) {
+                return;
+            }
             // Remove queued request that has the same response expector
             synchronized (mRequestQueue) {
-                for (int i = mRequestQueue.size() - 1; i >= 0; i--) {
-                    final ESPRequest espRequest = mRequestQueue.get(i);
-                    if (espRequest.respHandler == respHndlr) {
-                        mRequestQueue.remove(i);
-                    }
-                }
-            }
-            // Fail the response handler
-            if (respHndlr != null) {
-                if (respHndlr.failureCallback != null) {
-                    respHndlr.failureCallback.onFailure("BTError: Failed to send ESPPacket");
-                }
+                mRequestQueue.removeIf(espRequest -> espRequest.respHandler == respHndlr);
             }
+            // Retry or fail the response handler
+            getResponseProcessor().onRequestFailed(respHndlr, FailureClass.WriteFailed,
+                    "BTError: Failed to send ESPPacket");
         }
     }
 
     @Override
     public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-        // Only process Characteristics on the V1-out, client-in short BTGatt characteristic.
+        // Only process Characteristics on the V1-out, client-in BTGatt characteristics.
         if(characteristic.getUuid().equals(BTUtil.V1_OUT_CLIENT_IN_SHORT_CHARACTERISTIC_UUID)) {
-            byte [] data = characteristic.getValue();
-            mBuffer.addAll(data);
-            ESPPacket packet = PacketUtils.makeFromBufferLE(mFactory, mBuffer, mLastV1Type);
-            // If the packet is null perform send a malformed data msg.
-            if(packet == null) {
-                malformedData(data);
-                return;
-            }
-            // Ignore echo packets.
-            if(checkForEchos(packet)) {
-                return;
-            }
-            // Perform ESP processing.
-            processESPPacket(packet);
+            decodeNotification(characteristic.getValue(), mBuffer, mDecoder);
+        }
+        else if(characteristic.getUuid().equals(BTUtil.V1_OUT_CLIENT_IN_LONG_CHARACTERISTIC_UUID)) {
+            decodeNotification(characteristic.getValue(), mLongBuffer, mLongDecoder);
         }
         else {
             ESPLogger.d(LOG_TAG, "Unsupported characteristic. UUID: " + characteristic.getUuid().toString());
         }
     }
 
+    /**
+     * Buffers the data of a notification and decodes every complete frame in buffer.
+     *
+     * @param data      Notification data
+     * @param buffer    Receive buffer of the notifying characteristic
+     * @param decoder   Decoder of the notifying characteristic
+     */
+    private void decodeNotification(byte [] data, RingByteBuffer buffer, LEFrameDecoder decoder) {
+        bufferReceivedData(buffer, data, data.length);
+        // A notification may complete a frame started in a previous notification and can
+        // contain several frames, so decode until the buffer runs out of complete frames.
+        decoder.decodeAll(buffer, mLastV1TypeSupplier, mReceivedPacketSink);
+        // Only report data that was thrown away because it was corrupt.
+        if(decoder.hasDiscardedData()) {
+            malformedData(decoder.takeDiscardedData());
+        }
+    }
+
     @Override
     public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
+        synchronized (mWriteLock) {
+            mRssiReadPending = false;
+        }
+        // The stack is idle again so writes can continue.
+        signalWriter();
         if(status == BluetoothGatt.GATT_SUCCESS) {
             final BluetoothDevice device = gatt.getDevice();
             final RSSICallback cb;
@@ -470,10 +758,26 @@ public class V1connectionLEWrapper extends V1connectionBaseWrapper implements Ga
     @Override
     public boolean readRemoteRSSI(RSSICallback callback) {
         if(isConnected()) {
+            final BluetoothGatt gatt;
             synchronized (this) {
                 mPendingRSSICB = callback;
+                gatt = mGatt;
+            }
+            if(gatt == null) {
+                return false;
+            }
+            synchronized (mWriteLock) {
+                // The stack rejects the read while a write is outstanding, so start it once the
+                // write completes.
+                if(mPendingWrite != null) {
+                    mRssiReadDeferred = true;
+                    return true;
+                }
+                if(!mRssiReadPending) {
+                    mRssiReadPending = gatt.readRemoteRssi();
+                }
+                return mRssiReadPending;
             }
-            return mGatt.readRemoteRssi();
         }
         ESPLogger.d(LOG_TAG, "Not connected - unable to read remote RSSI!");
         return false;
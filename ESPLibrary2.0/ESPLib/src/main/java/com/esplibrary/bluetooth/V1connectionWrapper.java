@@ -13,8 +13,10 @@ import androidx.annotation.Nullable;
 import com.esplibrary.client.ESPClientListener;
 import com.esplibrary.client.callbacks.NoDataListener;
 import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.EncodedFrame;
 import com.esplibrary.packets.PacketFactory;
-import com.esplibrary.packets.PacketUtils;
+import com.esplibrary.packets.SPPFrameDecoder;
+import com.esplibrary.packets.SPPFrameEncoder;
 import com.esplibrary.utilities.ESPLogger;
 
 import java.io.IOException;
@@ -22,6 +24,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.List;
 
 public class V1connectionWrapper extends V1connectionBaseWrapper {
 
@@ -51,6 +54,15 @@ public class V1connectionWrapper extends V1connectionBaseWrapper {
      * Background thread for reading data from the input stream.
      */
     private Thread mReaderThread;
+    /**
+     * Decoder used for converting the SPP byte data inside of {@link #mBuffer} into ESP packets.
+     */
+    private final SPPFrameDecoder mDecoder;
+    /**
+     * Encoder used for converting outgoing ESP data into SPP frames. Only accessed while holding
+     * its own lock.
+     */
+    private final SPPFrameEncoder mEncoder = new SPPFrameEncoder();
 
     /**
      * Constructs a Bluetooth SPP {@link IV1connectionWrapper} instance.
@@ -62,6 +74,8 @@ public class V1connectionWrapper extends V1connectionBaseWrapper {
      */
     public V1connectionWrapper(@Nullable ESPClientListener listener, PacketFactory factory, long timeoutInMillis) {
         super(listener, factory, timeoutInMillis);
+        mDecoder = new SPPFrameDecoder(factory);
+        mDecoder.setPacketFilter(mHeaderFilter);
     }
 
     @Override
@@ -74,9 +88,6 @@ public class V1connectionWrapper extends V1connectionBaseWrapper {
      */
     private class ReaderRunnable implements Runnable {
 
-        private static final int STREAM_BUFFER_SIZE = 1024;
-        private final byte [] mData = new byte [STREAM_BUFFER_SIZE];
-
         ReaderRunnable() {
         }
 
@@ -85,23 +96,15 @@ public class V1connectionWrapper extends V1connectionBaseWrapper {
             Thread thread = Thread.currentThread();
             while(!thread.isInterrupted()) {
                 try {
-                    int readSize = mInput.read(mData);
-                    mBuffer.addSubsetOfBytes(mData, readSize);
-                    ESPPacket packet;
-                    // Loop until we read all available packets inside of the buffer.
-                    do {
-                        // Attempt to convert the byte data into an esp packet.
-                        packet = PacketUtils.makeFromBufferSPP(mFactory, mBuffer, mLastV1Type);
-                        // If packet isn't null, we should add it to the packet list.
-                        if(packet != null) {
-                            // Check the packets for echos, skip if this is an echo packet.
-                            if(checkForEchos(packet)) {
-                                continue;
-                            }
-                            processESPPacket(packet);
-                        }
+                    // Read straight into the receive buffer's free space.
+                    if(mBuffer.readFrom(mInput) == 0 && mBuffer.isFull()) {
+                        // The buffer refused the data so report it and start over.
+                        malformedData(mBuffer.toByteArray());
+                        mBuffer.clear();
+                        mDecoder.reset();
                     }
-                    while(packet != null);
+                    // Drain every complete packet inside of the buffer in a single pass.
+                    mDecoder.decodeAll(mBuffer, mLastV1TypeSupplier, mReceivedPacketSink);
                 } catch (IOException e) {
                     if (isConnecting()) {
                         onConnectionFailed();
@@ -118,6 +121,9 @@ public class V1connectionWrapper extends V1connectionBaseWrapper {
     @Override
     protected void onConnected() {
         super.onConnected();
+        // Throw away any partial data left over from a previous connection.
+        mBuffer.clear();
+        mDecoder.reset();
         // Start the reader thread to indefinitely read data from 'mInput'
         // (BluetoothInputStream).
         mReaderThread = new Thread(new ReaderRunnable(), V_1_C_READER_THREAD);
@@ -262,21 +268,67 @@ public class V1connectionWrapper extends V1connectionBaseWrapper {
 
     @Override
     protected boolean write(byte[] data) {
-        if(mOutput != null) {
-            // Delimit the data so that the V1connectionWrapper will respect the data.
-            byte [] delimited = BTUtil.getV1cDelimitedData(data);
-            // Escape the byte buffer.
-            byte [] escapedData = BTUtil.escapeV1cData(delimited);
+        final OutputStream output = mOutput;
+        if(output != null) {
+            synchronized (mEncoder) {
+                // Delimit, checksum and escape the data so that the V1connection will respect it.
+                mEncoder.encode(data);
+                try {
+                    // The whole frame is handed to the socket in a single write so there is
+                    // nothing left to flush.
+                    mEncoder.writeTo(output);
+                }
+                catch (IOException e) {
+                    // TODO handle notify the Library the write failed.
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean supportsWriteBatching() {
+        // RFCOMM is a stream so several frames can go out in a single write.
+        return true;
+    }
+
+    @Override
+    protected boolean write(ESPPacket packet) {
+        final OutputStream output = mOutput;
+        final EncodedFrame frame = packet.getEncodedFrame();
+        if(output == null || frame == null) {
+            return write(packet.getPacketData());
+        }
+        synchronized (mEncoder) {
             try {
-                mOutput.write(escapedData);
-                // Flush the outputs buffer and force a write.
-                mOutput.flush();
+                // The SPP image of cached requests is already encoded so write it directly.
+                output.write(frame.getSPPFrame());
             }
             catch (IOException e) {
-                // TODO handle notify the Library the write failed.
                 return false;
             }
         }
         return true;
     }
+
+    @Override
+    protected int write(List<ESPPacket> packets) {
+        final OutputStream output = mOutput;
+        if(output != null) {
+            synchronized (mEncoder) {
+                // Encode every packet back to back so the burst reaches the socket as one write.
+                for (int i = 0, size = packets.size(); i < size; i++) {
+                    mEncoder.encode(packets.get(i));
+                }
+                try {
+                    mEncoder.writeTo(output);
+                }
+                catch (IOException e) {
+                    return 0;
+                }
+            }
+        }
+        return packets.size();
+    }
 }
@@ -0,0 +1,65 @@
+package com.esplibrary.client;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Set of the packet IDs the V1 reported as busy in its {@link
+ * com.esplibrary.packets.InfV1Busy} packets.
+ *
+ * <p>Every possible packet ID is represented by a single bit of a 256-bit set. The set is never
+ * modified in place; each change publishes a new immutable snapshot so the reader thread can
+ * update it while the writer thread and {@link ResponseProcessor} query it without locking.</p>
+ */
+public final class BusyPacketIds {
+
+    private final static long [] EMPTY = new long[4];
+
+    private final AtomicReference<long []> mBits = new AtomicReference<>(EMPTY);
+
+    /**
+     * Marks packetId as busy.
+     *
+     * @param packetId Packet ID the V1 is busy processing
+     */
+    public void add(int packetId) {
+        final int word = (packetId & 0xFF) >>> 6;
+        final long mask = 1L << packetId;
+        long [] current;
+        long [] updated;
+        do {
+            current = mBits.get();
+            if ((current[word] & mask) != 0) {
+                return;
+            }
+            updated = current.clone();
+            updated[word] |= mask;
+        } while (!mBits.compareAndSet(current, updated));
+    }
+
+    /**
+     * Indicates if packetId is busy.
+     *
+     * @param packetId Packet ID to check
+     *
+     * @return True if the V1 reported packetId as busy
+     */
+    public boolean contains(int packetId) {
+        return (mBits.get()[(packetId & 0xFF) >>> 6] & (1L << packetId)) != 0;
+    }
+
+    /**
+     * Indicates if no packet IDs are busy.
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return mBits.get() == EMPTY;
+    }
+
+    /**
+     * Marks every packet ID as no longer busy.
+     */
+    public void clear() {
+        mBits.set(EMPTY);
+    }
+}
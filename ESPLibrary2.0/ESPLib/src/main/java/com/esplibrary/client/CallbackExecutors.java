@@ -0,0 +1,72 @@
+package com.esplibrary.client;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of the {@link Executor Executors} that {@link ResponseHandler} callbacks can be
+ * dispatched on.
+ *
+ * <p>Callbacks are always dispatched after the library has released its internal locks, and the
+ * callbacks of a single handler never run concurrently and run in the order the packets were
+ * received, regardless of the executor.</p>
+ */
+public final class CallbackExecutors {
+
+    private final static long POOL_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Runs callbacks on the thread that received the packet or detected the failure. This is the
+     * default.
+     */
+    public final static Executor DIRECT = Runnable::run;
+
+    private CallbackExecutors() {}
+
+    /**
+     * Returns an executor that runs callbacks on the main thread.
+     *
+     * @return Main looper executor
+     */
+    public static Executor mainLooper() {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return handler::post;
+    }
+
+    /**
+     * Returns an executor that runs callbacks on a dedicated pool of daemon threads. Once
+     * queueCapacity callbacks are waiting, further callbacks run on the thread that dispatched
+     * them, which slows the library down instead of dropping callbacks.
+     *
+     * @param maxThreads    Maximum number of pool threads; must be at least 1
+     * @param queueCapacity Maximum number of callbacks waiting for a thread; must be at least 1
+     *
+     * @return Bounded pool executor
+     */
+    public static Executor boundedPool(int maxThreads, int queueCapacity) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("The pool must have at least 1 thread");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be at least 1");
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "ESPCallback-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads,
+                POOL_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                factory, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,314 @@
+package com.esplibrary.client;
+
+import com.esplibrary.client.callbacks.ESPRequestListener;
+import com.esplibrary.client.callbacks.ESPRequestedDataListener;
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.constants.V1Mode;
+import com.esplibrary.data.SAVVYStatus;
+import com.esplibrary.data.SweepData;
+import com.esplibrary.data.SweepDefinition;
+import com.esplibrary.data.SweepSection;
+import com.esplibrary.data.UserSettings;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link IESPAsyncClient} implementation that issues its requests through an {@link
+ * ESPValentineClient}.
+ */
+final class ESPAsyncClient implements IESPAsyncClient {
+
+    private final static String SWEEP_DATA_ERROR = "Failed to received the Sweep data from the connected V1";
+
+    private final ESPValentineClient mClient;
+
+    ESPAsyncClient(ESPValentineClient client) {
+        mClient = client;
+    }
+
+    private <T> CompletableFuture<T> request(Consumer<ESPRequestedDataListener<T>> request) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        return removeWhenAbandoned(future, mClient.captureRequests(() -> request.accept(ESPFutures.toListener(future))));
+    }
+
+    private CompletableFuture<Void> send(Consumer<ESPRequestListener> request) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        return removeWhenAbandoned(future, mClient.captureRequests(() -> request.accept(ESPFutures.toRequestListener(future))));
+    }
+
+    /**
+     * Removes the requests issued for future that are still queued once future is abandoned, that
+     * is completed exceptionally by anything but the library's {@link ESPRequestException}, such
+     * as a cancellation or a {@link ESPFutures#withTimeout timeout}.
+     */
+    private <T> CompletableFuture<T> removeWhenAbandoned(CompletableFuture<T> future, List<ESPRequest> requests) {
+        if (!requests.isEmpty()) {
+            future.whenComplete((result, error) -> {
+                if (error != null && !(unwrap(error) instanceof ESPRequestException)) {
+                    mClient.removeRequests(requests);
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Cancels step, one step of a multi-step operation, when the operation's future completes
+     * exceptionally, for example because it was cancelled or timed out, so the step's queued
+     * requests are removed as well. A step that has already completed is left untouched.
+     */
+    private static <T> CompletableFuture<T> cancelWith(CompletableFuture<?> operation, CompletableFuture<T> step) {
+        operation.whenComplete((result, error) -> {
+            if (error != null) {
+                step.cancel(false);
+            }
+        });
+        return step;
+    }
+
+    /**
+     * Issues the next step of a multi-step operation unless the operation's future has already
+     * completed, typically because it was cancelled.
+     */
+    private static <T> CompletableFuture<T> unlessDone(CompletableFuture<?> operation, Supplier<CompletableFuture<T>> next) {
+        if (operation.isDone()) {
+            final CompletableFuture<T> skipped = new CompletableFuture<>();
+            skipped.cancel(false);
+            return skipped;
+        }
+        return cancelWith(operation, next.get());
+    }
+
+    private CompletableFuture<List<SweepDefinition>> sweepDefinitions(boolean defaultSweeps, int maxSweepIndex) {
+        final int responseId = defaultSweeps ? PacketId.RESPDEFAULTSWEEPDEFINITIONS : PacketId.RESPSWEEPDEFINITION;
+        return request(cb -> mClient.requestSweepDefinitions(defaultSweeps, responseId, maxSweepIndex, cb));
+    }
+
+    /**
+     * Reads the sweep definitions once the maximum sweep index is known.
+     */
+    private CompletableFuture<List<SweepDefinition>> sweepDefinitions(boolean defaultSweeps) {
+        final CompletableFuture<List<SweepDefinition>> result = new CompletableFuture<>();
+        cancelWith(result, maxSweepIndex())
+                .thenCompose(maxSweepIndex -> unlessDone(result, () -> sweepDefinitions(defaultSweeps, maxSweepIndex)))
+                .whenComplete((sweeps, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(unwrap(error));
+                    }
+                    else {
+                        result.complete(sweeps);
+                    }
+                });
+        return result;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null
+                ? error.getCause() : error;
+    }
+
+    @Override
+    public CompletableFuture<String> version(DeviceId device) {
+        return request(cb -> mClient.requestVersion(device, cb));
+    }
+
+    @Override
+    public CompletableFuture<Double> versionAsDouble(DeviceId device) {
+        return request(cb -> mClient.requestVersionAsDouble(device, cb));
+    }
+
+    @Override
+    public CompletableFuture<String> serialNumber(DeviceId device) {
+        return request(cb -> mClient.requestSerialNumber(device, cb));
+    }
+
+    @Override
+    public CompletableFuture<UserSettings> userSettings(double v1Version) {
+        return request(cb -> mClient.requestUserSettings(v1Version, cb));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> userBytes() {
+        return request(mClient::requestUserBytes);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> userBytes(DeviceId device) {
+        return request(cb -> mClient.requestUserBytes(device, cb));
+    }
+
+    @Override
+    public CompletableFuture<Void> writeUserBytes(byte[] userBytes) {
+        return send(cb -> mClient.requestWriteUserBytes(userBytes, cb));
+    }
+
+    @Override
+    public CompletableFuture<Void> writeUserBytes(DeviceId device, byte[] userBytes) {
+        return send(cb -> mClient.requestWriteUserBytes(device, userBytes, cb));
+    }
+
+    @Override
+    public CompletableFuture<Void> factoryDefault(DeviceId device) {
+        return send(cb -> mClient.requestFactoryDefault(device, cb));
+    }
+
+    @Override
+    public CompletableFuture<Integer> writeSweepDefinitions(List<SweepDefinition> sweeps) {
+        return request(cb -> mClient.requestWriteSweepDefinitions(sweeps, cb));
+    }
+
+    @Override
+    public CompletableFuture<List<SweepDefinition>> allSweepDefinitions() {
+        return sweepDefinitions(false);
+    }
+
+    @Override
+    public CompletableFuture<Void> defaultSweeps() {
+        return send(mClient::requestDefaultSweeps);
+    }
+
+    @Override
+    public CompletableFuture<Integer> maxSweepIndex() {
+        return request(mClient::requestMaxSweepIndex);
+    }
+
+    @Override
+    public CompletableFuture<List<SweepSection>> sweepSections() {
+        return request(mClient::requestSweepSections);
+    }
+
+    @Override
+    public CompletableFuture<List<SweepDefinition>> defaultSweepDefinitions() {
+        return sweepDefinitions(true);
+    }
+
+    @Override
+    public CompletableFuture<SweepData> sweepData(double v1Version) {
+        final CompletableFuture<SweepData> result = new CompletableFuture<>();
+        // The sweep sections and the maximum sweep index don't depend on each other, and both
+        // kinds of sweep definitions only depend on the maximum sweep index.
+        final CompletableFuture<List<SweepSection>> sections = cancelWith(result, sweepSections());
+        final CompletableFuture<Integer> maxSweepIndex = cancelWith(result, maxSweepIndex());
+        final CompletableFuture<List<SweepDefinition>> defaultSweeps;
+        if (mClient.areDefaultSweepDefinitionsAvailableForV1Version(v1Version)) {
+            defaultSweeps = maxSweepIndex.thenCompose(index -> unlessDone(result, () -> sweepDefinitions(true, index)));
+        }
+        else {
+            defaultSweeps = CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<List<SweepDefinition>> sweeps =
+                maxSweepIndex.thenCompose(index -> unlessDone(result, () -> sweepDefinitions(false, index)));
+
+        CompletableFuture.allOf(sections, maxSweepIndex, defaultSweeps, sweeps).whenComplete((ignored, error) -> {
+            if (error == null) {
+                result.complete(new SweepData(maxSweepIndex.join(), sections.join(), defaultSweeps.join(), sweeps.join()));
+            }
+            // Report the failures in the order the requests depend on each other.
+            else if (sections.isCompletedExceptionally()) {
+                sections.whenComplete((data, sectionError) -> result.completeExceptionally(unwrap(sectionError)));
+            }
+            else if (maxSweepIndex.isCompletedExceptionally()) {
+                maxSweepIndex.whenComplete((data, indexError) -> result.completeExceptionally(unwrap(indexError)));
+            }
+            else {
+                result.completeExceptionally(new ESPRequestException(SWEEP_DATA_ERROR));
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> abortAudioDelay() {
+        return send(mClient::requestAbortAudioDelay);
+    }
+
+    @Override
+    public CompletableFuture<Void> displayCurrentVolume() {
+        return send(mClient::requestDisplayCurrentVolume);
+    }
+
+    @Override
+    public CompletableFuture<Void> setDisplayState(DeviceId device, boolean displayOn, boolean keepBTLedOn) {
+        return send(cb -> mClient.requestSetDisplayState(device, displayOn, keepBTLedOn, cb));
+    }
+
+    @Override
+    public CompletableFuture<Void> mute(boolean mute) {
+        return send(cb -> mClient.requestMute(mute, cb));
+    }
+
+    @Override
+    public CompletableFuture<Void> changeMode(V1Mode mode) {
+        return send(cb -> mClient.requestChangeMode(mode, cb));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> currentVolume() {
+        return request(mClient::requestCurrentVolume);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> allVolume() {
+        return request(mClient::requestAllVolume);
+    }
+
+    @Override
+    public CompletableFuture<Void> writeVolumeSettings(byte mainVolume, byte mutedVolume, byte aux0) {
+        return send(cb -> mClient.requestWriteVolumeSettings(mainVolume, mutedVolume, aux0, cb));
+    }
+
+    @Override
+    public CompletableFuture<Void> startAlertData() {
+        return send(mClient::requestStartAlertData);
+    }
+
+    @Override
+    public CompletableFuture<Void> stopAlertData() {
+        return send(mClient::requestStopAlertData);
+    }
+
+    @Override
+    public CompletableFuture<Void> stopAlertDataImmediately() {
+        return send(mClient::requestStopAlertDataImmediately);
+    }
+
+    @Override
+    public CompletableFuture<String> batteryVoltage() {
+        return request(mClient::requestBatteryVoltage);
+    }
+
+    @Override
+    public CompletableFuture<SAVVYStatus> savvyStatus() {
+        return request(mClient::requestSAVVYStatus);
+    }
+
+    @Override
+    public CompletableFuture<Integer> vehicleSpeed() {
+        return request(mClient::requestVehicleSpeed);
+    }
+
+    @Override
+    public CompletableFuture<Void> overrideThumbwheel(byte speed) {
+        return send(cb -> mClient.requestOverrideThumbwheel(speed, cb));
+    }
+
+    @Override
+    public CompletableFuture<Void> overrideThumbwheelToNone() {
+        return send(mClient::requestOverrideThumbwheelToNone);
+    }
+
+    @Override
+    public CompletableFuture<Void> overrideThumbwheelToAuto() {
+        return send(mClient::requestOverrideThumbwheelToAuto);
+    }
+
+    @Override
+    public CompletableFuture<Void> savvyUnmute(boolean muteEnabled) {
+        return send(cb -> mClient.requestSAVVYUnmute(muteEnabled, cb));
+    }
+}
@@ -0,0 +1,124 @@
+package com.esplibrary.client;
+
+import com.esplibrary.client.callbacks.ESPRequestListener;
+import com.esplibrary.client.callbacks.ESPRequestedDataListener;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Helpers for working with the {@link CompletableFuture futures} returned by {@link
+ * IESPAsyncClient}, and for bridging them to the callback-style {@link IESPClient} API.
+ */
+public final class ESPFutures {
+
+    /**
+     * Single daemon thread that fails futures whose timeout has elapsed.
+     */
+    private static final class TimeoutScheduler {
+        static final ScheduledThreadPoolExecutor INSTANCE;
+
+        static {
+            INSTANCE = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "ESPFutureTimeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    private ESPFutures() {}
+
+    /**
+     * Completes future with a {@link TimeoutException} if it hasn't completed within timeout. The
+     * requests of an {@link IESPAsyncClient} future that times out are removed from the queue the
+     * same way as if it was cancelled.
+     *
+     * @param future    Future to time out
+     * @param timeout   Maximum time to wait
+     * @param unit      Unit of timeout
+     * @param <T>       Result type
+     *
+     * @return future
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        if (future.isDone()) {
+            return future;
+        }
+        final ScheduledFuture<?> timer = TimeoutScheduler.INSTANCE.schedule(
+                () -> future.completeExceptionally(new TimeoutException("ESP request timed out")),
+                timeout, unit);
+        future.whenComplete((result, error) -> timer.cancel(false));
+        return future;
+    }
+
+    /**
+     * Returns a listener that completes future with the received data or an {@link
+     * ESPRequestException}.
+     */
+    static <T> ESPRequestedDataListener<T> toListener(CompletableFuture<T> future) {
+        return (data, error) -> {
+            if (error != null) {
+                future.completeExceptionally(new ESPRequestException(error));
+            }
+            else {
+                future.complete(data);
+            }
+        };
+    }
+
+    /**
+     * Returns a listener that completes future with null or an {@link ESPRequestException}.
+     */
+    static ESPRequestListener toRequestListener(CompletableFuture<Void> future) {
+        return error -> {
+            if (error != null) {
+                future.completeExceptionally(new ESPRequestException(error));
+            }
+            else {
+                future.complete(null);
+            }
+        };
+    }
+
+    /**
+     * Invokes callback with the outcome of future once it completes.
+     */
+    static <T> void whenComplete(CompletableFuture<T> future, ESPRequestedDataListener<T> callback) {
+        if (callback == null) {
+            return;
+        }
+        future.whenComplete((data, error) -> {
+            if (error != null) {
+                callback.onDataReceived(null, getErrorMessage(error));
+            }
+            else {
+                callback.onDataReceived(data, null);
+            }
+        });
+    }
+
+    /**
+     * Returns the error reported for throwable in the callback-style API.
+     *
+     * @param throwable Exception that completed a future
+     *
+     * @return Error message
+     */
+    public static String getErrorMessage(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        if (throwable instanceof CancellationException) {
+            return "Request cancelled";
+        }
+        final String message = throwable.getMessage();
+        return message != null ? message : throwable.toString();
+    }
+}
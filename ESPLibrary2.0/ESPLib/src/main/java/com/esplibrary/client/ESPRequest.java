@@ -9,7 +9,28 @@ public class ESPRequest {
     public ResponseHandler respHandler;
     public long processingTime;
     long sentTime = -1;
-    final long requestTime;
+    /**
+     * Time the request was made. Refreshed when a request parked behind a busy V1 is released so
+     * the time spent parked doesn't count against its timeout.
+     */
+    long requestTime;
+    /**
+     * Time the request was last placed into a {@link RequestScheduler}.
+     */
+    long queuedTime;
+    /**
+     * True if the request was submitted to be sent ahead of the other requests in its lane.
+     */
+    boolean nextToSend;
+    /**
+     * Number of times the request has been sent.
+     */
+    int attempts;
+    /**
+     * True once the request has been cancelled. Checked by the writer right before the request is
+     * sent, so a cancelled request that was already taken off the queue is dropped as well.
+     */
+    private volatile boolean mCancelled;
     public long mTimeout = -1;
 
     public ESPRequest(ESPPacket req, ResponseHandler handler) {
@@ -44,4 +65,20 @@ public class ESPRequest {
     public boolean hasTimeout() {
         return 0 < mTimeout;
     }
+
+    /**
+     * Cancels the request. The request will not be sent if it hasn't been already.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * Indicates if the request has been {@link #cancel() cancelled}.
+     *
+     * @return True if cancelled
+     */
+    public boolean isCancelled() {
+        return mCancelled;
+    }
 }
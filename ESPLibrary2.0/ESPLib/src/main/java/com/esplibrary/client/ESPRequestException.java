@@ -0,0 +1,14 @@
+package com.esplibrary.client;
+
+/**
+ * Exception that completes the future of an {@link IESPAsyncClient} request that failed. The
+ * message is the error the callback-style {@link IESPClient} API would have reported.
+ */
+public class ESPRequestException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public ESPRequestException(String error) {
+        super(error);
+    }
+}
@@ -27,6 +27,7 @@ import com.esplibrary.data.SweepSection;
 import com.esplibrary.data.UserSettings;
 import com.esplibrary.packets.ESPPacket;
 import com.esplibrary.packets.InfDisplayData;
+import com.esplibrary.packets.PacketFilter;
 import com.esplibrary.packets.request.RequestAbortAudioDelay;
 import com.esplibrary.packets.request.RequestAllSweepDefinitions;
 import com.esplibrary.packets.request.RequestAllVolume;
@@ -70,7 +71,9 @@ import com.esplibrary.packets.response.ResponseVersion;
 import com.esplibrary.utilities.ESPLogger;
 import com.esplibrary.utilities.V1VersionInfo;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -89,6 +92,15 @@ public class ESPValentineClient implements IESPClient {
      * Application context used for performing various actions in the library, such as connecting and scanning.
      */
     private final Context mAppCtx;
+    /**
+     * Future-returning view of this client.
+     */
+    private final IESPAsyncClient mAsyncClient = new ESPAsyncClient(this);
+    /**
+     * Requests added by the calling thread while it's {@link #captureRequests(Runnable) capturing}
+     * them; null while it isn't.
+     */
+    private final ThreadLocal<List<ESPRequest>> mCapturedRequests = new ThreadLocal<>();
 
     public ESPValentineClient(Context appContext, IV1connectionWrapper connection) {
         mConnection = connection;
@@ -213,6 +225,26 @@ public class ESPValentineClient implements IESPClient {
     public void clearNotificationListener() {
         mConnection.clearNotificationListener();
     }
+
+    @Override
+    public void setPacketFilter(PacketFilter filter) {
+        mConnection.setPacketFilter(filter);
+    }
+
+    @Override
+    public void clearPacketFilter() {
+        mConnection.clearPacketFilter();
+    }
+
+    @Override
+    public void setCallbackExecutor(Executor executor) {
+        mConnection.setCallbackExecutor(executor);
+    }
+
+    @Override
+    public IESPAsyncClient async() {
+        return mAsyncClient;
+    }
     //endregion
 
     //region Connection methods
@@ -349,7 +381,7 @@ public class ESPValentineClient implements IESPClient {
         };
 
         // Queue the packet.
-        mConnection.addRequest(new ESPRequest(versionRequest, handler));
+        addRequest(new ESPRequest(versionRequest, handler));
     }
 
     @Override
@@ -411,7 +443,7 @@ public class ESPValentineClient implements IESPClient {
         };
 
         // Queue the packet.
-        mConnection.addRequest(new ESPRequest(serialNumberRequest, handler));
+        addRequest(new ESPRequest(serialNumberRequest, handler));
     }
 
     @Override
@@ -436,7 +468,7 @@ public class ESPValentineClient implements IESPClient {
             }
         };
         // Queue the packet.
-        mConnection.addRequest(new ESPRequest(userSettingsRequest, handler));
+        addRequest(new ESPRequest(userSettingsRequest, handler));
     }
 
     @Override
@@ -466,7 +498,7 @@ public class ESPValentineClient implements IESPClient {
             }
         };
         // Queue the packet.
-        mConnection.addRequest(new ESPRequest(userSettingsRequest, handler));
+        addRequest(new ESPRequest(userSettingsRequest, handler));
     }
 
     @Override
@@ -491,7 +523,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(userBytesRequest, handler));
+        addRequest(new ESPRequest(userBytesRequest, handler));
     }
 
     @Override
@@ -517,7 +549,7 @@ public class ESPValentineClient implements IESPClient {
         };
 
         // Queue the packet.
-        mConnection.addRequest(new ESPRequest(maxSweepRequest, handler));
+        addRequest(new ESPRequest(maxSweepRequest, handler));
     }
 
     @Override
@@ -548,7 +580,7 @@ public class ESPValentineClient implements IESPClient {
             }
         };
         // Queue the packet.
-        mConnection.addRequest(new ESPRequest(sweepSectionRequest, handler));
+        addRequest(new ESPRequest(sweepSectionRequest, handler));
     }
 
     @Override
@@ -586,7 +618,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(defaultSweepsRequest, handler));
+        addRequest(new ESPRequest(defaultSweepsRequest, handler));
     }
 
     @Override
@@ -612,7 +644,7 @@ public class ESPValentineClient implements IESPClient {
      * @param maxSweepIndex maximum number of sweeps
      * @param callback  Callback that will be invoked once the sweep definitions are received
      */
-    private void requestSweepDefinitions(boolean defaultSweeps, int responseID, int maxSweepIndex, ESPRequestedDataListener<List<SweepDefinition>> callback) {
+    void requestSweepDefinitions(boolean defaultSweeps, int responseID, int maxSweepIndex, ESPRequestedDataListener<List<SweepDefinition>> callback) {
         final SweepDefinitionProcessor sweepProcessor = new SweepDefinitionProcessor(maxSweepIndex + 1);
         ESPPacket sweepRequest;
         if(defaultSweeps) {
@@ -648,67 +680,14 @@ public class ESPValentineClient implements IESPClient {
             }
         };
         // Queue the packet.
-        mConnection.addRequest(new ESPRequest(sweepRequest, handler));
+        addRequest(new ESPRequest(sweepRequest, handler));
     }
 
     @Override
     public void requestSweepData(double v1Version, ESPRequestedDataListener<SweepData> callback) {
-        // We first want to packet the sweep sections.
-        requestSweepSections((sweepSections, error) -> {
-            if(error != null) {
-                if (callback != null) {
-                    callback.onDataReceived(null, error);
-                }
-                return;
-            }
-            // We've successfully received the V1's custom sweeps, next we want to packet the
-            // maximum number of sweeps..
-            requestMaxSweepIndex((data, maxSweepError) -> {
-                if (maxSweepError != null) {
-                    if (callback != null) {
-                        callback.onDataReceived(null, maxSweepError);
-                    }
-                    return;
-                }
-
-                final int maxSweepIndex = data;
-                if(areDefaultSweepDefinitionsAvailableForV1Version(v1Version)) {
-                    // Request the default sweeps
-                    requestSweepDefinitions(true, PacketId.RESPDEFAULTSWEEPDEFINITIONS, maxSweepIndex, (defaultSweeps, defaultSweepError) -> {
-                        if(defaultSweepError != null) {
-                            if (callback != null) {
-                                callback.onDataReceived(null, "Failed to received the Sweep data from the connected V1");
-                            }
-                            return;
-                        }
-                        requestSweepDefinitions(false, PacketId.RESPSWEEPDEFINITION, maxSweepIndex, (sweeps, sweepDefinitionError) -> {
-                            if (callback != null) {
-                                if(sweepDefinitionError != null) {
-                                    callback.onDataReceived(null, "Failed to received the Sweep data from the connected V1");
-                                    return;
-                                }
-                                // Construct a sweep data object using the received sweep data.
-                                SweepData sweepData = new SweepData(maxSweepIndex, sweepSections, defaultSweeps, sweeps);
-                                callback.onDataReceived(sweepData, null);
-                            }
-                        });
-                    });
-                }
-                else {
-                    requestSweepDefinitions(false, PacketId.RESPSWEEPDEFINITION, maxSweepIndex, (sweeps, sweepError) -> {
-                        if (callback != null) {
-                            if(sweepError != null) {
-                                callback.onDataReceived(null, "Failed to received the Sweep data from the connected V1");
-                                return;
-                            }
-                            // Construct a sweep data object using the received sweep data.
-                            SweepData sweepData = new SweepData(maxSweepIndex, sweepSections, null, sweeps);
-                            callback.onDataReceived(sweepData, null);
-                        }
-                    });
-                }
-            });
-        });
+        // The async client requests the sweep sections, max sweep index and sweep definitions
+        // concurrently instead of waiting for each response before requesting the next.
+        ESPFutures.whenComplete(mAsyncClient.sweepData(v1Version), callback);
     }
 
     @Override
@@ -741,7 +720,7 @@ public class ESPValentineClient implements IESPClient {
         };
         ESPRequest req = new ESPRequest(packet, handler);
         req.setTimeout(requestTimeout);
-        mConnection.addRequest(req);
+        addRequest(req);
     }
 
     @Override
@@ -774,7 +753,7 @@ public class ESPValentineClient implements IESPClient {
             }
         };
 
-        mConnection.addRequest(new ESPRequest(thumbwheelRequest, handler));
+        addRequest(new ESPRequest(thumbwheelRequest, handler));
     }
 
     @Override
@@ -794,7 +773,7 @@ public class ESPValentineClient implements IESPClient {
             }
         };
 
-        mConnection.addRequest(new ESPRequest(savvyMuteRequest, handler));
+        addRequest(new ESPRequest(savvyMuteRequest, handler));
     }
 
     @Override
@@ -820,7 +799,7 @@ public class ESPValentineClient implements IESPClient {
             }
         };
 
-        mConnection.addRequest(new ESPRequest(vehicleSpeedRequet, handler));
+        addRequest(new ESPRequest(vehicleSpeedRequet, handler));
     }
 
     @Override
@@ -845,7 +824,7 @@ public class ESPValentineClient implements IESPClient {
                 }
             }
         };
-        mConnection.addRequest(new ESPRequest(batteryVoltageRequest, handler));
+        addRequest(new ESPRequest(batteryVoltageRequest, handler));
     }
 
     @SuppressLint("DefaultLocale")
@@ -889,7 +868,7 @@ public class ESPValentineClient implements IESPClient {
             // Create a sweep write packet using the sweep definition
             RequestWriteSweepDefinition writeSweepRequest = new
                     RequestWriteSweepDefinition(mConnection.getValentineType(), definition);
-            mConnection.addRequest(new ESPRequest(writeSweepRequest, handler));
+            addRequest(new ESPRequest(writeSweepRequest, handler));
         }
     }
 
@@ -922,7 +901,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(packet, handler));
+        addRequest(new ESPRequest(packet, handler));
     }
 
     @Override
@@ -950,7 +929,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(modeChangeRequest, handler));
+        addRequest(new ESPRequest(modeChangeRequest, handler));
     }
 
     @Override
@@ -1003,7 +982,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(displayRequest, handler));
+        addRequest(new ESPRequest(displayRequest, handler));
     }
 
     @Override
@@ -1023,7 +1002,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(abortAudioRequest, handler));
+        addRequest(new ESPRequest(abortAudioRequest, handler));
     }
 
     @Override
@@ -1043,7 +1022,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(displayCurVolRequest, handler));
+        addRequest(new ESPRequest(displayCurVolRequest, handler));
     }
 
     @Override
@@ -1067,7 +1046,7 @@ public class ESPValentineClient implements IESPClient {
             }
         };
 
-        mConnection.addRequest(new ESPRequest(alertDataRequest, handler));
+        addRequest(new ESPRequest(alertDataRequest, handler));
     }
 
     @Override
@@ -1102,7 +1081,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(alertDataRequest, handler), sendNext);
+        addRequest(new ESPRequest(alertDataRequest, handler), sendNext);
     }
 
     @Override
@@ -1122,7 +1101,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(factoryDefaultRequest, handler));
+        addRequest(new ESPRequest(factoryDefaultRequest, handler));
     }
 
     @Override
@@ -1145,7 +1124,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onDataReceived(null, error);
             }
         };
-        mConnection.addRequest(new ESPRequest(currentVolRequest, handler));
+        addRequest(new ESPRequest(currentVolRequest, handler));
     }
 
     @Override
@@ -1168,7 +1147,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onDataReceived(null, error);
             }
         };
-        mConnection.addRequest(new ESPRequest(allVolRequest, handler));
+        addRequest(new ESPRequest(allVolRequest, handler));
     }
 
     @Override
@@ -1193,7 +1172,7 @@ public class ESPValentineClient implements IESPClient {
                 callback.onRequestCompleted(error);
             }
         };
-        mConnection.addRequest(new ESPRequest(volumeWriteRequest, handler));
+        addRequest(new ESPRequest(volumeWriteRequest, handler));
     }
 
     /**
@@ -1204,8 +1183,55 @@ public class ESPValentineClient implements IESPClient {
      * @see #isConnected()
      */
     protected void addRequest(ESPRequest request) {
+        addRequest(request, false);
+    }
+
+    private void addRequest(ESPRequest request, boolean nextToSend) {
         if (request != null) {
-            mConnection.addRequest(request);
+            final List<ESPRequest> captured = mCapturedRequests.get();
+            if (captured != null) {
+                captured.add(request);
+            }
+            mConnection.addRequest(request, nextToSend);
+        }
+    }
+
+    /**
+     * Runs issue and returns every {@link ESPRequest} it added on the calling thread, so the
+     * {@link #async() async client} can remove the queued requests of a cancelled future.
+     *
+     * @param issue Issues the requests
+     *
+     * @return The requests that were added
+     */
+    List<ESPRequest> captureRequests(Runnable issue) {
+        final List<ESPRequest> outer = mCapturedRequests.get();
+        final List<ESPRequest> captured = new ArrayList<>(1);
+        mCapturedRequests.set(captured);
+        try {
+            issue.run();
+        }
+        finally {
+            if (outer != null) {
+                // Requests added by a nested operation also belong to the enclosing one.
+                outer.addAll(captured);
+                mCapturedRequests.set(outer);
+            }
+            else {
+                mCapturedRequests.remove();
+            }
+        }
+        return captured;
+    }
+
+    /**
+     * Removes every request in requests that hasn't been sent yet.
+     *
+     * @param requests Requests to remove
+     */
+    void removeRequests(List<ESPRequest> requests) {
+        for (int i = 0, size = requests.size(); i < size; i++) {
+            mConnection.removeRequest(requests.get(i));
         }
     }
     //endregion
@@ -10,4 +10,15 @@ public interface FailureCallback {
      * @param error Error describing the failure.
      */
     void onFailure(String error);
+
+    /**
+     * Callback method to be invoked when a request fails after being sent attempts times. By
+     * default, the number of attempts is appended to the error if the request was retried.
+     *
+     * @param error     Error describing the failure.
+     * @param attempts  Number of times the request was sent; 0 if it was never sent
+     */
+    default void onFailure(String error, int attempts) {
+        onFailure(attempts > 1 ? error + " (after " + attempts + " attempts)" : error);
+    }
 }
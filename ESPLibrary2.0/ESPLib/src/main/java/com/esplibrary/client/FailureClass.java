@@ -0,0 +1,27 @@
+package com.esplibrary.client;
+
+/**
+ * Classes of {@link ESPRequest} failures that a {@link RetryPolicy} can retry.
+ */
+public enum FailureClass {
+    /**
+     * The destination replied with {@link com.esplibrary.constants.PacketId#RESPREQUESTNOTPROCESSED}.
+     */
+    NotProcessed,
+    /**
+     * The destination replied with {@link com.esplibrary.constants.PacketId#RESPDATAERROR}.
+     */
+    DataError,
+    /**
+     * The destination replied with {@link com.esplibrary.constants.PacketId#RESPUNSUPPORTEDPACKET}.
+     */
+    Unsupported,
+    /**
+     * The request was sent but no response was received in time.
+     */
+    Timeout,
+    /**
+     * The request couldn't be written to the Bluetooth connection.
+     */
+    WriteFailed
+}
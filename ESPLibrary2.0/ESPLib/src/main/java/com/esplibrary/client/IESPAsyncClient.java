@@ -0,0 +1,276 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.V1Mode;
+import com.esplibrary.data.SAVVYStatus;
+import com.esplibrary.data.SweepData;
+import com.esplibrary.data.SweepDefinition;
+import com.esplibrary.data.SweepSection;
+import com.esplibrary.data.UserSettings;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Future based variant of the ESP request methods of {@link IESPClient}.
+ *
+ * <p>Every method sends the same request as its {@link IESPClient} counterpart and returns a
+ * {@link CompletableFuture} that completes with the response, or exceptionally with an {@link
+ * ESPRequestException} carrying the error the callback would have received. Futures complete on
+ * the thread the callback would have been invoked on; see {@link
+ * IESPClient#setCallbackExecutor(java.util.concurrent.Executor)}.</p>
+ *
+ * <p>Independent requests can be issued together and combined, for example with {@link
+ * CompletableFuture#allOf(CompletableFuture[])}. Use {@link ESPFutures#withTimeout(CompletableFuture,
+ * long, java.util.concurrent.TimeUnit)} to bound the time waited for a result. Cancelling a future,
+ * or letting it time out, discards its result, removes its requests that haven't been sent yet and
+ * stops multi-step operations from issuing their remaining requests; a request that has already
+ * been sent still gets its response, which is ignored.</p>
+ *
+ * @see IESPClient#async()
+ */
+public interface IESPAsyncClient {
+
+    //region Device Information
+    /**
+     * Request the firmware version of the provided {@link DeviceId device}.
+     * @param device The {@link DeviceId device} to request the version from
+     * @return Future completed with the version string
+     */
+    CompletableFuture<String> version(DeviceId device);
+
+    /**
+     * Request the firmware version of the provided {@link DeviceId device} as {@link Double}.
+     * @param device The {@link DeviceId device} to request the version from
+     * @return Future completed with the version
+     */
+    CompletableFuture<Double> versionAsDouble(DeviceId device);
+
+    /**
+     * Request the serial number of the provided {@link DeviceId device}.
+     * @param device The {@link DeviceId device} to request the serial number from
+     * @return Future completed with the serial number
+     */
+    CompletableFuture<String> serialNumber(DeviceId device);
+    //endregion
+
+    //region User Setup Options
+    /**
+     * Request the current user modifiable {@link UserSettings settings} in the V1.
+     * @param v1Version V1 version used to interpret the user settings
+     * @return Future completed with the user settings
+     */
+    CompletableFuture<UserSettings> userSettings(double v1Version);
+
+    /**
+     * Request the current user bytes of the V1.
+     * @return Future completed with the user bytes
+     */
+    CompletableFuture<byte []> userBytes();
+
+    /**
+     * Request the current user bytes of the provided {@link DeviceId device}.
+     * @param device The target device
+     * @return Future completed with the user bytes
+     */
+    CompletableFuture<byte []> userBytes(DeviceId device);
+
+    /**
+     * Request to update the user bytes of the V1.
+     * @param userBytes The new user bytes
+     * @return Future completed once the user bytes have been sent
+     */
+    CompletableFuture<Void> writeUserBytes(byte [] userBytes);
+
+    /**
+     * Request to update the user bytes of the provided {@link DeviceId device}.
+     * @param device    The target device
+     * @param userBytes The new user bytes
+     * @return Future completed once the user bytes have been sent
+     */
+    CompletableFuture<Void> writeUserBytes(DeviceId device, byte [] userBytes);
+
+    /**
+     * Request to reset the provided {@link DeviceId device's} factory settings.
+     * @param device The target device
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> factoryDefault(DeviceId device);
+    //endregion
+
+    //region Custom Sweep
+    /**
+     * Request for the V1 to use the List of {@link SweepDefinition custom sweeps}.
+     * @param sweeps List of {@link SweepDefinition custom sweeps} the V1 should use.
+     * @return Future completed with the sweep write result; see {@link
+     * IESPClient#requestWriteSweepDefinitions(List, com.esplibrary.client.callbacks.ESPRequestedDataListener)}
+     */
+    CompletableFuture<Integer> writeSweepDefinitions(List<SweepDefinition> sweeps);
+
+    /**
+     * Request all custom sweep {@link SweepDefinition definitions}.
+     * @return Future completed with the custom sweep definitions
+     */
+    CompletableFuture<List<SweepDefinition>> allSweepDefinitions();
+
+    /**
+     * Request that the V1 reset all custom sweep {@link SweepDefinition definitions} back to their
+     * default.
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> defaultSweeps();
+
+    /**
+     * Request to determine how many sweeps the current V1 version supports.
+     * @return Future completed with the maximum sweep index
+     */
+    CompletableFuture<Integer> maxSweepIndex();
+
+    /**
+     * Request the V1's available custom sweep {@link SweepSection sections}.
+     * @return Future completed with the sweep sections
+     */
+    CompletableFuture<List<SweepSection>> sweepSections();
+
+    /**
+     * Request all default sweep {@link SweepDefinition definitions}.
+     * @return Future completed with the default sweep definitions
+     */
+    CompletableFuture<List<SweepDefinition>> defaultSweepDefinitions();
+
+    /**
+     * Request all sweep data (max sweep index, sweep {@link SweepSection sections}, custom sweep
+     * {@link SweepDefinition definitions}, default sweep {@link SweepDefinition definitions}) from
+     * the V1. Requests that don't depend on each other are issued concurrently.
+     * @param v1Version Version of the currently attached V1.
+     * @return Future completed with the sweep data
+     */
+    CompletableFuture<SweepData> sweepData(double v1Version);
+    //endregion
+
+    //region Display and Audio
+    /**
+     * Request to abort the V1's current audio delay.
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> abortAudioDelay();
+
+    /**
+     * Request to display the V1's current volume on the V1.
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> displayCurrentVolume();
+
+    /**
+     * Request to force the display of the provided {@link DeviceId device} on or off.
+     * @param device        The target device
+     * @param displayOn     The new display state
+     * @param keepBTLedOn   Keep the Bluetooth LED on when the display is turned off
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> setDisplayState(DeviceId device, boolean displayOn, boolean keepBTLedOn);
+
+    /**
+     * Request to mute or unmute all alerts in the V1.
+     * @param mute True to mute
+     * @return Future completed once the V1 has been muted/unmuted
+     */
+    CompletableFuture<Void> mute(boolean mute);
+
+    /**
+     * Request to change the current mode on the V1.
+     * @param mode The new mode the V1 should operate in
+     * @return Future completed once the mode has changed
+     */
+    CompletableFuture<Void> changeMode(V1Mode mode);
+
+    /**
+     * Request to read the V1's current volume settings.
+     * @return Future completed with the current volume settings
+     */
+    CompletableFuture<byte []> currentVolume();
+
+    /**
+     * Request to read all of the V1's volume settings.
+     * @return Future completed with the volume settings
+     */
+    CompletableFuture<byte []> allVolume();
+
+    /**
+     * Request to change the V1's current volume settings.
+     * @param mainVolume    main volume (valid values are 0-9)
+     * @param mutedVolume   muted volume (valid values are 0-9)
+     * @param aux0          reserved for future use by Valentine Research Inc.
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> writeVolumeSettings(byte mainVolume, byte mutedVolume, byte aux0);
+    //endregion
+
+    //region Alert Output
+    /**
+     * Request to receive information on all alerts being displayed on the V1's front panel.
+     * @return Future completed once alert information has started to be received
+     */
+    CompletableFuture<Void> startAlertData();
+
+    /**
+     * Request to stop the V1 from sending alert information.
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> stopAlertData();
+
+    /**
+     * Request the V1 to stop sending alert information as fast as possible.
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> stopAlertDataImmediately();
+    //endregion
+
+    //region Miscellaneous
+    /**
+     * Request the battery voltage at the connection to the V1.
+     * @return Future completed with the battery voltage
+     */
+    CompletableFuture<String> batteryVoltage();
+    //endregion
+
+    //region SAVVY Specific
+    /**
+     * Request the current status from the SAVVY.
+     * @return Future completed with the {@link SAVVYStatus}
+     */
+    CompletableFuture<SAVVYStatus> savvyStatus();
+
+    /**
+     * Request the current vehicle speed measured by the SAVVY.
+     * @return Future completed with the vehicle speed
+     */
+    CompletableFuture<Integer> vehicleSpeed();
+
+    /**
+     * Request to override the SAVVY mute threshold speed.
+     * @param speed The new threshold speed
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> overrideThumbwheel(byte speed);
+
+    /**
+     * Request to disable SAVVY muting at any speed.
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> overrideThumbwheelToNone();
+
+    /**
+     * Request to mute at all speeds ("Auto").
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> overrideThumbwheelToAuto();
+
+    /**
+     * Request to enable or disable the unmute functionality in the SAVVY.
+     * @param muteEnabled Controls if unmuting is enabled
+     * @return Future completed once the request has been sent
+     */
+    CompletableFuture<Void> savvyUnmute(boolean muteEnabled);
+    //endregion
+}
@@ -28,8 +28,10 @@ import com.esplibrary.data.UserSettings;
 import com.esplibrary.packets.ESPPacket;
 import com.esplibrary.packets.InfDisplayData;
 import com.esplibrary.packets.PacketFactory;
+import com.esplibrary.packets.PacketFilter;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Interface for interacting with a V1.
@@ -79,7 +81,24 @@ public interface IESPClient {
      * @return  Initialized {@link IESPClient client}.
      */
     static IESPClient getClient(Context appContext, @Nullable ESPClientListener listener, ConnectionType type, long dataTimeout) {
-        PacketFactory factory = new PacketFactory();
+        return IESPClient.getClient(appContext, listener, type, dataTimeout, new PacketFactory());
+    }
+
+    /**
+     * Returns a {@link IESPClient client} initialized for the specified {@link ConnectionType} that
+     * uses factory to construct received ESP packets.
+     *
+     * @param type          Connection typed this client will be using to communicate with a
+     *                      V1connectionWrapper.
+     * @param dataTimeout   Number of milliseconds the library will wait before indicating no ESP
+     *                      data has been received.
+     * @param listener      A listener to be invoked when ESP data has been received.
+     * @param factory       {@link PacketFactory} used to construct ESP packets, such as a factory
+     *                      with {@link PacketFactory#PacketFactory(int) pooling} enabled.
+     *
+     * @return  Initialized {@link IESPClient client}.
+     */
+    static IESPClient getClient(Context appContext, @Nullable ESPClientListener listener, ConnectionType type, long dataTimeout, PacketFactory factory) {
         IESPClient client;
         switch (type) {
             case LE:
@@ -218,6 +237,46 @@ public interface IESPClient {
      * further notification data.
      */
     void clearNotificationListener();
+
+    /**
+     * Sets a {@link PacketFilter filter} for ESP traffic that isn't addressed to the library, such as
+     * packets sent between the V1 and other accessories. Accepted packets are delivered to
+     * {@link ESPClientListener#onPacketReceived(ESPPacket)}. All other foreign traffic is discarded
+     * before a packet is constructed.
+     *
+     * @param filter The {@link PacketFilter filter} for foreign ESP traffic.
+     *
+     * @see com.esplibrary.packets.PacketMaskFilter
+     */
+    void setPacketFilter(PacketFilter filter);
+
+    /**
+     * Clears the registered {@link PacketFilter filter}. All ESP traffic that isn't addressed to the
+     * library will be discarded.
+     */
+    void clearPacketFilter();
+
+    /**
+     * Sets the executor that the callbacks of ESP requests are invoked on. Callbacks are always
+     * invoked after the library's internal locks have been released, so a slow callback doesn't
+     * hold up sending or receiving ESP data unless it runs on the {@link
+     * CallbackExecutors#DIRECT direct executor}.
+     *
+     * @param executor Callback executor; {@link CallbackExecutors#DIRECT} by default
+     *
+     * @see CallbackExecutors#mainLooper()
+     * @see CallbackExecutors#boundedPool(int, int)
+     */
+    void setCallbackExecutor(Executor executor);
+
+    /**
+     * Returns a view of this client whose requests return {@link
+     * java.util.concurrent.CompletableFuture futures} instead of invoking callbacks. Requests made
+     * through either API share the same connection and request queue.
+     *
+     * @return {@link IESPAsyncClient} backed by this client
+     */
+    IESPAsyncClient async();
     //endregion
 
     //region Connection methods
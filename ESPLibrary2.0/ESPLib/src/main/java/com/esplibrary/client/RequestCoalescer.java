@@ -0,0 +1,98 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.ESPPacket;
+
+/**
+ * Rules for collapsing identical read-only {@link ESPRequest ESPRequests} into a single bus
+ * transaction.
+ *
+ * <p>Only queries answered by exactly one response packet are coalesced, so a callback attached
+ * to a request that's already in flight can't miss part of the response. Requests that change the
+ * state of a device are never coalesced.</p>
+ */
+public final class RequestCoalescer {
+
+    private RequestCoalescer() {}
+
+    /**
+     * Indicates if requests for the specified packet ID are read-only queries that may be
+     * coalesced.
+     *
+     * @param packetId Packet ID of the request
+     *
+     * @return True if the request may be coalesced
+     */
+    public static boolean isCoalescible(int packetId) {
+        switch (packetId) {
+            case PacketId.REQVERSION:
+            case PacketId.REQSERIALNUMBER:
+            case PacketId.REQUSERBYTES:
+            case PacketId.REQMAXSWEEPINDEX:
+            case PacketId.REQCURRENTVOLUME:
+            case PacketId.REQALLVOLUME:
+            case PacketId.REQBATTERYVOLTAGE:
+            case PacketId.REQSAVVYSTATUS:
+            case PacketId.REQVEHICLESPEED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Indicates if request may be attached to an identical request that's queued or in flight.
+     *
+     * @param request Request to check
+     *
+     * @return True if the request may be coalesced
+     */
+    public static boolean isCoalescible(ESPRequest request) {
+        final ResponseHandler<?> handler = request.respHandler;
+        // Without a response to wait for there is nothing to share.
+        return handler != null && handler.responseCount() > 0
+                && isCoalescible(request.packet.getPacketID());
+    }
+
+    /**
+     * Indicates if two packets are the same request to the same device. The V1 type a packet was
+     * framed for (the checksum) is ignored.
+     *
+     * @param a First packet
+     * @param b Second packet
+     *
+     * @return True if both packets have the same packet ID, destination and payload
+     */
+    public static boolean isSameRequest(ESPPacket a, ESPPacket b) {
+        if (a.getPacketID() != b.getPacketID()
+                || (a.getDestinationByte() & 0x0F) != (b.getDestinationByte() & 0x0F)) {
+            return false;
+        }
+        final int length = a.getPayloadLength();
+        if (length != b.getPayloadLength()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (a.getPayloadByte(i) != b.getPayloadByte(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Attaches request to queued, if both are identical coalescible requests.
+     *
+     * @param queued    Request that's already queued or in flight
+     * @param request   New request
+     *
+     * @return True if request was attached and must not be sent
+     */
+    static boolean coalesce(ESPRequest queued, ESPRequest request) {
+        final ResponseHandler<?> target = queued.respHandler;
+        if (target == null || target == request.respHandler || !isSameRequest(queued.packet, request.packet)) {
+            return false;
+        }
+        return target.coalesce(request.respHandler);
+    }
+}
@@ -0,0 +1,139 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.PacketId;
+
+/**
+ * Decides whether a failed {@link ESPRequest} is sent again, based on a {@link RetryPolicy} per
+ * packet ID.
+ *
+ * <p>Only {@link ResponseHandler handlers} that sent a single request are retried; replaying part
+ * of a multi-packet transaction could leave the destination in an inconsistent state. Requests
+ * that must not be sent twice, such as {@link PacketId#REQFACTORYDEFAULT}, are never retried
+ * regardless of the policy.</p>
+ */
+public final class RequestRetrier {
+
+    /**
+     * Interface definition for sending a request again once its backoff has elapsed.
+     */
+    public interface Resubmitter {
+        /**
+         * Called to send request again after delayMillis.
+         *
+         * @param request       Request to send again
+         * @param delayMillis   Number of milliseconds to wait before sending the request
+         */
+        void resubmit(ESPRequest request, long delayMillis);
+    }
+
+    private final Resubmitter mResubmitter;
+    /**
+     * Policies indexed by packet ID; null entries use {@link #mDefaultPolicy}.
+     */
+    private final RetryPolicy [] mPolicies = new RetryPolicy[256];
+    private volatile RetryPolicy mDefaultPolicy = RetryPolicy.NONE;
+
+    /**
+     * Constructs a retrier that doesn't retry anything until a policy is set.
+     *
+     * @param resubmitter Sends retried requests
+     */
+    public RequestRetrier(Resubmitter resubmitter) {
+        if (resubmitter == null) {
+            throw new IllegalArgumentException("Resubmitter cannot be null");
+        }
+        mResubmitter = resubmitter;
+    }
+
+    /**
+     * Indicates if requests for the specified packet ID may be sent more than once.
+     *
+     * @param packetId Packet ID of the request
+     *
+     * @return True if the request may be retried
+     */
+    public static boolean isRetryable(int packetId) {
+        switch (packetId) {
+            // Resets that must not be repeated without the user's consent.
+            case PacketId.REQFACTORYDEFAULT:
+            case PacketId.REQDEFAULTSWEEPS:
+            // Part of a multi-packet transaction.
+            case PacketId.REQWRITESWEEPDEFINITION:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Sets the policy used for requests with packetId.
+     *
+     * @param packetId  Packet ID of the request
+     * @param policy    Retry policy; null to use the default policy
+     */
+    public void setPolicy(int packetId, RetryPolicy policy) {
+        synchronized (mPolicies) {
+            mPolicies[packetId & 0xFF] = policy;
+        }
+    }
+
+    /**
+     * Sets the policy used for requests without a policy of their own.
+     *
+     * @param policy Retry policy; {@link RetryPolicy#NONE} by default
+     */
+    public void setDefaultPolicy(RetryPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("RetryPolicy cannot be null");
+        }
+        mDefaultPolicy = policy;
+    }
+
+    /**
+     * Returns the policy used for requests with packetId.
+     *
+     * @param packetId Packet ID of the request
+     *
+     * @return Retry policy
+     */
+    public RetryPolicy getPolicy(int packetId) {
+        final RetryPolicy policy;
+        synchronized (mPolicies) {
+            policy = mPolicies[packetId & 0xFF];
+        }
+        return policy != null ? policy : mDefaultPolicy;
+    }
+
+    /**
+     * Sends the request of handler again if its policy allows it. If the request is retried, the
+     * handler must not be failed.
+     *
+     * @param handler Handler that failed; no longer awaiting a response
+     * @param failure Class of the failure; null failures are never retried
+     *
+     * @return True if the request will be sent again
+     */
+    boolean retry(ResponseHandler<?> handler, FailureClass failure) {
+        if (handler == null || failure == null) {
+            return false;
+        }
+        final ESPRequest request = handler.getSingleRequest();
+        if (request == null) {
+            return false;
+        }
+        final int packetId = request.packet.getPacketID();
+        if (!isRetryable(packetId)) {
+            return false;
+        }
+        final RetryPolicy policy = getPolicy(packetId);
+        if (!policy.shouldRetry(failure, request.attempts)) {
+            return false;
+        }
+        final long backoff = policy.getBackoff(request.attempts);
+        handler.clearSentRequests();
+        // The request's timeout starts over once it's sent again.
+        request.requestTime = System.currentTimeMillis() + backoff;
+        mResubmitter.resubmit(request, backoff);
+        return true;
+    }
+}
@@ -0,0 +1,459 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.PacketId;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Priority scheduler for {@link ESPRequest ESPRequests} waiting to be sent on the ESP bus.
+ *
+ * <p>Requests are placed into one of three {@link Lane lanes}. Lanes are served in strict
+ * priority order, except that a request that has been waiting in a lower lane for longer than that
+ * lane's aging limit is served ahead of the {@link Lane#INTERACTIVE interactive} lane so bulk
+ * transfers can't be starved. Nothing is ever served ahead of the {@link Lane#SAFETY safety}
+ * lane. Inside of a lane, every destination device has its own FIFO and the destinations are
+ * served round-robin so one device can't monopolize the bus.</p>
+ *
+ * <p>Requests the V1 reported as busy can be {@link #defer(ESPRequest) deferred}. Deferred requests
+ * are parked outside of the lanes until they are {@link #releaseDeferred() released} back into
+ * them, ahead of every other request.</p>
+ *
+ * <p>Producers hand requests to the scheduler through a lock-free submission queue using {@link
+ * #submit(ESPRequest, boolean)}; the single consumer (the writer) moves them into the lanes with
+ * {@link #pollSubmission()} and {@link #addSubmission(ESPRequest)}, so submitting a request never
+ * blocks behind the writer or expiry processing.</p>
+ *
+ * <p>Apart from {@link #submit(ESPRequest, boolean)} and {@link #pollSubmission()} this class is
+ * not thread-safe; callers synchronize on the scheduler instance.</p>
+ */
+public class RequestScheduler {
+
+    /**
+     * Scheduling lanes, in priority order.
+     */
+    public enum Lane {
+        /**
+         * Requests that must reach the V1 as soon as possible, such as muting. This lane is never
+         * preempted and is always served first, so it doesn't age.
+         */
+        SAFETY(0),
+        /**
+         * Requests triggered by user interaction, such as mode, volume and display changes.
+         */
+        INTERACTIVE(500),
+        /**
+         * Long running transfers, such as reading or writing sweep definitions and user bytes.
+         */
+        BULK(2000);
+
+        /**
+         * Number of milliseconds a request may wait in this lane before it is served ahead of the
+         * higher priority lanes other than {@link #SAFETY}. Zero means requests in this lane are
+         * always treated as aged. Not used by {@link #SAFETY}.
+         */
+        public final long agingMillis;
+
+        Lane(long agingMillis) {
+            this.agingMillis = agingMillis;
+        }
+    }
+
+    /**
+     * Number of addressable ESP devices; destinations are identified by the low nibble of the
+     * destination byte.
+     */
+    private final static int DESTINATION_COUNT = 16;
+    private final static Lane [] LANES = Lane.values();
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ESPRequest> [][] mQueues =
+            (ArrayDeque<ESPRequest> [][]) new ArrayDeque<?>[LANES.length][DESTINATION_COUNT];
+    /**
+     * Destination index each lane's round-robin resumes at.
+     */
+    private final int [] mNextDestination = new int[LANES.length];
+    /**
+     * Requests parked until the V1 is no longer busy, in the order they were deferred.
+     */
+    private final ArrayDeque<ESPRequest> mDeferred = new ArrayDeque<>();
+    /**
+     * Requests submitted by producers that haven't been moved into the lanes yet.
+     */
+    private final ConcurrentLinkedQueue<ESPRequest> mSubmissions = new ConcurrentLinkedQueue<>();
+    private int mSize = 0;
+
+    /**
+     * Returns the {@link Lane} requests for the specified packet ID are scheduled in.
+     *
+     * <p>Requests that change the same V1 state, such as starting and stopping alert data or
+     * writing user bytes and restoring the factory defaults, are always placed in the same lane.
+     * Requests to a destination are sent in the order they were queued inside of a lane, so the
+     * last state requested is the one the V1 ends up in.</p>
+     *
+     * @param packetId Packet ID of the request
+     *
+     * @return Scheduling lane
+     */
+    public static Lane laneFor(int packetId) {
+        switch (packetId) {
+            case PacketId.REQMUTEON:
+            case PacketId.REQMUTEOFF:
+            case PacketId.REQSTARTALERTDATA:
+            case PacketId.REQSTOPALERTDATA:
+            case PacketId.REQABORTAUDIODELAY:
+                return Lane.SAFETY;
+            case PacketId.REQFACTORYDEFAULT:
+            case PacketId.REQUSERBYTES:
+            case PacketId.REQWRITEUSERBYTES:
+            case PacketId.REQWRITESWEEPDEFINITION:
+            case PacketId.REQALLSWEEPDEFINITIONS:
+            case PacketId.REQDEFAULTSWEEPDEFINITIONS:
+            case PacketId.REQDEFAULTSWEEPS:
+            case PacketId.REQMAXSWEEPINDEX:
+            case PacketId.REQSWEEPSECTIONS:
+                return Lane.BULK;
+            default:
+                return Lane.INTERACTIVE;
+        }
+    }
+
+    /**
+     * Submits request to be scheduled. This method is lock-free and may be called from any thread
+     * without synchronizing on the scheduler.
+     *
+     * @param request       Request to schedule
+     * @param nextToSend    True to place the request ahead of every other request in its lane
+     */
+    public void submit(ESPRequest request, boolean nextToSend) {
+        request.nextToSend = nextToSend;
+        mSubmissions.offer(request);
+    }
+
+    /**
+     * Removes and returns the oldest submitted request. This method is lock-free; it's meant to be
+     * called by the single consumer of the scheduler.
+     *
+     * @return Submitted request or null if there aren't any
+     */
+    public ESPRequest pollSubmission() {
+        return mSubmissions.poll();
+    }
+
+    /**
+     * Adds a request returned by {@link #pollSubmission()} to the scheduler, unless it's attached
+     * to an identical read-only request that's already queued.
+     *
+     * @param request Submitted request
+     *
+     * @return True if the request was queued, false if it was coalesced
+     *
+     * @see RequestCoalescer
+     */
+    public boolean addSubmission(ESPRequest request) {
+        if (coalesce(request)) {
+            return false;
+        }
+        add(request, request.nextToSend);
+        return true;
+    }
+
+    /**
+     * Adds request to the scheduler.
+     *
+     * @param request       Request to schedule
+     * @param nextToSend    True to place the request ahead of every other request in its lane
+     */
+    public void add(ESPRequest request, boolean nextToSend) {
+        final Lane lane = laneFor(request.packet.getPacketID());
+        final int dest = request.packet.getDestinationByte() & 0x0F;
+        ArrayDeque<ESPRequest> queue = mQueues[lane.ordinal()][dest];
+        if (queue == null) {
+            queue = new ArrayDeque<>(4);
+            mQueues[lane.ordinal()][dest] = queue;
+        }
+        request.queuedTime = System.currentTimeMillis();
+        if (nextToSend) {
+            queue.addFirst(request);
+            // Make sure the request's destination is the next one served in the lane.
+            mNextDestination[lane.ordinal()] = dest;
+        }
+        else {
+            queue.addLast(request);
+        }
+        mSize++;
+    }
+
+    /**
+     * Removes and returns the next request that should be sent.
+     *
+     * @return Next request or null if the scheduler is empty
+     */
+    public ESPRequest poll() {
+        return poll(null);
+    }
+
+    /**
+     * Removes and returns the next request that should be sent, skipping every destination that
+     * isn't ready to accept another request.
+     *
+     * @param destinationReady  Returns true if the destination {@link
+     *                          com.esplibrary.constants.DeviceId#toByte() Id} (upper nibble
+     *                          removed) can accept a request. Null treats every destination as
+     *                          ready.
+     *
+     * @return Next request or null if no request can be sent to a ready destination
+     */
+    public ESPRequest poll(IntPredicate destinationReady) {
+        if (mSize == 0) {
+            return null;
+        }
+        // Safety-critical requests always go first.
+        ESPRequest request = pollLane(Lane.SAFETY.ordinal(), destinationReady);
+        if (request != null) {
+            return request;
+        }
+        final long now = System.currentTimeMillis();
+        // Serve the longest waiting request that has aged out of a lower priority lane.
+        int agedLane = -1;
+        int agedDest = -1;
+        long oldest = Long.MAX_VALUE;
+        for (int lane = 1; lane < LANES.length; lane++) {
+            final long agingMillis = LANES[lane].agingMillis;
+            for (int dest = 0; dest < DESTINATION_COUNT; dest++) {
+                ESPRequest head = peek(lane, dest);
+                if (head != null && isReady(destinationReady, dest) && head.queuedTime < oldest && (now - head.queuedTime) >= agingMillis) {
+                    oldest = head.queuedTime;
+                    agedLane = lane;
+                    agedDest = dest;
+                }
+            }
+        }
+        if (agedLane != -1) {
+            return take(agedLane, agedDest);
+        }
+        for (int lane = 1; lane < LANES.length; lane++) {
+            request = pollLane(lane, destinationReady);
+            if (request != null) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the next request of lane, serving its destinations round-robin.
+     */
+    private ESPRequest pollLane(int lane, IntPredicate destinationReady) {
+        for (int i = 0; i < DESTINATION_COUNT; i++) {
+            int dest = (mNextDestination[lane] + i) % DESTINATION_COUNT;
+            if (peek(lane, dest) != null && isReady(destinationReady, dest)) {
+                return take(lane, dest);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes and returns the highest priority request accepted by filter. Aging is not applied.
+     *
+     * @param filter Predicate a request must satisfy to be returned
+     *
+     * @return Matching request or null if no queued request matches
+     */
+    public ESPRequest pollMatching(Predicate<ESPRequest> filter) {
+        for (int lane = 0; lane < LANES.length; lane++) {
+            for (int i = 0; i < DESTINATION_COUNT; i++) {
+                int dest = (mNextDestination[lane] + i) % DESTINATION_COUNT;
+                ArrayDeque<ESPRequest> queue = mQueues[lane][dest];
+                if (queue == null || queue.isEmpty()) {
+                    continue;
+                }
+                Iterator<ESPRequest> it = queue.iterator();
+                while (it.hasNext()) {
+                    ESPRequest request = it.next();
+                    if (filter.test(request)) {
+                        it.remove();
+                        mSize--;
+                        return request;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes request if it's queued or deferred.
+     *
+     * @param request Request to remove
+     *
+     * @return True if request was removed
+     */
+    public boolean remove(ESPRequest request) {
+        if (mDeferred.remove(request) || mSubmissions.remove(request)) {
+            return true;
+        }
+        final int lane = laneFor(request.packet.getPacketID()).ordinal();
+        final ArrayDeque<ESPRequest> queue = mQueues[lane][request.packet.getDestinationByte() & 0x0F];
+        if (queue != null && queue.remove(request)) {
+            mSize--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parks request until {@link #releaseDeferred()} is called. Deferred requests aren't returned
+     * by any of the poll methods and aren't counted by {@link #size()}.
+     *
+     * @param request Request whose packet ID the V1 is busy processing
+     */
+    public void defer(ESPRequest request) {
+        // Give the request a full timeout while it waits for the V1; a V1 that stays busy for
+        // longer than that will still cause the request to time out.
+        request.requestTime = System.currentTimeMillis();
+        mDeferred.addLast(request);
+    }
+
+    /**
+     * Moves every deferred request back into its lane, ahead of the requests already queued and
+     * in the order they were deferred.
+     *
+     * @return Number of released requests
+     */
+    public int releaseDeferred() {
+        final int released = mDeferred.size();
+        final long now = System.currentTimeMillis();
+        ESPRequest request;
+        // Walk backwards so re-adding each request to the front of its queue keeps their order.
+        while ((request = mDeferred.pollLast()) != null) {
+            request.requestTime = now;
+            add(request, true);
+        }
+        return released;
+    }
+
+    /**
+     * Returns the number of deferred requests.
+     *
+     * @return Number of deferred requests
+     */
+    public int deferredCount() {
+        return mDeferred.size();
+    }
+
+    /**
+     * Attaches request to an identical read-only request that's already queued.
+     *
+     * @param request Request to coalesce
+     *
+     * @return True if request was attached to a queued request and must not be queued
+     *
+     * @see RequestCoalescer
+     */
+    public boolean coalesce(ESPRequest request) {
+        if (!RequestCoalescer.isCoalescible(request)) {
+            return false;
+        }
+        final int lane = laneFor(request.packet.getPacketID()).ordinal();
+        final ArrayDeque<ESPRequest> queue = mQueues[lane][request.packet.getDestinationByte() & 0x0F];
+        if (queue != null) {
+            for (ESPRequest queued : queue) {
+                if (RequestCoalescer.coalesce(queued, request)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every submitted, queued or deferred request accepted by filter.
+     *
+     * @param filter Predicate that returns true for requests to remove
+     *
+     * @return Number of removed requests
+     */
+    public int removeIf(Predicate<ESPRequest> filter) {
+        final int deferred = mDeferred.size();
+        mDeferred.removeIf(filter);
+        int removed = 0;
+        // Submitted requests aren't counted by mSize.
+        int submitted = 0;
+        for (Iterator<ESPRequest> it = mSubmissions.iterator(); it.hasNext(); ) {
+            if (filter.test(it.next())) {
+                it.remove();
+                submitted++;
+            }
+        }
+        for (ArrayDeque<ESPRequest> [] laneQueues : mQueues) {
+            for (ArrayDeque<ESPRequest> queue : laneQueues) {
+                if (queue == null || queue.isEmpty()) {
+                    continue;
+                }
+                Iterator<ESPRequest> it = queue.iterator();
+                while (it.hasNext()) {
+                    if (filter.test(it.next())) {
+                        it.remove();
+                        removed++;
+                    }
+                }
+            }
+        }
+        mSize -= removed;
+        return removed + submitted + (deferred - mDeferred.size());
+    }
+
+    /**
+     * Removes every submitted, queued and deferred request.
+     */
+    public void clear() {
+        mSubmissions.clear();
+        mDeferred.clear();
+        for (ArrayDeque<ESPRequest> [] laneQueues : mQueues) {
+            for (ArrayDeque<ESPRequest> queue : laneQueues) {
+                if (queue != null) {
+                    queue.clear();
+                }
+            }
+        }
+        mSize = 0;
+    }
+
+    /**
+     * Returns the number of queued requests.
+     *
+     * @return Number of queued requests
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Indicates if there are no queued requests.
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    private static boolean isReady(IntPredicate destinationReady, int dest) {
+        return destinationReady == null || destinationReady.test(dest);
+    }
+
+    private ESPRequest peek(int lane, int dest) {
+        ArrayDeque<ESPRequest> queue = mQueues[lane][dest];
+        return queue != null ? queue.peekFirst() : null;
+    }
+
+    private ESPRequest take(int lane, int dest) {
+        mNextDestination[lane] = (dest + 1) % DESTINATION_COUNT;
+        mSize--;
+        return mQueues[lane][dest].pollFirst();
+    }
+}
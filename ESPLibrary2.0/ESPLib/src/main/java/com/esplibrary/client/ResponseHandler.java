@@ -4,10 +4,13 @@ import androidx.annotation.Nullable;
 
 import com.esplibrary.constants.DeviceId;
 import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.utilities.ESPLogger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Object used for completing ESP response.
@@ -16,6 +19,8 @@ import java.util.List;
  */
 public class ResponseHandler<T extends ESPPacket> {
 
+    private final static String LOG_TAG = "ResponseHandler";
+
     /**
      * List of packet ID's this handler responds to
      */
@@ -24,6 +29,10 @@ public class ResponseHandler<T extends ESPPacket> {
      * List of {@link ESPRequest} that correspond to this handler
      */
     List<ESPRequest> _requests = new ArrayList<>();
+    /**
+     * Largest number of times one of the requests has been sent. Guarded by {@link #_requests}.
+     */
+    private int _attempts;
 
     /**
      * Callback that will be invoked when a response has been received
@@ -35,6 +44,33 @@ public class ResponseHandler<T extends ESPPacket> {
      */
     @Nullable
     public FailureCallback failureCallback;
+    /**
+     * Executor the callbacks are dispatched on; null to use the {@link
+     * ResponseProcessor#setCallbackExecutor(Executor) processor's executor}.
+     *
+     * @see CallbackExecutors
+     */
+    @Nullable
+    public Executor callbackExecutor;
+
+    /**
+     * Callbacks waiting to be run, in order. Guarded by itself.
+     */
+    private final ArrayDeque<Runnable> _callbacks = new ArrayDeque<>(2);
+    /**
+     * True while a task draining {@link #_callbacks} is scheduled or running. Guarded by
+     * {@link #_callbacks}.
+     */
+    private boolean _dispatching;
+    /**
+     * True once the handler has succeeded or failed. Guarded by {@link #_callbacks}.
+     */
+    private boolean _completed;
+    /**
+     * True once the success callback has accepted its final response, even if the handler was
+     * failed while the callback ran. Guarded by {@link #_callbacks}.
+     */
+    private boolean _delivered;
 
     public ResponseHandler() {
         this(null, null);
@@ -141,6 +177,24 @@ public class ResponseHandler<T extends ESPPacket> {
         return false;
     }
 
+    /**
+     * Indicate if this handler has a {@link ESPRequest packet} whose packet ID is in busyPacketIds.
+     *
+     * @param busyPacketIds Packet IDs the V1 is busy processing
+     *
+     * @return  True if the handler has a packet that the V1 is busy processing.
+     */
+    public boolean hasRequestIn(BusyPacketIds busyPacketIds) {
+        synchronized (_requests) {
+            for (int i = 0, size = _requests.size(); i < size; i++) {
+                if(busyPacketIds.contains(_requests.get(i).packet.getPacketID())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Adds the provided {@link ESPRequest} to this handler and set's it sent time.
      *
@@ -152,10 +206,47 @@ public class ResponseHandler<T extends ESPPacket> {
         }
         synchronized (_requests) {
             request.sentTime = System.currentTimeMillis();
+            request.attempts++;
+            _attempts = Math.max(_attempts, request.attempts);
             _requests.add(request);
         }
     }
 
+    /**
+     * Returns the only {@link ESPRequest} sent for this handler.
+     *
+     * @return Sent request or null if zero or several requests were sent
+     */
+    ESPRequest getSingleRequest() {
+        synchronized (_requests) {
+            return _requests.size() == 1 ? _requests.get(0) : null;
+        }
+    }
+
+    /**
+     * Forgets every sent {@link ESPRequest} so the handler can be used to send them again.
+     */
+    void clearSentRequests() {
+        synchronized (_requests) {
+            for (int i = 0, size = _requests.size(); i < size; i++) {
+                _requests.get(i).sentTime = -1;
+            }
+            _requests.clear();
+        }
+    }
+
+    /**
+     * Returns the number of times the request of this handler was sent, including the attempts
+     * that preceded a retry. For handlers with several requests, the largest count is returned.
+     *
+     * @return Number of attempts; 0 if nothing was sent
+     */
+    public int getAttempts() {
+        synchronized (_requests) {
+            return _attempts;
+        }
+    }
+
     /**
      * Registers a packet ID of the packet that this handler should respond to.
      *
@@ -180,28 +271,32 @@ public class ResponseHandler<T extends ESPPacket> {
      * @return True if all of the handlers packet have expired.
      */
     public boolean hasExpired(long timeout, long now) {
+        return getExpiryTime(timeout) <= now;
+    }
+
+    /**
+     * Returns the time at which the handler expires. A ResponseHandler isn't considered expired
+     * until all of it's packet have timed out. Requests with their own {@link
+     * ESPRequest#setTimeout(long) timeout} use it, the remaining requests use the provided timeout
+     * or their minimum processing time, whichever is longer.
+     *
+     * @param timeout Default timeout
+     *
+     * @return Expiration time in milliseconds since the epoch
+     */
+    public long getExpiryTime(long timeout) {
+        long expiryTime = 0;
         synchronized (_requests) {
-            // A ResponseHandler isn't considered expired until all of it's packet have timed out.
-            // If there is at least one packet not timed out, return false.
             for (int i = 0, size = _requests.size(); i < size; i++) {
                 ESPRequest request = _requests.get(i);
-
-                if (request.hasTimeout()) { // If the request has a time out check if we've
-                    // exceeded the allowed time period
-                    if(request.sentTime + request.mTimeout < now) {
-                        return true;
-                    }
-                    return false;
-                }
-                // If the request is still below the timeout or the minimum processing time, the
-                // response handler hasn't expired
-                if((request.sentTime + timeout) > now ||
-                        (request.sentTime + request.processingTime) > now) {
-                    return false;
+                final long requestExpiry = request.hasTimeout() ? request.sentTime + request.mTimeout
+                        : request.sentTime + Math.max(timeout, request.processingTime);
+                if (requestExpiry > expiryTime) {
+                    expiryTime = requestExpiry;
                 }
             }
         }
-        return true;
+        return expiryTime;
     }
 
     /**
@@ -243,4 +338,233 @@ public class ResponseHandler<T extends ESPPacket> {
         }
         return false;
     }
+
+    /**
+     * Returns the {@link ResponseProcessor#dispatchKey(int, int) dispatch keys} of every
+     * response this handler responds to, that is every registered response ID combined with the
+     * destination of every request.
+     *
+     * @return Dispatch keys, possibly containing duplicates
+     */
+    int [] getDispatchKeys() {
+        synchronized (_responseIds) {
+            synchronized (_requests) {
+                final int idCount = _responseIds.size();
+                final int requestCount = _requests.size();
+                final int [] keys = new int[idCount * requestCount];
+                int k = 0;
+                for (int i = 0; i < idCount; i++) {
+                    final int responseId = _responseIds.get(i).intValue();
+                    for (int j = 0; j < requestCount; j++) {
+                        keys[k++] = ResponseProcessor.dispatchKey(responseId,
+                                _requests.get(j).packet.getDestinationByte());
+                    }
+                }
+                return keys;
+            }
+        }
+    }
+
+    /**
+     * Runs callback on executor after every callback dispatched before it, so the callbacks of this
+     * handler never run concurrently or out of order.
+     *
+     * @param executor  Executor to run the callbacks on
+     * @param callback  Callback to run
+     */
+    void dispatch(Executor executor, Runnable callback) {
+        synchronized (_callbacks) {
+            _callbacks.add(callback);
+            if (_dispatching) {
+                // The scheduled drain will pick it up.
+                return;
+            }
+            _dispatching = true;
+        }
+        executor.execute(this::drainCallbacks);
+    }
+
+    private void drainCallbacks() {
+        while (true) {
+            final Runnable callback;
+            synchronized (_callbacks) {
+                callback = _callbacks.poll();
+                if (callback == null) {
+                    _dispatching = false;
+                    return;
+                }
+            }
+            try {
+                callback.run();
+            }
+            catch (RuntimeException e) {
+                // Don't let a broken callback stall the callbacks queued behind it.
+                ESPLogger.e(LOG_TAG, "Callback threw an exception: " + e);
+            }
+        }
+    }
+
+    /**
+     * Marks the handler as succeeded or failed.
+     *
+     * @return True if the handler wasn't already complete; only the caller that completes the
+     * handler may invoke its final callback
+     */
+    boolean complete() {
+        synchronized (_callbacks) {
+            if (_completed) {
+                return false;
+            }
+            _completed = true;
+            return true;
+        }
+    }
+
+    /**
+     * Indicates if the handler has succeeded or failed.
+     *
+     * @return True if complete
+     */
+    boolean isComplete() {
+        synchronized (_callbacks) {
+            return _completed;
+        }
+    }
+
+    /**
+     * Records that the success callback accepted its final response.
+     */
+    void markDelivered() {
+        synchronized (_callbacks) {
+            _delivered = true;
+        }
+    }
+
+    /**
+     * Indicates if the success callback accepted its final response.
+     *
+     * @return True if the final response was delivered
+     */
+    boolean isDelivered() {
+        synchronized (_callbacks) {
+            return _delivered;
+        }
+    }
+
+    /**
+     * Makes a complete handler usable again when it's registered for another request.
+     */
+    void resetCompletion() {
+        synchronized (_callbacks) {
+            _completed = false;
+            _delivered = false;
+        }
+    }
+
+    /**
+     * Indicates if this handler responds to exactly the same packet IDs as other.
+     *
+     * @param other Handler to compare against
+     *
+     * @return True if both handlers respond to the same packet IDs
+     */
+    boolean hasSameResponseIds(ResponseHandler<?> other) {
+        synchronized (_responseIds) {
+            synchronized (other._responseIds) {
+                return _responseIds.size() == other._responseIds.size()
+                        && _responseIds.containsAll(other._responseIds);
+            }
+        }
+    }
+
+    /**
+     * Attaches the callbacks of follower to this handler so that they're invoked with the same
+     * response or error as this handler. The success callback of this handler still decides when
+     * the handler is complete. The follower's callbacks run on the follower's
+     * {@link #callbackExecutor executor}, so a follower without an executor can only be attached to
+     * a handler without one.
+     *
+     * @param follower Handler of an identical request that will not be sent
+     *
+     * @return True if follower was attached
+     */
+    synchronized boolean coalesce(ResponseHandler<?> follower) {
+        if (follower == null || !hasSameResponseIds(follower)) {
+            return false;
+        }
+        // The follower wants the processor's executor, which this handler doesn't know about.
+        if (follower.callbackExecutor == null && callbackExecutor != null) {
+            return false;
+        }
+        synchronized (_callbacks) {
+            // Once a callback has been dispatched it may have read the callbacks already, so the
+            // follower could miss the response.
+            if (_completed || _dispatching) {
+                return false;
+            }
+            return attach(follower);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean attach(ResponseHandler<?> follower) {
+        // Both handlers respond to the same packet IDs, so they expect the same packet type.
+        final ResponseHandler<T> target = (ResponseHandler<T>) follower;
+        // Callbacks run inline when both handlers use the same executor, otherwise they're handed
+        // to the follower's executor.
+        final Executor executor = target.callbackExecutor != callbackExecutor ? target.callbackExecutor : null;
+        final ESPCallback<T> success = successCallback;
+        final ESPCallback<T> followerSuccess = target.successCallback;
+        if (followerSuccess != null) {
+            successCallback = packet -> {
+                boolean done = success == null || success.onPacketReceived(packet);
+                if (done) {
+                    if (executor == null) {
+                        followerSuccess.onPacketReceived(packet);
+                    }
+                    else {
+                        // The packet is released once this callback returns.
+                        if (packet != null) {
+                            packet.retain();
+                        }
+                        target.dispatch(executor, () -> {
+                            try {
+                                followerSuccess.onPacketReceived(packet);
+                            }
+                            finally {
+                                if (packet != null) {
+                                    packet.release();
+                                }
+                            }
+                        });
+                    }
+                }
+                return done;
+            };
+        }
+        final FailureCallback failure = failureCallback;
+        final FailureCallback followerFailure = target.failureCallback;
+        if (followerFailure != null) {
+            failureCallback = new FailureCallback() {
+                @Override
+                public void onFailure(String error) {
+                    onFailure(error, 1);
+                }
+
+                @Override
+                public void onFailure(String error, int attempts) {
+                    if (failure != null) {
+                        failure.onFailure(error, attempts);
+                    }
+                    if (executor == null) {
+                        followerFailure.onFailure(error, attempts);
+                    }
+                    else {
+                        target.dispatch(executor, () -> followerFailure.onFailure(error, attempts));
+                    }
+                }
+            };
+        }
+        return true;
+    }
 }
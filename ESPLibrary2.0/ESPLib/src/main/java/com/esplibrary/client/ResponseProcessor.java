@@ -6,10 +6,29 @@ import com.esplibrary.packets.ESPPacket;
 import com.esplibrary.utilities.ESPLogger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.function.LongConsumer;
 
 /**
  * Processor for satisfying ESP requests.
+ *
+ * <p>Queued requests and {@link ResponseHandler handlers} awaiting a response are tracked in a
+ * queue ordered by deadline, so {@link #checkForExpiry(RequestScheduler)} only has to look at the
+ * entries that are actually due. Deadlines are re-evaluated when they fire, so a request whose
+ * timeout is extended (for example by sending another packet for the same handler) is simply
+ * rescheduled.</p>
+ *
+ * <p>Handlers are also indexed by the packet ID and origin of the responses they're waiting on,
+ * so dispatching a received packet only visits the handlers interested in it. A packet nobody
+ * is waiting on, such as most {@link PacketId#INFDISPLAYDATA} packets, costs a single array
+ * lookup.</p>
+ *
+ * <p>Success and failure callbacks are never invoked while holding the processor's locks. They
+ * are dispatched on the handler's {@link ResponseHandler#callbackExecutor executor} or, if it
+ * doesn't have one, on the {@link #setCallbackExecutor(Executor) processor's executor}.</p>
  */
 public class ResponseProcessor {
 
@@ -18,19 +37,61 @@ public class ResponseProcessor {
     public static final String REQUEST_TIMED_NOT_SENT = "Request timed out before it could be sent";
     public static final String REQUEST_NOT_PROCESSED_DISCONNECTED = "Request not processed, device disconnected";
 
-    List<ResponseHandler> _responseHandlers;
+    List<ResponseHandler<?>> _responseHandlers;
     /**
-     * Holds timed out response handlers for ESP requests in flight
+     * Handlers awaiting a specific response, indexed by {@link #dispatchKey(int, int)}. Guarded by
+     * {@link #_responseHandlers}.
      */
-    List<ResponseHandler> _timedOutResponseHandlers;
+    private final List<ResponseHandler<?>> [] _dispatchIndex;
     /**
-     * Holds timed out response handlers for ESP packet yet to be sent.
+     * Handlers that don't wait on a specific response and are offered every received packet.
+     * Guarded by {@link #_responseHandlers}.
      */
-    List<ResponseHandler> _timedOutQueueRequest;
+    private final List<ResponseHandler<?>> _anyResponseHandlers;
+    /**
+     * Deadlines of queued requests and in-flight response handlers, earliest first.
+     */
+    final PriorityQueue<Expiry> _expiries;
     /**
      * Timeout used to expire ResponseHandlers
      */
     long _timeout;
+    /**
+     * Invoked with the new earliest deadline whenever a deadline is scheduled ahead of every
+     * other deadline.
+     */
+    private volatile LongConsumer _expiryListener;
+    /**
+     * Decides if failed requests are sent again; null to never retry.
+     */
+    private volatile RequestRetrier _retrier;
+    /**
+     * Executor for the callbacks of handlers that don't have an executor of their own.
+     */
+    private volatile Executor _callbackExecutor = CallbackExecutors.DIRECT;
+
+    /**
+     * Deadline of either a queued {@link ESPRequest} or an in-flight {@link ResponseHandler}.
+     */
+    static final class Expiry implements Comparable<Expiry> {
+        final long time;
+        /**
+         * Queued request; null if this is the deadline of an in-flight handler.
+         */
+        final ESPRequest request;
+        final ResponseHandler<?> handler;
+
+        Expiry(long time, ESPRequest request, ResponseHandler<?> handler) {
+            this.time = time;
+            this.request = request;
+            this.handler = handler;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            return Long.compare(time, other.time);
+        }
+    }
 
     /**
      * Constructs a resp. processor using the provided timeout in milliseconds
@@ -40,25 +101,294 @@ public class ResponseProcessor {
     public ResponseProcessor(long timeout) {
         _timeout = timeout;
         _responseHandlers = new ArrayList<>(8);
-        _timedOutResponseHandlers = new ArrayList<>(8);
-        _timedOutQueueRequest = new ArrayList<>();
+        _dispatchIndex = newDispatchIndex();
+        _anyResponseHandlers = new ArrayList<>(2);
+        _expiries = new PriorityQueue<>(16);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ResponseHandler<?>> [] newDispatchIndex() {
+        return (List<ResponseHandler<?>> []) new List<?>[256 * 256];
+    }
+
+    /**
+     * Returns the index of the handlers awaiting packetId from device.
+     *
+     * @param packetId  Packet ID of the response
+     * @param device    Device Id byte of the response's origin
+     *
+     * @return Index into the dispatch index
+     */
+    static int dispatchKey(int packetId, int device) {
+        // Use the whole device byte so device Ids that share a low nibble, such as
+        // VALENTINE_ONE_LEGACY and GENERAL_BROADCAST, never share a key.
+        return ((packetId & 0xFF) << 8) | (device & 0xFF);
+    }
+
+    /**
+     * Adds handler to the dispatch index. Must be called while holding the {@link
+     * #_responseHandlers} lock. Already indexed keys are skipped so this can be called again after
+     * another request has been sent for the handler.
+     */
+    private void index(ResponseHandler<?> handler) {
+        if (handler.responseCount() == 0) {
+            if (!_anyResponseHandlers.contains(handler)) {
+                _anyResponseHandlers.add(handler);
+            }
+            return;
+        }
+        final int [] keys = handler.getDispatchKeys();
+        for (int i = 0; i < keys.length; i++) {
+            List<ResponseHandler<?>> handlers = _dispatchIndex[keys[i]];
+            if (handlers == null) {
+                handlers = new ArrayList<>(2);
+                _dispatchIndex[keys[i]] = handlers;
+            }
+            if (!handlers.contains(handler)) {
+                handlers.add(handler);
+            }
+        }
+    }
+
+    /**
+     * Removes handler from the handlers awaiting a response and from the dispatch index. Must be
+     * called while holding the {@link #_responseHandlers} lock.
+     *
+     * @return True if handler was awaiting a response
+     */
+    private boolean unregister(ResponseHandler<?> handler) {
+        if (!_responseHandlers.remove(handler)) {
+            return false;
+        }
+        if (!_anyResponseHandlers.remove(handler)) {
+            final int [] keys = handler.getDispatchKeys();
+            for (int i = 0; i < keys.length; i++) {
+                final List<ResponseHandler<?>> handlers = _dispatchIndex[keys[i]];
+                if (handlers != null) {
+                    handlers.remove(handler);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sets the listener that is invoked with the new earliest deadline, in milliseconds since the
+     * epoch, whenever a deadline is scheduled ahead of every other deadline. Used to schedule the
+     * next call to {@link #checkForExpiry(RequestScheduler)}.
+     *
+     * @param listener Listener to invoke; may be null
+     */
+    public void setExpiryListener(LongConsumer listener) {
+        _expiryListener = listener;
+    }
+
+    /**
+     * Sets the {@link RequestRetrier} consulted before a {@link ResponseHandler} is failed.
+     *
+     * @param retrier Retrier to consult; null to never retry
+     */
+    public void setRetrier(RequestRetrier retrier) {
+        _retrier = retrier;
+    }
+
+    /**
+     * Sets the executor for the callbacks of handlers that don't have an executor of their own.
+     *
+     * @param executor Callback executor; {@link CallbackExecutors#DIRECT} by default
+     */
+    public void setCallbackExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor cannot be null");
+        }
+        _callbackExecutor = executor;
+    }
+
+    private Executor executorFor(ResponseHandler<?> handler) {
+        final Executor executor = handler.callbackExecutor;
+        return executor != null ? executor : _callbackExecutor;
+    }
+
+    /**
+     * Completes handler and, once the callbacks dispatched before the failure have run, sends its
+     * request again if the retry policy allows it, otherwise invokes the handler's failure callback
+     * with the number of attempts. Nothing happens if the handler was already complete or its
+     * success callback accepted a final response in the meantime. Must not be called while holding
+     * any lock of the processor.
+     *
+     * @param handler   Handler that is no longer awaiting a response
+     * @param failure   Class of the failure; null if the failure must not be retried
+     * @param error     Error describing the failure
+     */
+    public void onRequestFailed(ResponseHandler<?> handler, FailureClass failure, String error) {
+        if (handler == null) {
+            return;
+        }
+        // The handler may have been satisfied in the meantime. Claim it before retrying so the
+        // request isn't sent again for a handler that already succeeded.
+        if (!handler.complete()) {
+            return;
+        }
+        handler.dispatch(executorFor(handler), () -> {
+            // A success callback that was already running accepted its final response.
+            if (handler.isDelivered()) {
+                return;
+            }
+            final RequestRetrier retrier = _retrier;
+            if (retrier != null && retrier.retry(handler, failure)) {
+                ESPLogger.i(LOG_TAG, String.format("Retrying request after: %s", error));
+                return;
+            }
+            final int attempts = handler.getAttempts();
+            final FailureCallback callback = handler.failureCallback;
+            if (callback != null) {
+                callback.onFailure(error, attempts);
+            }
+        });
+    }
+
+    /**
+     * Dispatches packet to the success callback of handler. The handler is removed once the
+     * callback indicates that it's done.
+     *
+     * @param handler   Handler awaiting packet
+     * @param packet    Received packet; null for handlers that don't wait on a specific response
+     */
+    private void deliver(ResponseHandler<?> handler, ESPPacket packet) {
+        // The packet is released by the receiver once dispatching returns, so keep it alive until
+        // the callback has run.
+        if (packet != null) {
+            packet.retain();
+        }
+        handler.dispatch(executorFor(handler), () -> {
+            try {
+                // An earlier packet satisfied the handler or it failed in the meantime.
+                if (handler.isComplete()) {
+                    return;
+                }
+                // If the packet callback is null or packetCallback returns true, we want to remove
+                // the response respHandler
+                if (onPacketReceived(handler, packet)) {
+                    // The handler may have been failed while the callback ran; the failure is
+                    // dropped once the final response was delivered.
+                    handler.markDelivered();
+                    if (handler.complete()) {
+                        synchronized (_responseHandlers) {
+                            unregister(handler);
+                        }
+                    }
+                }
+            }
+            finally {
+                if (packet != null) {
+                    packet.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Invokes the success callback of handler. The dispatch index only delivers the responses
+     * handler registered for, so packet is of the type its callback expects.
+     *
+     * @return True if the callback is done, or handler doesn't have one
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends ESPPacket> boolean onPacketReceived(ResponseHandler<T> handler, ESPPacket packet) {
+        final ESPCallback<T> callback = handler.successCallback;
+        return callback == null || callback.onPacketReceived((T) packet);
+    }
+
+    /**
+     * Returns the time of the earliest scheduled deadline.
+     *
+     * @return Milliseconds since the epoch or {@link Long#MAX_VALUE} if nothing is pending
+     */
+    public long getNextExpiryTime() {
+        synchronized (_expiries) {
+            final Expiry next = _expiries.peek();
+            return next != null ? next.time : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Starts tracking the deadline of a request that has been queued to be sent.
+     *
+     * @param request Queued request
+     */
+    public void addPendingRequest(ESPRequest request) {
+        schedule(new Expiry(getQueuedExpiryTime(request), request, null));
+    }
+
+    private void schedule(Expiry expiry) {
+        final boolean earliest;
+        synchronized (_expiries) {
+            _expiries.add(expiry);
+            earliest = _expiries.peek() == expiry;
+        }
+        final LongConsumer listener = _expiryListener;
+        if (earliest && listener != null) {
+            listener.accept(expiry.time);
+        }
+    }
+
+    /**
+     * Returns the time at which a request that hasn't been sent yet times out.
+     */
+    private long getQueuedExpiryTime(ESPRequest request) {
+        return request.requestTime + request.processingTime
+                + (request.hasTimeout() ? request.mTimeout : _timeout);
     }
 
     /**
      * Adds a {@link ResponseHandler} to be processed by this processor.
      * @param respHandler Handler to process
      */
-    public void addResponse(ResponseHandler respHandler) {
+    public void addResponse(ResponseHandler<?> respHandler) {
         // Add an null response respHandler is incorrect and should be ignored
         if (respHandler == null) {
             return;
         }
         synchronized (_responseHandlers) {
-            // Prevent duplicates
-            if (!_responseHandlers.contains(respHandler)) {
-                _responseHandlers.add(respHandler);
+            // Prevent duplicates, but index the destination of the request that was just sent.
+            if (_responseHandlers.contains(respHandler)) {
+                index(respHandler);
+                return;
+            }
+            _responseHandlers.add(respHandler);
+            index(respHandler);
+            // The handler may be reused after completing a previous request.
+            respHandler.resetCompletion();
+        }
+        schedule(new Expiry(respHandler.getExpiryTime(_timeout), null, respHandler));
+    }
+
+    /**
+     * Attaches request to an identical read-only request that's awaiting a response.
+     *
+     * @param request Request to coalesce
+     *
+     * @return True if request was attached to an in-flight request and must not be sent
+     *
+     * @see RequestCoalescer
+     */
+    public boolean coalesceWithInFlight(ESPRequest request) {
+        if (!RequestCoalescer.isCoalescible(request)) {
+            return false;
+        }
+        synchronized (_responseHandlers) {
+            for (int i = 0, size = _responseHandlers.size(); i < size; i++) {
+                final List<ESPRequest> sent = _responseHandlers.get(i)._requests;
+                synchronized (sent) {
+                    for (int j = 0, count = sent.size(); j < count; j++) {
+                        if (RequestCoalescer.coalesce(sent.get(j), request)) {
+                            return true;
+                        }
+                    }
+                }
             }
         }
+        return false;
     }
 
     /**
@@ -66,13 +396,13 @@ public class ResponseProcessor {
      *
      * @return Removed ResponseHandler; null if no handler was found
      */
-    public ResponseHandler removeResponseHandlerForData(byte [] data) {
+    public ResponseHandler<?> removeResponseHandlerForData(byte [] data) {
         if (data != null) {
             synchronized (_responseHandlers) {
                 for (int i = _responseHandlers.size() - 1; i >= 0; i--) {
-                    final ResponseHandler resphndlr = _responseHandlers.get(i);
+                    final ResponseHandler<?> resphndlr = _responseHandlers.get(i);
                     if(resphndlr.hasRequestMatchingData(data)) {
-                        _responseHandlers.remove(i);
+                        unregister(resphndlr);
                         return resphndlr;
                     }
                 }
@@ -86,13 +416,13 @@ public class ResponseProcessor {
      *
      * @return Removed ResponseHandler; null if no handler was found
      */
-    public ResponseHandler removeResponseHandlerForPacket(ESPPacket packet) {
+    public ResponseHandler<?> removeResponseHandlerForPacket(ESPPacket packet) {
         if (packet != null) {
             synchronized (_responseHandlers) {
                 for (int i = _responseHandlers.size() - 1; i >= 0; i--) {
-                    final ResponseHandler resphndlr = _responseHandlers.get(i);
+                    final ResponseHandler<?> resphndlr = _responseHandlers.get(i);
                     if(resphndlr.hasRequestMatchingPacket(packet)) {
-                        _responseHandlers.remove(i);
+                        unregister(resphndlr);
                         return resphndlr;
                     }
                 }
@@ -102,82 +432,134 @@ public class ResponseProcessor {
     }
 
     /**
-     * Checks for ESP packet that have expired.
+     * Fails every queued request and in-flight {@link ResponseHandler} whose deadline has passed.
+     * Only the deadlines that are due are examined.
+     *
      * @param pendingRequests Queued ESP packet that have yet to be sent.
+     *
+     * @return Time of the next deadline in milliseconds since the epoch or {@link Long#MAX_VALUE}
+     * if nothing is pending
      */
-    public void checkForExpiry(List<ESPRequest> pendingRequests) {
-        synchronized (_responseHandlers) {
-            // If we have no response handlers and no pending requests, do nothing
-            if (_responseHandlers.isEmpty()) {
-                // It's fine that we don't synchronize on the pending request because checkForExpiry
-                // should get called very frequently so if a request gets adding the the list, we
-                // will delay execution by whatever interval (as if now 80 milliseconds) this
-                // function is called at
-                if(pendingRequests.isEmpty()) {
-                    return;
-                }
+    public long checkForExpiry(RequestScheduler pendingRequests) {
+        final long now = System.currentTimeMillis();
+        final List<Expiry> due;
+        synchronized (_expiries) {
+            Expiry next = _expiries.peek();
+            if (next == null || next.time > now) {
+                return next != null ? next.time : Long.MAX_VALUE;
             }
+            due = new ArrayList<>(4);
+            while (next != null && next.time <= now) {
+                due.add(_expiries.poll());
+                next = _expiries.peek();
+            }
+        }
 
-            final long now = System.currentTimeMillis();
-            // Go through all response handlers and check to see if they are expired.
-            for (int i = _responseHandlers.size() - 1; i >= 0; i--) {
-                ResponseHandler responseHandler = _responseHandlers.get(i);
-                if(responseHandler.hasExpired(_timeout, now)){
-                    _timedOutResponseHandlers.add(responseHandler);
-                    _responseHandlers.remove(i);
+        List<ResponseHandler<?>> timedOut = null;
+        List<ResponseHandler<?>> timedOutNotSent = null;
+        for (int i = 0, size = due.size(); i < size; i++) {
+            final Expiry expiry = due.get(i);
+            if (expiry.request == null) {
+                // The deadline of an in-flight response handler.
+                final ResponseHandler<?> handler = expiry.handler;
+                final long deadline;
+                synchronized (_responseHandlers) {
+                    // The handler has already been satisfied or failed.
+                    if (!_responseHandlers.contains(handler)) {
+                        continue;
+                    }
+                    deadline = handler.getExpiryTime(_timeout);
+                    if (deadline <= now) {
+                        unregister(handler);
+                    }
                 }
+                if (deadline > now) {
+                    // Another packet was sent for the handler so it has more time.
+                    schedule(new Expiry(deadline, null, handler));
+                }
+                else {
+                    timedOut = addHandler(timedOut, handler);
+                }
+                continue;
             }
-            // Go through the queue packet(packets not yet sent) and determine if it's been enough
-            // time to reasonably try to send a packet.
-            synchronized (pendingRequests) {
-                for (int i = pendingRequests.size() - 1; i >= 0; i--) {
-                    ESPRequest request = pendingRequests.get(i);
-                    // Check if the request has timed out
-                    if(request.requestTime + request.processingTime + _timeout <= now) {
-                        final ResponseHandler rspHandler = request.respHandler;
-                        if (rspHandler != null) {
-                            // Check to see if the packet's response respHandler is currently
-                            // awaiting a response. In this situation we want the ResponseHandler to
-                            // time out instead. This happens when the same response respHandler is
-                            // used for multiple packet. Such as writing sweep definitions.
-                            if (_responseHandlers.indexOf(rspHandler) == -1) {
-                                // The packet doesn't have any waiting response respHandler so it's
-                                // safe to cancel the packet... Make sure we haven't already queue
-                                // the packet to be cancelled
-                                if(!_timedOutResponseHandlers.contains(rspHandler) && !_timedOutQueueRequest.contains(rspHandler)) {
-                                    _timedOutQueueRequest.add(rspHandler);
-                                }
-                                // Remove the packet... it'll get properly cancelled below.
-                                pendingRequests.remove(i);
-                            }
-                        }
-                        else {
-                            // No ResponseHandler so simply remove it from the queue.
-                            pendingRequests.remove(i);
-                        }
+
+            // The deadline of a queued request.
+            final ESPRequest request = expiry.request;
+            if (request.sentTime != -1) {
+                // The request has been sent so its response handler's deadline applies now.
+                continue;
+            }
+            final long deadline = getQueuedExpiryTime(request);
+            if (deadline > now) {
+                // The request was re-queued since this deadline was scheduled.
+                schedule(new Expiry(deadline, request, null));
+                continue;
+            }
+            final ResponseHandler<?> rspHandler = request.respHandler;
+            if (rspHandler != null) {
+                // Check to see if the packet's response respHandler is currently awaiting a
+                // response. In this situation we want the ResponseHandler to time out instead.
+                // This happens when the same response respHandler is used for multiple packet.
+                // Such as writing sweep definitions.
+                long handlerDeadline = -1;
+                synchronized (_responseHandlers) {
+                    if (_responseHandlers.contains(rspHandler)) {
+                        handlerDeadline = rspHandler.getExpiryTime(_timeout);
                     }
                 }
-                // If a pending request has a resp. handler in either the timed out resp. queue or
-                // the the timed out req. queue remove the request
-                for (int i = pendingRequests.size() - 1; i >= 0; i--) {
-                    ESPRequest request = pendingRequests.get(i);
-                    ResponseHandler responseHandler = request.respHandler;
-                    if(_timedOutResponseHandlers.contains(responseHandler)
-                            || _timedOutQueueRequest.contains(responseHandler)) {
-                        pendingRequests.remove(i);
-                    }
+                if (handlerDeadline != -1) {
+                    schedule(new Expiry(Math.max(handlerDeadline, now + 1), request, null));
+                    continue;
                 }
             }
-            // Indicate the response handlers that they've timed out.
-            for (int i = 0; i < _timedOutResponseHandlers.size(); i++) {
-                _timedOutResponseHandlers.get(i).failureCallback.onFailure(REQUEST_TIMED_OUT);
+            final boolean removed;
+            synchronized (pendingRequests) {
+                removed = pendingRequests.remove(request);
             }
-            for (int i = 0; i < _timedOutQueueRequest.size(); i++) {
-                _timedOutQueueRequest.get(i).failureCallback.onFailure(REQUEST_TIMED_NOT_SENT);
+            // Only fail requests that were still queued. Requests without a ResponseHandler are
+            // simply removed from the queue.
+            if (removed && rspHandler != null && !containsHandler(timedOut, rspHandler)) {
+                timedOutNotSent = addHandler(timedOutNotSent, rspHandler);
             }
+        }
 
-            _timedOutResponseHandlers.clear();
-            _timedOutQueueRequest.clear();
+        if (timedOut != null || timedOutNotSent != null) {
+            final List<ResponseHandler<?>> expiredTimedOut = timedOut;
+            final List<ResponseHandler<?>> expiredNotSent = timedOutNotSent;
+            // Remove every other queued request belonging to the expired response handlers.
+            synchronized (pendingRequests) {
+                pendingRequests.removeIf(request -> request.respHandler != null
+                        && (containsHandler(expiredTimedOut, request.respHandler)
+                        || containsHandler(expiredNotSent, request.respHandler)));
+            }
+            // Indicate the response handlers that they've timed out.
+            notifyFailure(timedOut, FailureClass.Timeout, REQUEST_TIMED_OUT);
+            // Requests that never left the queue are not retried; they'd just be queued again.
+            notifyFailure(timedOutNotSent, null, REQUEST_TIMED_NOT_SENT);
+        }
+        return getNextExpiryTime();
+    }
+
+    private static List<ResponseHandler<?>> addHandler(List<ResponseHandler<?>> handlers, ResponseHandler<?> handler) {
+        if (handlers == null) {
+            handlers = new ArrayList<>(2);
+        }
+        if (!handlers.contains(handler)) {
+            handlers.add(handler);
+        }
+        return handlers;
+    }
+
+    private static boolean containsHandler(List<ResponseHandler<?>> handlers, ResponseHandler<?> handler) {
+        return handlers != null && handlers.contains(handler);
+    }
+
+    private void notifyFailure(List<ResponseHandler<?>> handlers, FailureClass failure, String error) {
+        if (handlers == null) {
+            return;
+        }
+        for (int i = 0, size = handlers.size(); i < size; i++) {
+            onRequestFailed(handlers.get(i), failure, error);
         }
     }
 
@@ -185,14 +567,19 @@ public class ResponseProcessor {
      * Expires all packet awaiting a response because we've disconnected
      */
     public void expireRequestsForDisconnection() {
+        final List<ResponseHandler<?>> expired;
         synchronized(_responseHandlers) {
-            for(int i = 0, size = _responseHandlers.size(); i < size; i++) {
-                ResponseHandler responseHandler = _responseHandlers.get(i);
-                if (responseHandler.failureCallback != null) {
-                    responseHandler.failureCallback.onFailure(REQUEST_NOT_PROCESSED_DISCONNECTED);
-                }
-            }
+            expired = new ArrayList<>(_responseHandlers);
             _responseHandlers.clear();
+            _anyResponseHandlers.clear();
+            Arrays.fill(_dispatchIndex, null);
+        }
+        // Nothing is pending anymore.
+        synchronized (_expiries) {
+            _expiries.clear();
+        }
+        for (int i = 0, size = expired.size(); i < size; i++) {
+            onRequestFailed(expired.get(i), null, REQUEST_NOT_PROCESSED_DISCONNECTED);
         }
     }
 
@@ -202,14 +589,15 @@ public class ResponseProcessor {
      */
     public void onFailurePacket(ESPPacket packet) {
         ESPLogger.i(LOG_TAG, String.format("Received packet not processed from %s", packet.getOrigin().toString()));
-        int badPacketID = packet.getPayloadData()[0] & 0xFF;
+        int badPacketID = packet.getPayloadByte(0) & 0xFF;
         DeviceId originID = packet.getOrigin();
         // Find the last response responseHandler this packet ID belongs too and remove it.
-        ResponseHandler foundRespHandler = null;
+        ResponseHandler<?> foundRespHandler = null;
         synchronized (_responseHandlers) {
             for (int i = _responseHandlers.size() - 1; i >= 0; i--) {
                 if(_responseHandlers.get(i).hasRequestTo(badPacketID, originID)) {
-                    foundRespHandler = _responseHandlers.remove(i);
+                    foundRespHandler = _responseHandlers.get(i);
+                    unregister(foundRespHandler);
                     break;
                 }
             }
@@ -217,81 +605,78 @@ public class ResponseProcessor {
         // Perform the failure callback on the responseHandler.
         if (foundRespHandler != null) {
             String error;
+            FailureClass failure;
 
             int packetID = packet.getPacketID();
             switch (packetID) {
                 case PacketId.RESPDATAERROR:
                     error = String.format("Data error for packet Id = %02X", badPacketID);
+                    failure = FailureClass.DataError;
                     break;
                 case PacketId.RESPUNSUPPORTEDPACKET:
                     error = String.format("Request ID = %02X is not supported by destination = %02X", badPacketID, originID.toByte());
+                    failure = FailureClass.Unsupported;
                     break;
                 default:
                     error = String.format("Request ID = %d could not be processed by destination = %02X", badPacketID, originID.toByte());
+                    failure = FailureClass.NotProcessed;
             }
-            foundRespHandler.failureCallback.onFailure(error);
+            onRequestFailed(foundRespHandler, failure, error);
         }
     }
 
     /**
      * Perform the success callback on any {@link ResponseHandler handler} that responds to the packet
      * @param packet            Received {@link ESPPacket} to perform success callback
-     * @param busyPacketIDs     Current list of busy packet IDs
+     * @param busyPacketIDs     Packet IDs the V1 is currently busy processing
      */
-    public void onPacketReceivedBlocking(ESPPacket packet, List<Integer> busyPacketIDs) {
+    public void onPacketReceivedBlocking(ESPPacket packet, BusyPacketIds busyPacketIDs) {
+        List<ResponseHandler<?>> anyResponse = null;
+        List<ResponseHandler<?>> interested = null;
         synchronized(_responseHandlers) {
-            for (int i = 0; i < _responseHandlers.size(); i++) {
-                ResponseHandler resp = _responseHandlers.get(i);
-                // If the response respHandler doesn't have any response it's waiting on, we should directly as the respHandler if it is done
-                // and its safe to remove.
-                if(resp.responseCount() == 0) {
-                    // Since this response respHandler doesn't respond to a particular response ID, we
-                    // want to ask it if it's ready to be fulfilled(removed) but we need to make sure
-                    // that it's packet has been sent and not waiting in the busy queue.
-                    if(!checkBusyPackets(busyPacketIDs, resp)) {
-                        // If the packet callback is null or packetCallback returns true, we want to
-                        // remove the response respHandler
-                        if(resp.successCallback == null || resp.successCallback.onPacketReceived(null)) {
-                            synchronized(_responseHandlers) {
-                                _responseHandlers.remove(i);
-                            }
-                            // update i so we skip resp. handler after removing the current index.
-                            i =- 1;
-                        }
-                    }
-                }
-                else {
-                    // Check to see if the response respHandler responds to the packet.
-                    if(resp.respondsTo(packet.getPacketID()) && resp.hasRequestFrom(packet.getOrigin())) {
-                        // If the packet callback is null or packetCallback returns true, we want to
-                        // remove the response respHandler
-                        if(resp.successCallback == null || resp.successCallback.onPacketReceived(packet)) {
-                            synchronized(_responseHandlers) {
-                                _responseHandlers.remove(i);
-                            }
-                            // update i so we skip resp. handler after removing the current index.
-                            i =- 1;
-                        }
+            // Handlers that don't have any response they're waiting on are directly asked if they
+            // are done and safe to remove.
+            for (int i = 0, size = _anyResponseHandlers.size(); i < size; i++) {
+                ResponseHandler<?> resp = _anyResponseHandlers.get(i);
+                // Since this response respHandler doesn't respond to a particular response ID, we
+                // want to ask it if it's ready to be fulfilled(removed) but we need to make sure
+                // that it's packet has been sent and not waiting in the busy queue.
+                if(!checkBusyPackets(busyPacketIDs, resp)) {
+                    if (anyResponse == null) {
+                        anyResponse = new ArrayList<>(size);
                     }
+                    anyResponse.add(resp);
                 }
             }
+
+            final List<ResponseHandler<?>> handlers =
+                    _dispatchIndex[dispatchKey(packet.getPacketID(), packet.getOriginByte())];
+            if (handlers != null && !handlers.isEmpty()) {
+                interested = new ArrayList<>(handlers);
+            }
+        }
+        // Invoke the callbacks once the lock has been released.
+        if (anyResponse != null) {
+            for (int i = 0, size = anyResponse.size(); i < size; i++) {
+                deliver(anyResponse.get(i), null);
+            }
+        }
+        if (interested != null) {
+            for (int i = 0, size = interested.size(); i < size; i++) {
+                deliver(interested.get(i), packet);
+            }
         }
     }
 
     /**
      * Check to see if any {@link ResponseHandler ResponseHandlers} have packet that are currently
      * busy.
-     * @param busyPacketIDs Current list of busy packet ID's
-     * @param handler       {@link ResponseHandler} to check if any packet are in the busy queue
-     * @return  True if the handler has packet in the list of busy packet IDs
+     * @param busyPacketIDs Packet IDs the V1 is currently busy processing
+     * @param handler       {@link ResponseHandler} to check if any packet are in the busy set
+     * @return  True if the handler has packet in the set of busy packet IDs
      */
-    private boolean checkBusyPackets(List<Integer> busyPacketIDs, ResponseHandler handler) {
-        for (int i = 0; i < busyPacketIDs.size(); i++) {
-            Integer packetID = busyPacketIDs.get(i);
-            if(handler.hasRequest(packetID.intValue())) {
-                return true;
-            }
-        }
-        return false;
+    private boolean checkBusyPackets(BusyPacketIds busyPacketIDs, ResponseHandler<?> handler) {
+        // Nothing to look up in the common case of the V1 not being busy.
+        return !busyPacketIDs.isEmpty() && handler.hasRequestIn(busyPacketIDs);
     }
 }
@@ -0,0 +1,114 @@
+package com.esplibrary.client;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable description of how a failed {@link ESPRequest} is retried.
+ *
+ * <p>A request is retried while it has been sent fewer than the maximum number of attempts and it
+ * failed with one of the retried {@link FailureClass failure classes}. The delay before each retry
+ * doubles, starting at the initial backoff and capped at the maximum backoff, and is reduced by a
+ * random fraction of up to jitter so retries from several requests don't line up on the bus.</p>
+ */
+public final class RetryPolicy {
+
+    /**
+     * Never retry; failures are reported after the first attempt.
+     */
+    public final static RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0, EnumSet.noneOf(FailureClass.class));
+
+    private final int mMaxAttempts;
+    private final long mInitialBackoff;
+    private final long mMaxBackoff;
+    private final double mJitter;
+    private final Set<FailureClass> mRetryOn;
+
+    /**
+     * Constructs a retry policy.
+     *
+     * @param maxAttempts           Maximum number of times a request is sent, including the first
+     *                              attempt; must be at least 1
+     * @param initialBackoffMillis  Delay before the first retry in milliseconds
+     * @param maxBackoffMillis      Upper bound of the delay before a retry in milliseconds
+     * @param jitter                Largest fraction of the delay that is randomly removed; must
+     *                              be between 0 and 1
+     * @param retryOn               Failure classes that are retried
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, double jitter, Set<FailureClass> retryOn) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The maximum number of attempts must be at least 1");
+        }
+        if (initialBackoffMillis < 0 || maxBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("Invalid backoff range");
+        }
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+        if (retryOn == null) {
+            throw new IllegalArgumentException("The failure classes to retry cannot be null");
+        }
+        mMaxAttempts = maxAttempts;
+        mInitialBackoff = initialBackoffMillis;
+        mMaxBackoff = maxBackoffMillis;
+        mJitter = jitter;
+        mRetryOn = retryOn.isEmpty() ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(retryOn));
+    }
+
+    /**
+     * Returns a policy with exponential backoff and 50% jitter that retries the transient failures:
+     * {@link FailureClass#NotProcessed}, {@link FailureClass#Timeout} and {@link
+     * FailureClass#WriteFailed}.
+     *
+     * @param maxAttempts           Maximum number of times a request is sent
+     * @param initialBackoffMillis  Delay before the first retry in milliseconds
+     * @param maxBackoffMillis      Upper bound of the delay before a retry in milliseconds
+     *
+     * @return Retry policy
+     */
+    public static RetryPolicy exponential(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis) {
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, 0.5d,
+                EnumSet.of(FailureClass.NotProcessed, FailureClass.Timeout, FailureClass.WriteFailed));
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    public Set<FailureClass> getRetryOn() {
+        return mRetryOn;
+    }
+
+    /**
+     * Indicates if a request that has been sent attempts times should be retried after failing
+     * with failure.
+     *
+     * @param failure   Class of the failure
+     * @param attempts  Number of times the request has been sent
+     *
+     * @return True if the request should be sent again
+     */
+    public boolean shouldRetry(FailureClass failure, int attempts) {
+        return attempts < mMaxAttempts && failure != null && mRetryOn.contains(failure);
+    }
+
+    /**
+     * Returns the delay before sending a request again that has been sent attempts times.
+     *
+     * @param attempts Number of times the request has been sent
+     *
+     * @return Delay in milliseconds
+     */
+    public long getBackoff(int attempts) {
+        final int shift = Math.min(Math.max(attempts - 1, 0), 30);
+        // Saturate at the maximum instead of overflowing the shift.
+        long backoff = mInitialBackoff > (mMaxBackoff >> shift) ? mMaxBackoff : mInitialBackoff << shift;
+        if (mJitter > 0 && backoff > 0) {
+            backoff -= (long) (backoff * mJitter * ThreadLocalRandom.current().nextDouble());
+        }
+        return backoff;
+    }
+}
@@ -10,6 +10,7 @@ import androidx.annotation.CallSuper;
 import com.esplibrary.constants.Constants;
 import com.esplibrary.constants.DeviceId;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import static com.esplibrary.constants.DeviceId.UNKNOWN_DEVICE;
@@ -29,6 +30,14 @@ public abstract class ESPPacket {
         packetData = new byte[packetLength];
     }
 
+    /**
+     * Constructs a new instance without any packet data. Subclasses using this constructor must
+     * either call {@link #resetPacket(DeviceId, byte[])} or {@link #setEncodedFrame(EncodedFrame,
+     * DeviceId)} before the packet is used.
+     */
+    protected ESPPacket() {
+    }
+
     /**
      * Constructs a new instance with the specified V1 type and payload data
      *
@@ -46,6 +55,7 @@ public abstract class ESPPacket {
      * @param payload packet payload
      */
     protected void resetPacket (DeviceId v1Type, byte [] payload) {
+        mEncodedFrame = null;
         boolean chksum = (v1Type == DeviceId.VALENTINE_ONE);
         final int framingLength = chksum ? 7 : 6;
         int length = (payload != null ? (payload.length + framingLength) : framingLength);
@@ -57,6 +67,35 @@ public abstract class ESPPacket {
      */
     protected long mTransmissionTime = Long.MAX_VALUE;
 
+    /**
+     * {@link PacketFactory} that owns this packet if it was obtained from a packet pool, otherwise
+     * null.
+     */
+    PacketFactory mPool;
+    /**
+     * Packet ID of the free list this packet is returned to when released.
+     */
+    int mPoolId;
+    /**
+     * {@link PacketConstructor} that created this pooled packet, null for the library's own type.
+     * The packet is only recycled while this constructor is still registered for {@link #mPoolId}.
+     */
+    PacketConstructor mPoolConstructor;
+    /**
+     * Number of outstanding references to this pooled packet.
+     */
+    private int mRefCount;
+    /**
+     * Leak tracking reference used by {@link PacketFactory} in debug builds.
+     */
+    Object mLeakRef;
+    /**
+     * Shared wire images of this packet if {@link #packetData} is backed by the
+     * {@link EncodedFrameCache}, otherwise null. While set, {@link #packetData} must not be
+     * modified in place.
+     */
+    private EncodedFrame mEncodedFrame;
+
     /**
      * Type of the V1 on the ESP bus this packet was transmitted.
      *
@@ -78,6 +117,18 @@ public abstract class ESPPacket {
     public synchronized void setV1Type(DeviceId newV1Type) {
         // If the V1 type has changed, we need to decided whether we need to create or remove the checksum.
         if(this.mV1Type != newV1Type) {
+            if(mEncodedFrame != null) {
+                // Swap to the cached image for the new V1 type instead of rebuilding the frame.
+                byte dest = isForV1() ? (byte) (newV1Type.toByte() | PacketUtils.DEST_INDENTIFIER_BASE_CONST)
+                        : packetData[PacketUtils.DEST_IDX];
+                EncodedFrame frame = EncodedFrameCache.reframe(mEncodedFrame, dest, newV1Type);
+                if(frame != null) {
+                    setEncodedFrame(frame, newV1Type);
+                    return;
+                }
+                // The cache is full so fall back to a private copy of the data.
+                unshareData();
+            }
             // Update the destination if going to the V1.
             if(isForV1()) {
                 packetData[1] = (byte) (newV1Type.toByte() | PacketUtils.DEST_INDENTIFIER_BASE_CONST);
@@ -108,6 +159,37 @@ public abstract class ESPPacket {
         }
     }
 
+    /**
+     * Backs this packet with the shared wire images of frame.
+     *
+     * @param frame     Encoded frame of this packet
+     * @param v1Type    V1 type frame was encoded for
+     */
+    protected void setEncodedFrame(EncodedFrame frame, DeviceId v1Type) {
+        mEncodedFrame = frame;
+        packetData = frame.getFrame();
+        mV1Type = v1Type;
+    }
+
+    /**
+     * Returns the shared, pre-encoded wire images of this packet.
+     *
+     * @return Encoded frame or null if this packet is not backed by the {@link EncodedFrameCache}
+     */
+    public EncodedFrame getEncodedFrame() {
+        return mEncodedFrame;
+    }
+
+    /**
+     * Replaces shared cached data with a private copy so it can be modified in place.
+     */
+    private void unshareData() {
+        if(mEncodedFrame != null) {
+            packetData = packetData.clone();
+            mEncodedFrame = null;
+        }
+    }
+
     /**
      * Utility method for determining if a {@link DeviceId v1Type) has transitioned from checksum
      * to 'no checksum'.
@@ -285,19 +367,72 @@ public abstract class ESPPacket {
     }
 
     /**
-     * Returns an array containing this packets payload data (does not include the checksum byte if present in the data).
+     * Returns the number of payload bytes in this packet (does not include the checksum byte if
+     * present in the data).
      *
-     * @return  Returns the ESPPackets payload data if it is not null otherwise, an empty byte array is returned.
+     * @return Payload length
      */
-    public byte [] getPayloadData() {
-        int length = packetData[PacketUtils.PAYLOAD_LEN_IDX];
+    public int getPayloadLength() {
+        int length = packetData[PacketUtils.PAYLOAD_LEN_IDX] & 0xFF;
         // If the V1 type is a Valentine one w/ checksum decrement the length to avoid the
         // checksum byte.
-        if(mV1Type == DeviceId.VALENTINE_ONE) {
+        if(mV1Type == DeviceId.VALENTINE_ONE && length > 0) {
             length -= 1;
         }
-        final byte [] array = new byte[length];
-        System.arraycopy(packetData, PacketUtils.PAYLOAD_START_IDX, array, 0, length);
+        return length;
+    }
+
+    /**
+     * Returns the payload byte at index without copying the payload.
+     *
+     * @param index Index into the payload
+     *
+     * @return Payload byte
+     */
+    public byte getPayloadByte(int index) {
+        if(index < 0 || index >= getPayloadLength()) {
+            throw new IndexOutOfBoundsException("Invalid payload index " + index + ", length is " + getPayloadLength());
+        }
+        return packetData[PacketUtils.PAYLOAD_START_IDX + index];
+    }
+
+    /**
+     * Returns a read-only view of this packets payload data (does not include the checksum byte if
+     * present in the data). The view shares this packet's backing array, no data is copied.
+     *
+     * @return Read-only {@link ByteBuffer} positioned at the first payload byte.
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return ByteBuffer.wrap(packetData, PacketUtils.PAYLOAD_START_IDX, getPayloadLength())
+                .slice()
+                .asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies this packets payload data (does not include the checksum byte if present in the data)
+     * into dest.
+     *
+     * @param dest Destination array
+     * @param offset Start offset in dest
+     *
+     * @return The number of bytes copied
+     */
+    public int copyPayloadTo(byte [] dest, int offset) {
+        final int length = getPayloadLength();
+        System.arraycopy(packetData, PacketUtils.PAYLOAD_START_IDX, dest, offset, length);
+        return length;
+    }
+
+    /**
+     * Returns an array containing this packets payload data (does not include the checksum byte if present in the data).
+     * <p>Note: This method allocates a copy of the payload, prefer {@link #getPayloadByte(int)},
+     * {@link #getPayloadBuffer()} or {@link #copyPayloadTo(byte[], int)}.</p>
+     *
+     * @return  Returns the ESPPackets payload data if it is not null otherwise, an empty byte array is returned.
+     */
+    public byte [] getPayloadData() {
+        final byte [] array = new byte[getPayloadLength()];
+        copyPayloadTo(array, 0);
         return array;
     }
 
@@ -331,16 +466,78 @@ public abstract class ESPPacket {
         return null;
     }
 
+    /**
+     * Indicates if this packet was obtained from a {@link PacketFactory} with pooling enabled and
+     * must be {@link #release() released}.
+     *
+     * @return True if the packet is pooled
+     */
+    public boolean isPooled() {
+        return mPool != null;
+    }
+
+    /**
+     * Takes an additional reference to this packet. A listener that needs to hold onto a pooled
+     * packet beyond the callback it was delivered in must call this method before returning and
+     * call {@link #release()} once it is done with the packet.
+     *
+     * <p>This method has no effect on packets that aren't {@link #isPooled() pooled}.</p>
+     *
+     * @return This packet
+     */
+    public synchronized ESPPacket retain() {
+        if(mPool != null) {
+            if(mRefCount <= 0) {
+                throw new IllegalStateException("Packet has already been released");
+            }
+            mRefCount++;
+        }
+        return this;
+    }
+
+    /**
+     * Releases a reference to this packet. Once every reference has been released the packet is
+     * {@link #reset() reset} and returned to its pool, it must not be used afterwards.
+     *
+     * <p>This method has no effect on packets that aren't {@link #isPooled() pooled}.</p>
+     */
+    public void release() {
+        PacketFactory pool;
+        synchronized (this) {
+            pool = mPool;
+            if(pool == null) {
+                return;
+            }
+            if(mRefCount <= 0) {
+                throw new IllegalStateException("Packet has already been released");
+            }
+            if(--mRefCount != 0) {
+                return;
+            }
+        }
+        pool.recycle(this);
+    }
+
+    /**
+     * Marks a pooled packet as being handed out with a single reference.
+     */
+    synchronized void acquire() {
+        mRefCount = 1;
+    }
+
     /**
      *  Resets this {@link ESPPacket} state to default values.
      */
     @CallSuper
     public void reset() {
+        unshareData();
         if(packetData != null) {
             // Default all byte values to zero.
             for (int i = 0, len = packetData.length; i < len; i++)
                 packetData[i] = 0x00;
         }
+        mV1Type = UNKNOWN_DEVICE;
+        mTransmissionTime = Long.MAX_VALUE;
     }
 
     @Override
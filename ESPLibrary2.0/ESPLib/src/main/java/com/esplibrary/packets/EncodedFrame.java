@@ -0,0 +1,48 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+/**
+ * Immutable, pre-encoded wire images of a single ESP request.
+ *
+ * <p>An encoded frame holds the raw ESP frame, which is written as-is over Bluetooth LE, and the
+ * delimited, checksummed and DLE-escaped SPP frame. Instances are shared between every
+ * {@link ESPPacket} created for the same request, so neither array may be modified.</p>
+ *
+ * @see EncodedFrameCache
+ */
+public final class EncodedFrame {
+
+    final long mKey;
+    private final byte [] mFrame;
+    private final byte [] mSPPFrame;
+
+    EncodedFrame(long key, byte [] frame, byte [] sppFrame) {
+        mKey = key;
+        mFrame = frame;
+        mSPPFrame = sppFrame;
+    }
+
+    /**
+     * Returns the raw ESP frame, as sent over Bluetooth LE.
+     * <p>Note: This is a direct reference to the shared array and must not be modified </p>
+     *
+     * @return ESP frame bytes
+     */
+    public byte [] getFrame() {
+        return mFrame;
+    }
+
+    /**
+     * Returns the delimited and escaped frame, as sent over Bluetooth SPP.
+     * <p>Note: This is a direct reference to the shared array and must not be modified </p>
+     *
+     * @return SPP frame bytes
+     */
+    public byte [] getSPPFrame() {
+        return mSPPFrame;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+
+/**
+ * Process wide cache of {@link EncodedFrame EncodedFrames} for ESP requests with small payloads.
+ *
+ * <p>Frames are keyed by packet ID, origin, destination, V1 type and payload. The V1 type only
+ * changes the wire image by adding or removing the checksum byte, so V1 types that share a
+ * checksum setting share a frame. Every key fits in a single long, which lets a lookup run
+ * without allocating or locking: the table is published through a volatile field and replaced
+ * (copy-on-write) whenever a new frame is added.</p>
+ *
+ * <p>The cache is bounded; once it is full, requests that are not already cached are simply built
+ * the regular way.</p>
+ */
+public final class EncodedFrameCache {
+
+    /**
+     * Largest payload, in bytes, that is eligible for caching.
+     */
+    public final static int MAX_PAYLOAD_LENGTH = 4;
+    /**
+     * Maximum number of frames held by the cache.
+     */
+    private final static int MAX_ENTRIES = 128;
+    /**
+     * Size of the open-addressed table; kept at twice the maximum entries so probes stay short.
+     */
+    private final static int TABLE_SIZE = MAX_ENTRIES * 2;
+
+    private static volatile EncodedFrame [] sTable = new EncodedFrame[TABLE_SIZE];
+    private static int sCount = 0;
+    private final static Object sLock = new Object();
+
+    private EncodedFrameCache() {}
+
+    /**
+     * Returns the cached {@link EncodedFrame} for a request, creating it on first use.
+     *
+     * @param packetId      Packet ID of the request
+     * @param origin        Origin of the request
+     * @param destination   Destination of the request
+     * @param v1Type        V1 type the request will be sent to
+     * @param payload       Payload of the request; may be null
+     *
+     * @return Encoded frame or null if the request cannot be cached
+     */
+    public static EncodedFrame get(int packetId, DeviceId origin, DeviceId destination, DeviceId v1Type, byte [] payload) {
+        final int payloadLength = payload == null ? 0 : payload.length;
+        if (payloadLength > MAX_PAYLOAD_LENGTH) {
+            return null;
+        }
+        long key = ((long) (packetId & 0xFF))
+                | ((long) ((destination.toByte() | PacketUtils.DEST_INDENTIFIER_BASE_CONST) & 0xFF) << 8)
+                | ((long) ((origin.toByte() | PacketUtils.ORIG_INDENTIFIER_BASE_CONST) & 0xFF) << 16)
+                | ((long) payloadLength << 24)
+                | (ESPPacket.isChecksum(v1Type) ? (1L << 27) : 0L);
+        for (int i = 0; i < payloadLength; i++) {
+            key |= ((long) (payload[i] & 0xFF)) << (28 + (8 * i));
+        }
+        return get(key);
+    }
+
+    /**
+     * Returns the cached {@link EncodedFrame} matching frame but addressed to destination and
+     * framed for v1Type.
+     *
+     * @param frame         Existing encoded frame
+     * @param destination   New destination byte, including the destination identifier base
+     * @param v1Type        New V1 type
+     *
+     * @return Encoded frame or null if the cache is full and the frame has not been cached
+     */
+    static EncodedFrame reframe(EncodedFrame frame, byte destination, DeviceId v1Type) {
+        long key = (frame.mKey & ~(0xFFL << 8) & ~(1L << 27))
+                | ((long) (destination & 0xFF) << 8)
+                | (ESPPacket.isChecksum(v1Type) ? (1L << 27) : 0L);
+        return get(key);
+    }
+
+    private static EncodedFrame get(long key) {
+        EncodedFrame [] table = sTable;
+        int idx = indexFor(key);
+        EncodedFrame frame;
+        while ((frame = table[idx]) != null) {
+            if (frame.mKey == key) {
+                return frame;
+            }
+            idx = (idx + 1) & (TABLE_SIZE - 1);
+        }
+        synchronized (sLock) {
+            // Another thread may have added the frame while we were waiting for the lock.
+            table = sTable;
+            idx = indexFor(key);
+            while ((frame = table[idx]) != null) {
+                if (frame.mKey == key) {
+                    return frame;
+                }
+                idx = (idx + 1) & (TABLE_SIZE - 1);
+            }
+            if (sCount >= MAX_ENTRIES) {
+                return null;
+            }
+            frame = encode(key);
+            EncodedFrame [] newTable = table.clone();
+            newTable[idx] = frame;
+            sCount++;
+            sTable = newTable;
+            return frame;
+        }
+    }
+
+    /**
+     * Builds the wire images described by key.
+     */
+    private static EncodedFrame encode(long key) {
+        final int payloadLength = (int) ((key >>> 24) & 0x07);
+        final boolean checksum = ((key >>> 27) & 0x01) != 0;
+        final byte [] frame = new byte[payloadLength + (checksum ? 7 : 6)];
+        frame[PacketUtils.SOF_IDX] = PacketUtils.ESP_PACKET_SOF;
+        frame[PacketUtils.DEST_IDX] = (byte) (key >>> 8);
+        frame[PacketUtils.ORIG_IDX] = (byte) (key >>> 16);
+        frame[PacketUtils.PACK_ID_IDX] = (byte) key;
+        frame[PacketUtils.PAYLOAD_LEN_IDX] = (byte) (checksum ? payloadLength + 1 : payloadLength);
+        for (int i = 0; i < payloadLength; i++) {
+            frame[PacketUtils.PAYLOAD_START_IDX + i] = (byte) (key >>> (28 + (8 * i)));
+        }
+        if (checksum) {
+            frame[frame.length - 2] = PacketUtils.calculateChecksumFor(frame, frame.length - 2);
+        }
+        frame[frame.length - 1] = PacketUtils.ESP_PACKET_EOF;
+
+        SPPFrameEncoder encoder = new SPPFrameEncoder();
+        encoder.encode(frame);
+        byte [] sppFrame = new byte[encoder.length()];
+        System.arraycopy(encoder.getBuffer(), 0, sppFrame, 0, sppFrame.length);
+        return new EncodedFrame(key, frame, sppFrame);
+    }
+
+    private static int indexFor(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 56) & (TABLE_SIZE - 1);
+    }
+}
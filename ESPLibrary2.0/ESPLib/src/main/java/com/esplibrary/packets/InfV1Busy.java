@@ -35,15 +35,10 @@ public class InfV1Busy extends ESPPacket {
      * @return  byte [] containing the busy packet ids.
      */
     public int [] getBusyPacketIds() {
-        byte[] packetData = getPacketData();
-        int payloadLn = packetData[PacketUtils.PAYLOAD_LEN_IDX];
-        if(mV1Type == DeviceId.VALENTINE_ONE) {
-            payloadLn -= 1;
-        }
+        final int payloadLn = getPayloadLength();
         @PacketId.PacketID int [] data = new int [payloadLn];
-        int j = 0;
-        for(int i = PacketUtils.PAYLOAD_START_IDX; i < payloadLn; i++ ) {
-            data[j++] = packetData[i];
+        for(int i = 0; i < payloadLn; i++ ) {
+            data[i] = getPayloadByte(i) & 0xFF;
         }
         return data;
     }
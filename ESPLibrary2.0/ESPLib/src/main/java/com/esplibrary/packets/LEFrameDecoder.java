@@ -0,0 +1,215 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.utilities.ByteList;
+import com.esplibrary.utilities.RingByteBuffer;
+
+import java.util.function.Supplier;
+
+/**
+ * Stateful decoder for turning Bluetooth LE notification data into {@link ESPPacket ESPPackets}.
+ *
+ * <p>LE notifications carry raw ESP frames, but a frame may be split across several notifications
+ * and a single notification may contain several frames. The decoder uses the payload length in
+ * the ESP header to find frame boundaries, so a partial frame stays in the receive buffer until the
+ * rest of it arrives. Bytes are only discarded when the framing is corrupt, in which case the
+ * decoder resynchronizes on the next start of frame byte.</p>
+ *
+ * <p>A decoder is not thread-safe. Every connection should use its own instance.</p>
+ */
+public class LEFrameDecoder {
+
+    /**
+     * Number of ESP bytes that aren't payload: SOF, destination, origin, packet ID, payload length
+     * and EOF.
+     */
+    private final static int FRAMING_LENGTH = 6;
+    /**
+     * Maximum payload length (PLMax) allowed by the ESP specification, including the checksum. This
+     * is the bound for frames received on the short V1-out/client-in characteristic.
+     */
+    public final static int MAX_SHORT_PAYLOAD_LENGTH = 16;
+    /**
+     * Maximum payload length of frames received on the long V1-out/client-in characteristic, which
+     * is only limited by the payload length byte.
+     */
+    public final static int MAX_LONG_PAYLOAD_LENGTH = 0xFF;
+
+    private final PacketFactory mFactory;
+    /**
+     * Longest payload a frame can have, longer lengths are treated as corrupt framing.
+     */
+    private final int mMaxPayloadLength;
+    /**
+     * Filter applied to the header of every complete frame before a packet is constructed.
+     */
+    private volatile PacketFilter mFilter;
+    /**
+     * Bytes discarded because of corrupt framing since the last call to
+     * {@link #takeDiscardedData()}.
+     */
+    private final ByteList mDiscarded = new ByteList(16);
+
+    /**
+     * Constructs a decoder for the short characteristic that uses factory to create packets.
+     *
+     * @param factory Factory for constructing a ESPPacket
+     */
+    public LEFrameDecoder(PacketFactory factory) {
+        this(factory, MAX_SHORT_PAYLOAD_LENGTH);
+    }
+
+    /**
+     * Constructs a decoder that uses factory to create packets.
+     *
+     * @param factory           Factory for constructing a ESPPacket
+     * @param maxPayloadLength  Longest payload length accepted, for example
+     *                          {@link #MAX_LONG_PAYLOAD_LENGTH} for the long characteristic
+     */
+    public LEFrameDecoder(PacketFactory factory, int maxPayloadLength) {
+        if(maxPayloadLength <= 0 || maxPayloadLength > MAX_LONG_PAYLOAD_LENGTH) {
+            throw new IllegalArgumentException("Invalid maximum payload length " + maxPayloadLength);
+        }
+        mFactory = factory;
+        mMaxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * Sets the {@link PacketFilter} checked before constructing a packet. Frames rejected by the
+     * filter are skipped without allocating a packet.
+     *
+     * @param filter Packet filter, null accepts every frame
+     */
+    public void setPacketFilter(PacketFilter filter) {
+        mFilter = filter;
+    }
+
+    /**
+     * Discards any bytes collected because of corrupt framing. Should be called whenever the
+     * underlying byte stream is restarted, such as after reconnecting.
+     */
+    public void reset() {
+        mDiscarded.clear();
+    }
+
+    /**
+     * Indicates if bytes have been discarded because of corrupt framing.
+     *
+     * @return True if {@link #takeDiscardedData()} will return data
+     */
+    public boolean hasDiscardedData() {
+        return !mDiscarded.isEmpty();
+    }
+
+    /**
+     * Returns the bytes that were discarded because of corrupt framing and clears them.
+     *
+     * @return Discarded bytes, empty if no bytes were discarded
+     */
+    public byte [] takeDiscardedData() {
+        byte [] data = new byte[mDiscarded.size()];
+        mDiscarded.copyTo(data);
+        mDiscarded.clear();
+        return data;
+    }
+
+    /**
+     * Decodes every complete frame in the ESP byte data inside of source and hands the packets to
+     * sink in order.
+     *
+     * <p>Complete frames and corrupt data are consumed from source, a partial frame at the end of
+     * source is left untouched until the remaining bytes are received.</p>
+     *
+     * @param source Buffer containing ESP byte data
+     * @param v1Type Supplies the last known V1 type (this is used as a hint for determining if
+     *               checksums are used). It is queried for every frame, since processing a packet
+     *               can change the V1 type.
+     * @param sink   Receives each decoded packet
+     *
+     * @return Number of bytes consumed from source
+     */
+    public int decodeAll(RingByteBuffer source, Supplier<DeviceId> v1Type, PacketSink sink) {
+        final int size = source.size();
+        ESPPacket packet;
+        while ((packet = decode(source, v1Type.get())) != null) {
+            sink.onPacket(packet);
+        }
+        return size - source.size();
+    }
+
+    /**
+     * Decodes the next ESPPacket from the ESP byte data inside of buffer.
+     *
+     * <p>Complete frames are consumed from buffer as they are decoded, a partial frame at the end
+     * of buffer is left untouched until the remaining bytes are received.</p>
+     *
+     * @param buffer Buffer containing ESP byte data
+     * @param v1Type Last known V1 type (this is used as a hint for determining if checksums are used)
+     *
+     * @return The next valid ESPPacket in buffer. Null if buffer doesn't contain another complete
+     * frame.
+     */
+    public ESPPacket decode(RingByteBuffer buffer, DeviceId v1Type) {
+        while (!buffer.isEmpty()) {
+            // Skip anything in front of the start of frame byte.
+            if(buffer.get(PacketUtils.SOF_IDX) != PacketUtils.ESP_PACKET_SOF) {
+                discard(buffer);
+                continue;
+            }
+            // Wait for the rest of the header.
+            if(buffer.size() <= PacketUtils.PAYLOAD_LEN_IDX) {
+                return null;
+            }
+            byte destId = buffer.get(PacketUtils.DEST_IDX);
+            byte origId = buffer.get(PacketUtils.ORIG_IDX);
+            if((destId & PacketUtils.DEST_INDENTIFIER_BASE_CONST) != PacketUtils.DEST_INDENTIFIER_BASE_CONST ||
+                    (origId & PacketUtils.ORIG_INDENTIFIER_BASE_CONST) != PacketUtils.ORIG_INDENTIFIER_BASE_CONST) {
+                // This wasn't really a start of frame byte.
+                discard(buffer);
+                continue;
+            }
+            final int payloadLength = buffer.get(PacketUtils.PAYLOAD_LEN_IDX) & 0xFF;
+            if(payloadLength > mMaxPayloadLength) {
+                // No valid frame is this long, so don't hold up the frames behind it waiting for
+                // bytes that will never make up an end of frame.
+                discard(buffer);
+                continue;
+            }
+            final int frameLength = payloadLength + FRAMING_LENGTH;
+            // Wait for the rest of the frame.
+            if(buffer.size() < frameLength) {
+                return null;
+            }
+            if(buffer.get(frameLength - 1) != PacketUtils.ESP_PACKET_EOF) {
+                // The length byte doesn't point at an end of frame byte, the frame is corrupt.
+                discard(buffer);
+                continue;
+            }
+            byte packetId = buffer.get(PacketUtils.PACK_ID_IDX);
+            if(!PacketUtils.isAccepted(mFilter, destId, origId, packetId)) {
+                // Skip frames we aren't interested in.
+                buffer.skip(frameLength);
+                continue;
+            }
+            ESPPacket packet = PacketUtils.readPacket(mFactory, buffer, frameLength, v1Type, mDiscarded);
+            if(packet != null) {
+                return packet;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discards the byte at the head of buffer so the decoder can resynchronize.
+     *
+     * @param buffer Buffer containing ESP byte data
+     */
+    private void discard(RingByteBuffer buffer) {
+        mDiscarded.add((byte) buffer.read());
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+/**
+ * Interface definition for constructing an {@link ESPPacket} of a specific type.
+ *
+ * @see PacketFactory#registerPacket(int, PacketConstructor)
+ */
+public interface PacketConstructor {
+    /**
+     * Constructs a new packet whose backing array has room for packetLength bytes.
+     *
+     * @param packetLength Number of bytes in the ESP frame, including the start and end of frame
+     *                     bytes.
+     *
+     * @return New {@link ESPPacket} instance
+     */
+    ESPPacket newPacket(int packetLength);
+}
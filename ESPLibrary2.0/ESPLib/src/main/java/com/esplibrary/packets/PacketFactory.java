@@ -52,19 +52,295 @@ import com.esplibrary.packets.response.ResponseUnsupported;
 import com.esplibrary.packets.response.ResponseUserBytes;
 import com.esplibrary.packets.response.ResponseVehicleSpeed;
 import com.esplibrary.packets.response.ResponseVersion;
+import com.esplibrary.utilities.ESPLogger;
+import com.valentineresearch.esplibrary_v2.BuildConfig;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Created by JDavis on 3/6/2016.
  */
 public class PacketFactory {
 
+    private final static String LOG_TAG = "PacketFactory";
+    /**
+     * Number of possible packet IDs.
+     */
+    private final static int PACKET_ID_COUNT = 256;
+    /**
+     * Indicates if pooled packets that are garbage collected without being released are reported.
+     */
+    private final static boolean DETECT_LEAKS = BuildConfig.DETECT_PACKET_LEAKS;
+
+    /**
+     * Constructors registered using {@link #registerPacket(int, PacketConstructor)}, indexed by
+     * packet ID. A null entry means the library's own type is constructed. The table is replaced,
+     * never modified, when a packet is registered so it can be read without locking.
+     */
+    private volatile PacketConstructor [] mConstructors = new PacketConstructor[PACKET_ID_COUNT];
+
+    /**
+     * Maximum number of released packets kept per packet ID. Zero if pooling is disabled.
+     */
+    private final int mMaxPooledPerType;
     /**
-     * Creates a type ESP based on the specified packet ID and packet length.
+     * Free lists of released packets indexed by packet ID.
+     */
+    private final ArrayDeque<ESPPacket> [] mFreeLists;
+    /**
+     * Queue of leak tracking references whose packet was garbage collected.
+     */
+    private final ReferenceQueue<ESPPacket> mLeakQueue;
+    /**
+     * Leak tracking references for every pooled packet that is currently handed out.
+     */
+    private final Set<LeakReference> mLeakRefs;
+
+    /**
+     * Constructs a PacketFactory that allocates a new {@link ESPPacket} for every request.
+     */
+    public PacketFactory() {
+        this(0);
+    }
+
+    /**
+     * Constructs a PacketFactory that recycles {@link ESPPacket packets}.
+     *
+     * <p>When pooling is enabled every packet returned by {@link #getPacketForId(int, int)} must be
+     * {@link ESPPacket#release() released} exactly once more than it was
+     * {@link ESPPacket#retain() retained}. The library releases every packet it decodes once the
+     * {@link com.esplibrary.client.ESPClientListener listener} and response callbacks return, so
+     * callbacks that hold onto a packet must retain it.</p>
+     *
+     * @param maxPooledPerType Maximum number of released packets kept for each packet ID. Zero
+     *                         disables pooling.
+     */
+    @SuppressWarnings("unchecked")
+    public PacketFactory(int maxPooledPerType) {
+        if(maxPooledPerType < 0) {
+            throw new IllegalArgumentException("maxPooledPerType < 0");
+        }
+        mMaxPooledPerType = maxPooledPerType;
+        if(maxPooledPerType > 0) {
+            mFreeLists = (ArrayDeque<ESPPacket> []) new ArrayDeque<?>[PACKET_ID_COUNT];
+            mLeakQueue = DETECT_LEAKS ? new ReferenceQueue<>() : null;
+            mLeakRefs = DETECT_LEAKS ? new HashSet<>() : null;
+        }
+        else {
+            mFreeLists = null;
+            mLeakQueue = null;
+            mLeakRefs = null;
+        }
+    }
+
+    /**
+     * Indicates if this factory recycles packets.
+     *
+     * @return True if pooling is enabled
+     */
+    public boolean isPoolingEnabled() {
+        return mMaxPooledPerType > 0;
+    }
+
+    /**
+     * Registers a constructor for packetId, replacing the library's own type for that packet ID.
+     * This allows packets the library doesn't model, such as accessory packets, to be decoded into a
+     * custom {@link ESPPacket} type instead of an {@link UnknownPacket}.
+     *
+     * @param packetId      Packet ID to register (0 - 255).
+     * @param constructor   {@link PacketConstructor} used to construct packets with packetId.
+     */
+    public void registerPacket(int packetId, PacketConstructor constructor) {
+        if(packetId < 0 || packetId >= PACKET_ID_COUNT) {
+            throw new IllegalArgumentException("Invalid packet ID " + packetId);
+        }
+        if(constructor == null) {
+            throw new IllegalArgumentException("constructor == null");
+        }
+        setConstructor(packetId, constructor);
+    }
+
+    /**
+     * Removes a constructor registered using {@link #registerPacket(int, PacketConstructor)},
+     * restoring the library's own type for packetId.
+     *
+     * @param packetId      Packet ID to unregister (0 - 255).
+     */
+    public void unregisterPacket(int packetId) {
+        if(packetId < 0 || packetId >= PACKET_ID_COUNT) {
+            throw new IllegalArgumentException("Invalid packet ID " + packetId);
+        }
+        setConstructor(packetId, null);
+    }
+
+    /**
+     * Replaces the constructor for packetId and discards the pooled packets of the previous type.
+     *
+     * @param packetId      Packet ID (0 - 255).
+     * @param constructor   Registered constructor or null for the library's own type.
+     */
+    private void setConstructor(int packetId, PacketConstructor constructor) {
+        synchronized (this) {
+            PacketConstructor [] table = mConstructors.clone();
+            table[packetId] = constructor;
+            mConstructors = table;
+        }
+        // Pooled packets of the previous type can no longer be handed out for this packet ID.
+        // Packets of that type that are still handed out are dropped by recycle() instead.
+        if(mFreeLists != null) {
+            ArrayDeque<ESPPacket> freeList = getFreeList(packetId);
+            synchronized (freeList) {
+                freeList.clear();
+            }
+        }
+    }
+
+    /**
+     * Creates a type ESP based on the specified packet ID and packet length. If pooling is enabled
+     * a previously released packet of the same type is reused when available.
      *
      * @param packetId      A PacketIds that represents a ESPPacket.
      * @return              An ESPPacket that corresponds to the packetId constant.
      */
     public ESPPacket getPacketForId(int packetId, int packetLength) {
+        if(mFreeLists == null) {
+            return createPacket(packetId, packetLength);
+        }
+        if(DETECT_LEAKS) {
+            reportLeaks();
+        }
+        final PacketConstructor constructor = mConstructors[packetId & 0xFF];
+        ESPPacket packet = null;
+        ArrayDeque<ESPPacket> freeList = getFreeList(packetId);
+        synchronized (freeList) {
+            packet = freeList.pollFirst();
+        }
+        if(packet == null || packet.mPoolConstructor != constructor) {
+            // Either the free list is empty or a different type was registered since the packet
+            // was pooled.
+            packet = constructor != null ? constructor.newPacket(packetLength)
+                    : createLibraryPacket(packetId, packetLength);
+            packet.mPool = this;
+            packet.mPoolId = packetId;
+            packet.mPoolConstructor = constructor;
+        }
+        else if(packet.packetData.length != packetLength) {
+            packet.packetData = new byte[packetLength];
+        }
+        packet.acquire();
+        if(DETECT_LEAKS) {
+            LeakReference ref = new LeakReference(packet, packetId, mLeakQueue);
+            synchronized (mLeakRefs) {
+                mLeakRefs.add(ref);
+            }
+            packet.mLeakRef = ref;
+        }
+        return packet;
+    }
+
+    /**
+     * Returns a released packet to the free list for its packet ID.
+     *
+     * @param packet Packet whose last reference was released
+     */
+    void recycle(ESPPacket packet) {
+        if(DETECT_LEAKS && packet.mLeakRef != null) {
+            LeakReference ref = (LeakReference) packet.mLeakRef;
+            packet.mLeakRef = null;
+            ref.clear();
+            synchronized (mLeakRefs) {
+                mLeakRefs.remove(ref);
+            }
+        }
+        packet.reset();
+        ArrayDeque<ESPPacket> freeList = getFreeList(packet.mPoolId);
+        synchronized (freeList) {
+            // Checked while holding the free list's lock so a concurrent registerPacket() either
+            // sees the packet when it clears the list or the packet sees the new constructor.
+            if(mConstructors[packet.mPoolId & 0xFF] != packet.mPoolConstructor) {
+                return;
+            }
+            if(freeList.size() < mMaxPooledPerType) {
+                freeList.addFirst(packet);
+            }
+        }
+    }
+
+    /**
+     * Returns the free list for packetId, creating it if necessary.
+     *
+     * @param packetId Packet ID
+     *
+     * @return Free list for packetId
+     */
+    private ArrayDeque<ESPPacket> getFreeList(int packetId) {
+        final int index = packetId & 0xFF;
+        synchronized (mFreeLists) {
+            ArrayDeque<ESPPacket> freeList = mFreeLists[index];
+            if(freeList == null) {
+                freeList = mFreeLists[index] = new ArrayDeque<>(mMaxPooledPerType);
+            }
+            return freeList;
+        }
+    }
+
+    /**
+     * Logs every pooled packet that was garbage collected without being released.
+     */
+    private void reportLeaks() {
+        LeakReference ref;
+        while((ref = (LeakReference) mLeakQueue.poll()) != null) {
+            synchronized (mLeakRefs) {
+                mLeakRefs.remove(ref);
+            }
+            ESPLogger.e(LOG_TAG, String.format("Pooled packet (ID = %02X) was garbage collected " +
+                    "without being released, call ESPPacket.release() when finished with a " +
+                    "retained packet.", ref.packetId));
+        }
+    }
+
+    /**
+     * Weak reference to a pooled packet that is enqueued if the packet leaks.
+     */
+    private static class LeakReference extends WeakReference<ESPPacket> {
+
+        final int packetId;
+
+        LeakReference(ESPPacket packet, int packetId, ReferenceQueue<ESPPacket> queue) {
+            super(packet, queue);
+            this.packetId = packetId;
+        }
+    }
+
+    /**
+     * Constructs a new ESPPacket for the specified packet ID and packet length.
+     *
+     * @param packetId      A PacketIds that represents a ESPPacket.
+     * @param packetLength  Length of the packet's backing array
+     *
+     * @return              An ESPPacket that corresponds to the packetId constant.
+     */
+    private ESPPacket createPacket(int packetId, int packetLength) {
+        final PacketConstructor constructor = mConstructors[packetId & 0xFF];
+        if(constructor != null) {
+            return constructor.newPacket(packetLength);
+        }
+        return createLibraryPacket(packetId, packetLength);
+    }
+
+    /**
+     * Constructs the library's own ESPPacket type for the specified packet ID and packet length.
+     *
+     * @param packetId      A PacketIds that represents a ESPPacket.
+     * @param packetLength  Length of the packet's backing array
+     *
+     * @return              An ESPPacket that corresponds to the packetId constant.
+     */
+    private static ESPPacket createLibraryPacket(int packetId, int packetLength) {
         switch (packetId){
             case PacketId.REQVERSION:
                 return new RequestVersion(packetLength);
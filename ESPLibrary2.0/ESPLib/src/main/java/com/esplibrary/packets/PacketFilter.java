@@ -0,0 +1,28 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+
+/**
+ * Interface definition for deciding if an ESP frame should be turned into an {@link ESPPacket}.
+ * The filter runs on the raw header bytes before a packet is constructed, so rejected frames don't
+ * cause any allocations.
+ *
+ * @see PacketMaskFilter
+ */
+public interface PacketFilter {
+    /**
+     * Indicates if the frame with the specified header should be decoded.
+     *
+     * @param destination   Destination {@link DeviceId#toByte() Id byte} (upper nibble removed)
+     * @param origin        Origin {@link DeviceId#toByte() Id byte} (upper nibble removed)
+     * @param packetId      Packet identifier (0 - 255)
+     *
+     * @return True if the frame should be decoded
+     */
+    boolean accept(byte destination, byte origin, int packetId);
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+
+/**
+ * {@link PacketFilter} backed by bitmasks of accepted destinations, origins and packet IDs. A frame
+ * is accepted if its destination, origin and packet ID are all accepted.
+ *
+ * <p>A new filter accepts no destinations, every origin and every packet ID.</p>
+ */
+public class PacketMaskFilter implements PacketFilter {
+
+    /**
+     * Mask of accepted destination Ids, bit n represents the Id byte n.
+     */
+    private volatile int mDestinationMask = 0;
+    /**
+     * Mask of accepted origin Ids, bit n represents the Id byte n.
+     */
+    private volatile int mOriginMask = 0xFFFF;
+    /**
+     * Mask of accepted packet IDs, bit n represents packet ID n. The array is never modified in
+     * place; every change publishes a new copy so {@link #accept(byte, byte, int)} can read it on the
+     * reader thread without locking.
+     */
+    private volatile long [] mPacketIdMask = new long [] {-1L, -1L, -1L, -1L};
+
+    /**
+     * Accept frames addressed to destination.
+     *
+     * @param destination Destination Id
+     *
+     * @return This filter
+     */
+    public PacketMaskFilter acceptDestination(DeviceId destination) {
+        synchronized (this) {
+            mDestinationMask |= bitFor(destination);
+        }
+        return this;
+    }
+
+    /**
+     * Reject frames addressed to destination.
+     *
+     * @param destination Destination Id
+     *
+     * @return This filter
+     */
+    public PacketMaskFilter rejectDestination(DeviceId destination) {
+        synchronized (this) {
+            mDestinationMask &= ~bitFor(destination);
+        }
+        return this;
+    }
+
+    /**
+     * Accept frames sent by origin.
+     *
+     * @param origin Origin Id
+     *
+     * @return This filter
+     */
+    public PacketMaskFilter acceptOrigin(DeviceId origin) {
+        synchronized (this) {
+            mOriginMask |= bitFor(origin);
+        }
+        return this;
+    }
+
+    /**
+     * Reject frames sent by origin.
+     *
+     * @param origin Origin Id
+     *
+     * @return This filter
+     */
+    public PacketMaskFilter rejectOrigin(DeviceId origin) {
+        synchronized (this) {
+            mOriginMask &= ~bitFor(origin);
+        }
+        return this;
+    }
+
+    /**
+     * Accept frames with packetId.
+     *
+     * @param packetId Packet identifier (0 - 255)
+     *
+     * @return This filter
+     */
+    public PacketMaskFilter acceptPacketId(int packetId) {
+        final int word = wordFor(packetId);
+        synchronized (this) {
+            long [] mask = mPacketIdMask.clone();
+            mask[word] |= (1L << packetId);
+            mPacketIdMask = mask;
+        }
+        return this;
+    }
+
+    /**
+     * Reject frames with packetId.
+     *
+     * @param packetId Packet identifier (0 - 255)
+     *
+     * @return This filter
+     */
+    public PacketMaskFilter rejectPacketId(int packetId) {
+        final int word = wordFor(packetId);
+        synchronized (this) {
+            long [] mask = mPacketIdMask.clone();
+            mask[word] &= ~(1L << packetId);
+            mPacketIdMask = mask;
+        }
+        return this;
+    }
+
+    @Override
+    public boolean accept(byte destination, byte origin, int packetId) {
+        if((mDestinationMask & (1 << (destination & 0x0F))) == 0) {
+            return false;
+        }
+        if((mOriginMask & (1 << (origin & 0x0F))) == 0) {
+            return false;
+        }
+        packetId &= 0xFF;
+        return (mPacketIdMask[packetId >> 6] & (1L << packetId)) != 0;
+    }
+
+    /**
+     * Returns the mask bit for the Id byte of deviceId.
+     *
+     * @param deviceId Device Id
+     *
+     * @return Mask bit
+     */
+    private static int bitFor(DeviceId deviceId) {
+        if(deviceId == null) {
+            throw new IllegalArgumentException("deviceId == null");
+        }
+        return 1 << (deviceId.toByte() & 0x0F);
+    }
+
+    /**
+     * Returns the index of the mask word containing packetId.
+     *
+     * @param packetId Packet identifier (0 - 255)
+     *
+     * @return Index into {@link #mPacketIdMask}
+     */
+    private static int wordFor(int packetId) {
+        if(packetId < 0 || packetId > 0xFF) {
+            throw new IllegalArgumentException("Invalid packet ID " + packetId);
+        }
+        return packetId >> 6;
+    }
+}
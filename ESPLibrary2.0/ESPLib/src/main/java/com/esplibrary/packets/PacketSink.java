@@ -0,0 +1,23 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+/**
+ * Interface definition for a callback that receives every {@link ESPPacket} produced by a bulk
+ * decode.
+ *
+ * @see SPPFrameDecoder#decodeAll(byte[], int, int, java.util.function.Supplier, PacketSink)
+ * @see LEFrameDecoder#decodeAll(com.esplibrary.utilities.RingByteBuffer, java.util.function.Supplier, PacketSink)
+ */
+public interface PacketSink {
+    /**
+     * Invoked for each decoded packet, in the order the frames appeared in the byte stream. The
+     * sink takes ownership of packet and must {@link ESPPacket#release() release} it when done.
+     *
+     * @param packet Decoded {@link ESPPacket}
+     */
+    void onPacket(ESPPacket packet);
+}
@@ -3,6 +3,7 @@ package com.esplibrary.packets;
 import com.esplibrary.constants.DeviceId;
 import com.esplibrary.constants.PacketId;
 import com.esplibrary.utilities.ByteList;
+import com.esplibrary.utilities.RingByteBuffer;
 
 /**
  * Created by jdavis on 4/5/2018.
@@ -77,41 +78,38 @@ public class PacketUtils {
     public final static int PAYLOAD_LEN_IDX = 4;
     public final static int PAYLOAD_START_IDX = 5;
 
-    private static ByteList sCopyCache;
-
     /**
-     * Utility method for determining if buffer contains valid ESP framing data.
+     * Utility method for determining if data contains valid ESP framing data.
      *
-     * @param buffer Source data
+     * @param data Source data
      * @param start starting index (inclusive)
      * @param stop stop index (exclusive)
      * @param v1Type current V1 type.
      *
      * @return True if the framing data is valid
      */
-    private final static boolean isValidESPFramingData(ByteList buffer, int start, int stop, DeviceId v1Type) {
-        byte sof = buffer.get(start + 0);
+    private final static boolean isValidESPFramingData(byte [] data, int start, int stop, DeviceId v1Type) {
+        byte sof = data[start + SOF_IDX];
         if((sof != PacketUtils.ESP_PACKET_SOF)) {
             return false;
         }
 
-        byte destId = buffer.get(start + 1);
+        byte destId = data[start + DEST_IDX];
         if((destId & PacketUtils.DEST_INDENTIFIER_BASE_CONST) != PacketUtils.DEST_INDENTIFIER_BASE_CONST) {
             return false;
         }
 
-        byte origId = buffer.get(start + 2);
+        byte origId = data[start + ORIG_IDX];
         if((origId & PacketUtils.ORIG_INDENTIFIER_BASE_CONST) != PacketUtils.ORIG_INDENTIFIER_BASE_CONST) {
             return false;
         }
 
-        byte eof = buffer.get(stop - 1);
+        byte eof = data[stop - 1];
         if((eof != PacketUtils.ESP_PACKET_EOF)) {
-            buffer.clear();
             return false;
         }
 
-        byte packetId = buffer.get(start + 3);
+        byte packetId = data[start + PACK_ID_IDX];
 
         // If we haven't determined the V1 type throw this packet away.
         if(!isFromV1(origId) && v1Type == DeviceId.UNKNOWN_DEVICE) {
@@ -130,8 +128,11 @@ public class PacketUtils {
         }
 
         if(useChksum) {
-            int calCksum = buffer.calculateSumNoCarry(0, buffer.size() - 2);
-            byte foundChkSm = buffer.get(stop - 2);
+            byte calCksum = 0x00;
+            for (int i = start; i < stop - 2; i++) {
+                calCksum += data[i];
+            }
+            byte foundChkSm = data[stop - 2];
             // Checksum isn't valid, return false
             if(foundChkSm != calCksum) {
                 return false;
@@ -162,30 +163,135 @@ public class PacketUtils {
      * @return ESPPacket if the byte data in buffer contains valid ESP data.
      */
     public final static ESPPacket makeFromBufferLE(PacketFactory factory, ByteList buffer, DeviceId v1Type) {
+        ESPPacket packet = makePacket(factory, null, buffer.mByteArray, 0, buffer.size(), v1Type);
+        // Always clear the buffer once we've retrieved all of the byte data.
+        buffer.clear();
+        return packet;
+    }
+
+    /**
+     * Creates an ESPPacket with the ESP byte data in buffer.
+     *
+     * @param factory Factory for constructing a ESPPacket
+     * @param buffer Buffer holding byte data
+     * @param v1Type V1 type
+     *
+     * @return ESPPacket if the byte data in buffer contains valid ESP data.
+     */
+    public final static ESPPacket makeFromBufferLE(PacketFactory factory, RingByteBuffer buffer, DeviceId v1Type) {
+        return makeFromBufferLE(factory, null, buffer, v1Type);
+    }
+
+    /**
+     * Creates an ESPPacket with the ESP byte data in buffer if its header is accepted by filter.
+     *
+     * @param factory Factory for constructing a ESPPacket
+     * @param filter {@link PacketFilter} checked before the packet is constructed, null accepts
+     *               every frame.
+     * @param buffer Buffer holding byte data
+     * @param v1Type V1 type
+     *
+     * @return ESPPacket if the byte data in buffer contains valid ESP data that was accepted by
+     * filter.
+     */
+    public final static ESPPacket makeFromBufferLE(PacketFactory factory, PacketFilter filter, RingByteBuffer buffer, DeviceId v1Type) {
         int size = buffer.size();
-        if(size < 6) {
-            return null;
-        }
         ESPPacket packet = null;
-        // Make sure the start of frame, destination, origination, and end of frame byte are valid.
-        if(isValidESPFramingData(buffer, 0 , size, v1Type)) {
-            int packetId = buffer.get(3) & 0xFF;
-            packet = factory.getPacketForId(packetId, size);
-            // Copy the buffer into the packet's backing array.
-            buffer.copyTo(packet.packetData);
-            // If the packet is from a V1, update the packets V1 type otherwise we want to use the previously determined V1Type.
-            if(packet.isFromV1()) {
-                packet.mV1Type = packet.getOrigin();
-            }
-            else {
-                packet.mV1Type = v1Type;
-            }
+        if(size >= 6 && isAccepted(filter, buffer.get(DEST_IDX), buffer.get(ORIG_IDX), buffer.get(PACK_ID_IDX))) {
+            packet = readPacket(factory, buffer, size, v1Type, null);
         }
         // Always clear the buffer once we've retrieved all of the byte data.
         buffer.clear();
         return packet;
     }
 
+    /**
+     * Consumes length bytes of ESP data from buffer and creates an ESPPacket from them.
+     *
+     * @param factory Factory for constructing a ESPPacket
+     * @param buffer Buffer whose first length bytes are an ESP frame
+     * @param length Number of ESP bytes, including the start and end of frame bytes
+     * @param v1Type V1 type
+     * @param rejected If not null, receives the consumed bytes when they don't contain valid ESP data
+     *
+     * @return ESPPacket if the consumed bytes contain valid ESP data otherwise, null.
+     */
+    final static ESPPacket readPacket(PacketFactory factory, RingByteBuffer buffer, int length, DeviceId v1Type, ByteList rejected) {
+        int packetId = buffer.get(PACK_ID_IDX) & 0xFF;
+        ESPPacket packet = factory.getPacketForId(packetId, length);
+        // Read the buffer straight into the packet's backing array and validate it in place.
+        buffer.read(packet.packetData, 0, length);
+        if(!isValidESPFramingData(packet.packetData, 0, length, v1Type)) {
+            if(rejected != null) {
+                rejected.addAll(packet.packetData);
+            }
+            packet.release();
+            return null;
+        }
+        // If the packet is from a V1, update the packets V1 type otherwise we want to use the previously determined V1Type.
+        if(packet.isFromV1()) {
+            packet.mV1Type = packet.getOrigin();
+        }
+        else {
+            packet.mV1Type = v1Type;
+        }
+        return packet;
+    }
+
+    /**
+     * Creates an ESPPacket with the unescaped ESP byte data in data.
+     *
+     * @param factory Factory for constructing a ESPPacket
+     * @param filter {@link PacketFilter} checked before the packet is constructed, null accepts
+     *               every frame.
+     * @param data Array holding ESP byte data
+     * @param start Index of the ESP start of frame byte
+     * @param length Number of ESP bytes, including the start and end of frame bytes
+     * @param v1Type V1 type
+     *
+     * @return ESPPacket if the byte data in data contains valid ESP data that was accepted by filter
+     * otherwise, null.
+     */
+    final static ESPPacket makePacket(PacketFactory factory, PacketFilter filter, byte [] data, int start, int length, DeviceId v1Type) {
+        if(length < 6) {
+            return null;
+        }
+        // Reject frames we aren't interested in before doing any more work.
+        if(!isAccepted(filter, data[start + DEST_IDX], data[start + ORIG_IDX], data[start + PACK_ID_IDX])) {
+            return null;
+        }
+        // Make sure the start of frame, destination, origination, and end of frame byte are valid.
+        if(!isValidESPFramingData(data, start, start + length, v1Type)) {
+            return null;
+        }
+        int packetId = data[start + PACK_ID_IDX] & 0xFF;
+        ESPPacket packet = factory.getPacketForId(packetId, length);
+        // Copy the ESP data into the packet's backing array.
+        System.arraycopy(data, start, packet.packetData, 0, length);
+        // If the packet is from a V1, update the packets V1 type otherwise we want to use the previously determined V1Type.
+        if(packet.isFromV1()) {
+            packet.mV1Type = packet.getOrigin();
+        }
+        else {
+            packet.mV1Type = v1Type;
+        }
+        return packet;
+    }
+
+    /**
+     * Utility method for checking the raw header bytes of an ESP frame against filter.
+     *
+     * @param filter {@link PacketFilter} to check, null accepts every frame.
+     * @param destId Destination byte
+     * @param origId Origin byte
+     * @param packetId Packet identifier byte
+     *
+     * @return True if the frame was accepted
+     */
+    public final static boolean isAccepted(PacketFilter filter, byte destId, byte origId, byte packetId) {
+        return filter == null || filter.accept((byte) (destId & 0x0F), (byte) (origId & 0x0F), packetId & 0xFF);
+    }
+
     /**
      * Removes data link escape bytes as well as removes the Android BT packets.
      * NOTE: This function assumes packetData is a valid, delimited Android BT packet
@@ -262,7 +368,11 @@ public class PacketUtils {
      *
      * @return ESPPacket constructed using the ESP byte data in buffer. Null if the data contained
      * in buffer is in valid.
+     *
+     * @deprecated This method rescans buffer from the beginning every time it is called. Use a
+     * {@link SPPFrameDecoder} instead.
      */
+    @Deprecated
     public final static ESPPacket makeFromBufferSPP(PacketFactory factory, ByteList buffer, DeviceId v1Type) {
         int size = buffer.size();
         int startIndex = -1;
@@ -355,15 +465,11 @@ public class PacketUtils {
         }
 
 
-        // Byte list cache
-        if (sCopyCache == null) {
-            sCopyCache = new ByteList(15);
-        }
-
         // Strip the junk
-        stripDLEBytes(buffer, sCopyCache, messageDataStart, messageDataStop);
+        ByteList copyList = new ByteList(messageDataStop - messageDataStart);
+        stripDLEBytes(buffer, copyList, messageDataStart, messageDataStop);
         buffer.removeRange(startIndex, endIndex + 1, false);
-        ESPPacket packet = makeFromBufferLE(factory, sCopyCache, v1Type);
+        ESPPacket packet = makeFromBufferLE(factory, copyList, v1Type);
         return packet;
     }
 
@@ -0,0 +1,259 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.utilities.ByteList;
+import com.esplibrary.utilities.RingByteBuffer;
+
+import java.util.function.Supplier;
+
+/**
+ * Stateful decoder for turning Bluetooth SPP byte data into {@link ESPPacket ESPPackets}.
+ *
+ * <p>Unlike {@link PacketUtils#makeFromBufferSPP(PacketFactory, ByteList, DeviceId)}, the decoder
+ * consumes the receive buffer as it goes and remembers how much of the current frame it has
+ * already unescaped, so every received byte is only examined once. DLE unescaping, the SPP
+ * checksum and the ESP framing validation are all performed in that single pass.</p>
+ *
+ * <p>A decoder holds the partial frame of a single byte stream and is not thread-safe. Every
+ * connection should use its own instance.</p>
+ */
+public class SPPFrameDecoder {
+
+    /**
+     * Largest unescaped SPP frame (length, ESP frame and checksum) the decoder will accumulate
+     * before discarding the data as garbage.
+     */
+    private final static int MAX_FRAME_LENGTH = 512;
+    /**
+     * Waiting for the opening frame delimiter.
+     */
+    private final static int STATE_WAIT_DELIMITER = 0;
+    /**
+     * Accumulating the bytes of a frame.
+     */
+    private final static int STATE_IN_FRAME = 1;
+
+    private final PacketFactory mFactory;
+    /**
+     * Filter applied to the header of every complete frame before a packet is constructed.
+     */
+    private volatile PacketFilter mFilter;
+    /**
+     * Unescaped contents of the frame currently being decoded: length byte, ESP frame and checksum.
+     */
+    private final byte [] mFrame = new byte[MAX_FRAME_LENGTH];
+    private int mFrameLength = 0;
+    /**
+     * Sum (without carry) of every byte currently inside of {@link #mFrame}.
+     */
+    private byte mFrameSum = 0x00;
+    /**
+     * Indicates the last byte received was a data link escape byte.
+     */
+    private boolean mEscaped = false;
+    private int mState = STATE_WAIT_DELIMITER;
+
+    /**
+     * Constructs a decoder that uses factory to create packets.
+     *
+     * @param factory Factory for constructing a ESPPacket
+     */
+    public SPPFrameDecoder(PacketFactory factory) {
+        mFactory = factory;
+    }
+
+    /**
+     * Sets the {@link PacketFilter} checked before constructing a packet. Frames rejected by the
+     * filter are discarded without allocating a packet.
+     *
+     * @param filter Packet filter, null accepts every frame
+     */
+    public void setPacketFilter(PacketFilter filter) {
+        mFilter = filter;
+    }
+
+    /**
+     * Discards any partially decoded frame. Should be called whenever the underlying byte stream is
+     * restarted, such as after reconnecting.
+     */
+    public void reset() {
+        mState = STATE_WAIT_DELIMITER;
+        mFrameLength = 0;
+        mFrameSum = 0x00;
+        mEscaped = false;
+    }
+
+    /**
+     * Decodes the next ESPPacket from the SPP byte data inside of buffer.
+     *
+     * <p>Bytes are consumed from buffer as they are decoded, any partial frame at the end of buffer
+     * is retained by the decoder until the remaining bytes are received.</p>
+     *
+     * @param buffer Buffer containing SPP byte data
+     * @param v1Type Last known V1 type (this is used as a hint for determining if checksums are used)
+     *
+     * @return The next valid ESPPacket in buffer. Null if buffer doesn't contain another complete
+     * frame.
+     */
+    public ESPPacket decode(RingByteBuffer buffer, DeviceId v1Type) {
+        int b;
+        while ((b = buffer.read()) != -1) {
+            ESPPacket packet = onByte((byte) b, v1Type);
+            if (packet != null) {
+                return packet;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes every complete frame in the SPP byte data inside of source and hands the packets to
+     * sink in order.
+     *
+     * <p>source is drained in a single pass; any partial frame at the end is retained by the
+     * decoder until the remaining bytes are received.</p>
+     *
+     * @param source Buffer containing SPP byte data
+     * @param v1Type Supplies the last known V1 type (this is used as a hint for determining if
+     *               checksums are used). It is queried again after every packet handed to sink,
+     *               since processing a packet can change the V1 type.
+     * @param sink   Receives each decoded packet
+     *
+     * @return Number of bytes consumed from source
+     */
+    public int decodeAll(RingByteBuffer source, Supplier<DeviceId> v1Type, PacketSink sink) {
+        int consumed = 0;
+        DeviceId type = v1Type.get();
+        int b;
+        while ((b = source.read()) != -1) {
+            consumed++;
+            ESPPacket packet = onByte((byte) b, type);
+            if (packet != null) {
+                sink.onPacket(packet);
+                type = v1Type.get();
+            }
+        }
+        return consumed;
+    }
+
+    /**
+     * Decodes every complete frame in the SPP byte data of data in the range [offset, offset +
+     * length) and hands the packets to sink in order. The bytes are decoded in place without first
+     * being copied into a buffer.
+     *
+     * <p>Any partial frame at the end of the range is retained by the decoder until the remaining
+     * bytes are passed in a subsequent call.</p>
+     *
+     * @param data   Array containing SPP byte data
+     * @param offset Index of the first byte to decode
+     * @param length Number of bytes to decode
+     * @param v1Type Supplies the last known V1 type (this is used as a hint for determining if
+     *               checksums are used). It is queried again after every packet handed to sink,
+     *               since processing a packet can change the V1 type.
+     * @param sink   Receives each decoded packet
+     *
+     * @return Number of bytes consumed from data
+     */
+    public int decodeAll(byte [] data, int offset, int length, Supplier<DeviceId> v1Type, PacketSink sink) {
+        if (offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid data range");
+        }
+        DeviceId type = v1Type.get();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            ESPPacket packet = onByte(data[i], type);
+            if (packet != null) {
+                sink.onPacket(packet);
+                type = v1Type.get();
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Advances the decoder state using the next byte in the stream.
+     *
+     * @param b Next byte
+     * @param v1Type Last known V1 type
+     *
+     * @return ESPPacket if b completed a valid frame
+     */
+    private ESPPacket onByte(byte b, DeviceId v1Type) {
+        if (b == PacketUtils.SPP_PACKET_DELIMITER_BYTE) {
+            // Back-to-back delimiters or a delimiter while waiting, always begins a new frame. We
+            // can't recover partial data at the start of the stream.
+            if (mState == STATE_WAIT_DELIMITER || mFrameLength == 0) {
+                startFrame();
+                return null;
+            }
+            ESPPacket packet = null;
+            if (!mEscaped) {
+                packet = completeFrame(v1Type);
+            }
+            // The closing delimiter is consumed with the frame, so wait for the next opening delimiter.
+            mState = STATE_WAIT_DELIMITER;
+            return packet;
+        }
+
+        if (mState == STATE_WAIT_DELIMITER) {
+            return null;
+        }
+
+        if (mEscaped) {
+            mEscaped = false;
+            if (b == PacketUtils.DATA_LINK_ESCAPE_BYTE_5D) {
+                b = PacketUtils.DATA_LINK_ESCAPE_BYTE_7D;
+            }
+            else if (b == PacketUtils.DATA_LINK_ESCAPE_BYTE_5F) {
+                b = PacketUtils.SPP_PACKET_DELIMITER_BYTE;
+            }
+        }
+        else if (b == PacketUtils.DATA_LINK_ESCAPE_BYTE_7D) {
+            mEscaped = true;
+            return null;
+        }
+
+        if (mFrameLength == MAX_FRAME_LENGTH) {
+            // No closing delimiter in sight, throw the data away and resynchronize.
+            mState = STATE_WAIT_DELIMITER;
+            return null;
+        }
+        mFrame[mFrameLength++] = b;
+        mFrameSum += b;
+        return null;
+    }
+
+    /**
+     * Resets the frame accumulation state after receiving an opening delimiter.
+     */
+    private void startFrame() {
+        mState = STATE_IN_FRAME;
+        mFrameLength = 0;
+        mFrameSum = 0x00;
+        mEscaped = false;
+    }
+
+    /**
+     * Validates the accumulated frame and constructs an ESPPacket from it.
+     *
+     * @param v1Type Last known V1 type
+     *
+     * @return ESPPacket if the accumulated frame is valid otherwise, null.
+     */
+    private ESPPacket completeFrame(DeviceId v1Type) {
+        // The frame must at least contain the length byte, the ESP framing data and the checksum.
+        if (mFrameLength < 8) {
+            return null;
+        }
+        // The SPP checksum covers the length byte and the ESP frame.
+        byte checksum = mFrame[mFrameLength - 1];
+        if ((byte) (mFrameSum - checksum) != checksum) {
+            return null;
+        }
+        return PacketUtils.makePacket(mFactory, mFilter, mFrame, 1, mFrameLength - 2, v1Type);
+    }
+}
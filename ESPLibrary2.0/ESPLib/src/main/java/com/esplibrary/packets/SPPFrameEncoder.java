@@ -0,0 +1,182 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.bluetooth.BTUtil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoder for turning ESP byte data into Bluetooth SPP frames.
+ *
+ * <p>Unlike {@link BTUtil#getV1cDelimitedData(byte[])} followed by
+ * {@link BTUtil#escapeV1cData(byte[])}, the encoder delimits, checksums and DLE-escapes the ESP
+ * data in a single pass directly into a reusable output buffer, so encoding a frame does not
+ * allocate once the buffer has grown to fit the largest frame sent.</p>
+ *
+ * <p>Several frames can be encoded back to back before calling {@link #writeTo(OutputStream)} so
+ * a burst of packets reaches the stream as a single write.</p>
+ *
+ * <p>An encoder is not thread-safe. Every connection should use its own instance.</p>
+ */
+public class SPPFrameEncoder {
+
+    /**
+     * Initial size of the output buffer; large enough for an escaped frame of any common request.
+     */
+    private final static int DEFAULT_CAPACITY = 128;
+
+    private byte [] mBuffer;
+    private int mLength = 0;
+
+    /**
+     * Constructs an encoder with an empty output buffer.
+     */
+    public SPPFrameEncoder() {
+        mBuffer = new byte[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Appends a complete SPP frame containing data to the output buffer.
+     *
+     * @param data ESP frame bytes to encode
+     *
+     * @return Number of bytes appended to the output buffer
+     */
+    public int encode(byte [] data) {
+        return encode(data, 0, data.length);
+    }
+
+    /**
+     * Appends a complete SPP frame containing the bytes of data in the range [offset, offset +
+     * length) to the output buffer.
+     *
+     * @param data      Source array of the ESP frame bytes
+     * @param offset    Index of the first byte to encode
+     * @param length    Number of bytes to encode
+     *
+     * @return Number of bytes appended to the output buffer
+     */
+    public int encode(byte [] data, int offset, int length) {
+        if (offset < 0 || length < 0 || length > 0xFF || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid ESP frame range");
+        }
+        // Worst case every byte except the delimiters needs to be escaped.
+        ensureCapacity(mLength + (2 * (length + 2)) + 2);
+        final byte [] buffer = mBuffer;
+        final int start = mLength;
+        int idx = start;
+        buffer[idx++] = PacketUtils.SPP_PACKET_DELIMITER_BYTE;
+        // Packet Checksum includes the 'Packet Length' byte.
+        byte lengthByte = (byte) length;
+        byte checksum = lengthByte;
+        idx = putEscaped(buffer, idx, lengthByte);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            byte b = data[i];
+            checksum += b;
+            idx = putEscaped(buffer, idx, b);
+        }
+        idx = putEscaped(buffer, idx, checksum);
+        buffer[idx++] = PacketUtils.SPP_PACKET_DELIMITER_BYTE;
+        mLength = idx;
+        return idx - start;
+    }
+
+    /**
+     * Appends a complete SPP frame containing the packet's byte data to the output buffer.
+     *
+     * @param packet {@link ESPPacket} to encode
+     *
+     * @return Number of bytes appended to the output buffer
+     */
+    public int encode(ESPPacket packet) {
+        EncodedFrame frame = packet.getEncodedFrame();
+        if (frame != null) {
+            // The packet already has a pre-encoded SPP frame so just copy it.
+            return append(frame.getSPPFrame());
+        }
+        return encode(packet.getPacketData());
+    }
+
+    /**
+     * Appends bytes that are already SPP encoded to the output buffer.
+     *
+     * @param encoded Complete SPP frame(s)
+     *
+     * @return Number of bytes appended to the output buffer
+     */
+    public int append(byte [] encoded) {
+        ensureCapacity(mLength + encoded.length);
+        System.arraycopy(encoded, 0, mBuffer, mLength, encoded.length);
+        mLength += encoded.length;
+        return encoded.length;
+    }
+
+    /**
+     * Writes the contents of the output buffer to out and then empties the buffer. The stream is
+     * not flushed.
+     *
+     * @param out {@link OutputStream} to write the encoded frames to
+     *
+     * @throws IOException If the stream failed to write. The output buffer is emptied regardless.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        final int length = mLength;
+        mLength = 0;
+        if (length > 0) {
+            out.write(mBuffer, 0, length);
+        }
+    }
+
+    /**
+     * Returns the output buffer. Only the first {@link #length()} bytes are valid.
+     *
+     * @return Output buffer
+     */
+    public byte [] getBuffer() {
+        return mBuffer;
+    }
+
+    /**
+     * Returns the number of encoded bytes waiting in the output buffer.
+     *
+     * @return Number of encoded bytes
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * Discards every encoded byte in the output buffer.
+     */
+    public void reset() {
+        mLength = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mBuffer.length) {
+            byte [] grown = new byte[Math.max(capacity, mBuffer.length * 2)];
+            System.arraycopy(mBuffer, 0, grown, 0, mLength);
+            mBuffer = grown;
+        }
+    }
+
+    private static int putEscaped(byte [] buffer, int idx, byte b) {
+        if (b == PacketUtils.DATA_LINK_ESCAPE_BYTE_7D) {
+            buffer[idx++] = PacketUtils.DATA_LINK_ESCAPE_BYTE_7D;
+            buffer[idx++] = PacketUtils.DATA_LINK_ESCAPE_BYTE_5D;
+        }
+        else if (b == PacketUtils.SPP_PACKET_DELIMITER_BYTE) {
+            buffer[idx++] = PacketUtils.DATA_LINK_ESCAPE_BYTE_7D;
+            buffer[idx++] = PacketUtils.DATA_LINK_ESCAPE_BYTE_5F;
+        }
+        else {
+            buffer[idx++] = b;
+        }
+        return idx;
+    }
+}
@@ -3,6 +3,8 @@ package com.esplibrary.packets.request;
 import com.esplibrary.constants.DeviceId;
 import com.esplibrary.constants.PacketId;
 import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.EncodedFrame;
+import com.esplibrary.packets.EncodedFrameCache;
 import com.esplibrary.packets.PacketUtils;
 
 /**
@@ -20,7 +22,7 @@ public abstract class RequestPacket extends ESPPacket {
     }
 
     public RequestPacket(DeviceId v1Type, DeviceId origin, DeviceId dest, @PacketId.PacketID int packetId, byte... payload) {
-        super(v1Type, payload);
+        super();
         init(v1Type, origin, dest, packetId, payload);
     }
 
@@ -34,6 +36,13 @@ public abstract class RequestPacket extends ESPPacket {
      * @param payload
      */
     private void init(DeviceId v1Type, DeviceId origin, DeviceId dest, @PacketId.PacketID int packetId, byte... payload) {
+        // Most requests are sent over and over again so share a pre-encoded frame when possible.
+        EncodedFrame frame = EncodedFrameCache.get(packetId, origin, dest, v1Type, payload);
+        if(frame != null) {
+            setEncodedFrame(frame, v1Type);
+            return;
+        }
+        resetPacket(v1Type, payload);
         byte[] packetData = getPacketData();
         packetData[0] = PacketUtils.ESP_PACKET_SOF;
         packetData[1] = (byte) (dest.toByte() | PacketUtils.DEST_INDENTIFIER_BASE_CONST);
@@ -65,7 +74,6 @@ public abstract class RequestPacket extends ESPPacket {
      * @param payload
      */
     protected void reinitPacket(DeviceId v1Type, DeviceId origin, DeviceId dest, @PacketId.PacketID int packetId, byte... payload) {
-        super.resetPacket(v1Type, payload);
         init(v1Type, origin, dest, packetId, payload);
     }
 
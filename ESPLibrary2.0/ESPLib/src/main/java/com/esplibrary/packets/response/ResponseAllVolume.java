@@ -36,7 +36,10 @@ public class ResponseAllVolume extends ESPPacket {
      */
     public byte[] getAllVolume() {
         if (mVolumeSettings == null) {
-            mVolumeSettings = getPayloadData();
+            mVolumeSettings = new byte[getPayloadLength()];
+            for (int i = 0; i < mVolumeSettings.length; i++) {
+                mVolumeSettings[i] = getPayloadByte(i);
+            }
         }
         return mVolumeSettings;
     }
@@ -46,14 +49,14 @@ public class ResponseAllVolume extends ESPPacket {
      * @return Valentine One's current main volume.
      */
     public byte getCurrentMainVolume() {
-        return getAllVolume()[V1_MAIN_VOLUME_IDX];
+        return getPayloadByte(V1_MAIN_VOLUME_IDX);
     }
     /**
      * The muted volume of the connected Valentine One.
      * @return Valentine One's current muted volume.
      */
     public byte getCurrentMutedVolume() {
-        return getAllVolume()[V1_MUTED_VOLUME_IDX];
+        return getPayloadByte(V1_MUTED_VOLUME_IDX);
     }
 
     /**
@@ -61,13 +64,19 @@ public class ResponseAllVolume extends ESPPacket {
      * @return Valentine One's saved main volume.
      */
     public byte getSavedMainVolume() {
-        return getAllVolume()[V1_SAVED_MAIN_VOLUME_IDX];
+        return getPayloadByte(V1_SAVED_MAIN_VOLUME_IDX);
     }
     /**
      * The muted volume of the connected Valentine One.
      * @return Valentine One's saved muted volume.
      */
     public byte getSavedMutedVolume() {
-        return getAllVolume()[V1_SAVED_MUTED_VOLUME_IDX];
+        return getPayloadByte(V1_SAVED_MUTED_VOLUME_IDX);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        mVolumeSettings = null;
     }
 }
@@ -45,4 +45,10 @@ public class ResponseBatteryVoltage extends ESPPacket {
         }
         return mBatteryVoltage;
     }
+
+    @Override
+    public void reset() {
+        super.reset();
+        mBatteryVoltage = null;
+    }
 }
@@ -35,7 +35,10 @@ public class ResponseCurrentVolume extends ESPPacket {
      */
     public byte[] getCurrentVolume() {
         if (mVolumeSettings == null) {
-            mVolumeSettings = getPayloadData();
+            mVolumeSettings = new byte[getPayloadLength()];
+            for (int i = 0; i < mVolumeSettings.length; i++) {
+                mVolumeSettings[i] = getPayloadByte(i);
+            }
         }
         return mVolumeSettings;
     }
@@ -45,7 +48,7 @@ public class ResponseCurrentVolume extends ESPPacket {
      * @return Valentine One's current main volume.
      */
     public byte getMainVolume() {
-        return getCurrentVolume()[V1_MAIN_VOLUME_IDX];
+        return getPayloadByte(V1_MAIN_VOLUME_IDX);
     }
 
 
@@ -54,6 +57,12 @@ public class ResponseCurrentVolume extends ESPPacket {
      * @return Valentine One's current muted volume.
      */
     public byte getMutedVolume() {
-        return getCurrentVolume()[V1_MUTED_VOLUME_IDX];
+        return getPayloadByte(V1_MUTED_VOLUME_IDX);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        mVolumeSettings = null;
     }
 }
@@ -44,4 +44,10 @@ public class ResponseDefaultSweepDefinition extends ESPPacket {
         }
         return mSweepDef;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void reset() {
+        super.reset();
+        mSweepDef = null;
+    }
+}
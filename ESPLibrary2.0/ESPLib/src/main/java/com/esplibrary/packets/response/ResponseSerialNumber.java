@@ -6,6 +6,7 @@
 package com.esplibrary.packets.response;
 
 import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.PacketUtils;
 
 import java.nio.charset.StandardCharsets;
 
@@ -34,7 +35,6 @@ public class ResponseSerialNumber extends ESPPacket {
      * @return  Returns the originators Serial Number.
      */
     public String getSerialNumber() {
-        byte[] payload = getPayloadData();
-        return new String(payload, StandardCharsets.UTF_8);
+        return new String(getPacketData(), PacketUtils.PAYLOAD_START_IDX, getPayloadLength(), StandardCharsets.UTF_8);
     }
 }
@@ -48,4 +48,9 @@ public class ResponseSweepDefinition extends ESPPacket {
         return mSweepDefinition;
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        mSweepDefinition = null;
+    }
 }
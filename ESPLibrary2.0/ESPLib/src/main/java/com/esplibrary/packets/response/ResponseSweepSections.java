@@ -34,16 +34,17 @@ public class ResponseSweepSections extends ESPPacket {
      * @return All non-zero {@link SweepSection sweep sections}. Contains no null indices
      */
     public SweepSection [] getSweepSections() {
-        byte[] payload = getPayloadData();
-        final int plSize = payload.length;
+        // Parse the sections straight out of the backing array.
+        byte[] packetData = getPacketData();
+        final int plSize = getPayloadLength();
         final int sweepSectionCnt = sectionCountFromPayloadSize(plSize);
 
         int validSections = 0;
         SweepSection [] sectionsTemp = new SweepSection[sweepSectionCnt];
         for (int i = 0; i < sweepSectionCnt; i++) {
             SweepSection section = new SweepSection();
-            int dataOffset = i * 5;
-            section.buildFromBytes(payload, dataOffset);
+            int dataOffset = PacketUtils.PAYLOAD_START_IDX + (i * 5);
+            section.buildFromBytes(packetData, dataOffset);
             if (!section.isZero()) {
                 sectionsTemp[validSections++] = section;
             }
@@ -109,13 +110,6 @@ public class ResponseSweepSections extends ESPPacket {
      * @return Number of contained {@link SweepSection sweep sections}
      */
     public int numberOfContainedSweepSections() {
-        byte[] packetData = getPacketData();
-        int payloadSize = packetData[PacketUtils.PAYLOAD_LEN_IDX];
-        boolean chksum = ESPPacket.isChecksum(getValentineType());
-        // If checksum, subtract one.
-        if (chksum) {
-            payloadSize--;
-        }
-        return sectionCountFromPayloadSize(payloadSize);
+        return sectionCountFromPayloadSize(getPayloadLength());
     }
 }
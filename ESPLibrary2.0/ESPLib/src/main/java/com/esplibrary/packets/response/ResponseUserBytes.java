@@ -64,4 +64,10 @@ public class ResponseUserBytes extends ESPPacket {
         }
         return mUserBytes;
     }
+
+    @Override
+    public void reset() {
+        super.reset();
+        mUserBytes = null;
+    }
 }
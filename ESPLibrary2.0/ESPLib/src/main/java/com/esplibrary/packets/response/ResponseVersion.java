@@ -48,11 +48,11 @@ public class ResponseVersion extends ESPPacket {
              5 ASCII value of the second digit of the revision number.
              6 ASCII value of the Engineering Control Number.
             */
-            byte[] payloadData = getPayloadData();
-            StringBuilder builder = new StringBuilder();
+            final int payloadLength = getPayloadLength();
+            StringBuilder builder = new StringBuilder(payloadLength);
             // Find the version String length.
-            for(int i = 0; i < payloadData.length; i++) {
-                char temp = (char) payloadData[i];
+            for(int i = 0; i < payloadLength; i++) {
+                char temp = (char) getPayloadByte(i);
                 // If we encounter a zero break.
                 if(temp == 0) {
                     break;
@@ -91,4 +91,10 @@ public class ResponseVersion extends ESPPacket {
         }
         return version;
     }
+
+    @Override
+    public void reset() {
+        super.reset();
+        mVersion = null;
+    }
 }
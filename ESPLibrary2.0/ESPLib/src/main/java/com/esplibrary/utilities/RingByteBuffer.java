@@ -0,0 +1,330 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A fixed-capacity circular byte buffer.
+ *
+ * <p>Bytes are produced at the tail and consumed from the head without ever shifting the stored
+ * data, so both operations are O(1) per byte. The backing array never grows; when more data is
+ * written than the buffer can hold the configured {@link OverflowPolicy} is applied.</p>
+ *
+ * <p>This class is not thread-safe, except for {@link #setOverflowPolicy(OverflowPolicy)} which
+ * may be called from any thread.</p>
+ */
+public class RingByteBuffer {
+
+    /**
+     * Determines how a {@link RingByteBuffer} handles a write that exceeds its capacity.
+     */
+    public enum OverflowPolicy {
+        /**
+         * The oldest bytes in the buffer are discarded to make room for the new bytes.
+         */
+        DROP_OLDEST,
+        /**
+         * The new bytes are rejected, leaving the buffer untouched, so the caller can report the
+         * data as malformed.
+         */
+        SIGNAL_MALFORMED,
+    }
+
+    private final byte [] mByteArray;
+    private volatile OverflowPolicy mPolicy;
+    /**
+     * Index of the oldest byte in the buffer.
+     */
+    private int mHead = 0;
+    private int mCount = 0;
+
+    /**
+     * Create a new buffer that can hold capacity bytes.
+     *
+     * @param capacity Maximum number of bytes the buffer can hold
+     * @param policy {@link OverflowPolicy} to apply when the buffer runs out of space
+     */
+    public RingByteBuffer(int capacity, OverflowPolicy policy) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        if(policy == null) {
+            throw new IllegalArgumentException("policy == null");
+        }
+        mByteArray = new byte [capacity];
+        mPolicy = policy;
+    }
+
+    /**
+     * Returns the {@link OverflowPolicy} used by this buffer.
+     *
+     * @return Overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return mPolicy;
+    }
+
+    /**
+     * Sets the {@link OverflowPolicy} applied to subsequent writes.
+     *
+     * @param policy {@link OverflowPolicy} to apply when the buffer runs out of space
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        if(policy == null) {
+            throw new IllegalArgumentException("policy == null");
+        }
+        mPolicy = policy;
+    }
+
+    /**
+     * Returns the maximum number of bytes this buffer can hold.
+     *
+     * @return Capacity of the buffer
+     */
+    public int capacity() {
+        return mByteArray.length;
+    }
+
+    /**
+     * Returns the number of bytes stored in the buffer.
+     *
+     * @return Number of bytes available for reading
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Returns the number of bytes that can be written before the buffer is full.
+     *
+     * @return Free space in bytes
+     */
+    public int remaining() {
+        return mByteArray.length - mCount;
+    }
+
+    /**
+     * Returns true if the buffer doesn't contain any bytes.
+     *
+     * @return True if empty
+     */
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    /**
+     * Returns true if the buffer can't hold any more bytes.
+     *
+     * @return True if full
+     */
+    public boolean isFull() {
+        return mCount == mByteArray.length;
+    }
+
+    /**
+     * Discards every byte in the buffer.
+     */
+    public void clear() {
+        mHead = 0;
+        mCount = 0;
+    }
+
+    /**
+     * Returns the byte at index without consuming it.
+     *
+     * @param index Offset from the oldest byte in the buffer
+     *
+     * @return The byte at index
+     */
+    public byte get(int index) {
+        if(index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", size is " + mCount);
+        }
+        return mByteArray[physicalIndex(index)];
+    }
+
+    /**
+     * Consumes the oldest byte in the buffer.
+     *
+     * @return The oldest byte as an int in the range 0 to 255, or -1 if the buffer is empty.
+     */
+    public int read() {
+        if(mCount == 0) {
+            return -1;
+        }
+        byte b = mByteArray[mHead];
+        mHead = physicalIndex(1);
+        mCount--;
+        return b & 0xFF;
+    }
+
+    /**
+     * Consumes up to length of the oldest bytes in the buffer and copies them into dest.
+     *
+     * @param dest Destination array
+     * @param offset Start offset in dest
+     * @param length Maximum number of bytes to read
+     *
+     * @return The number of bytes read
+     */
+    public int read(byte [] dest, int offset, int length) {
+        int count = peek(dest, offset, length);
+        skip(count);
+        return count;
+    }
+
+    /**
+     * Copies up to length of the oldest bytes in the buffer into dest without consuming them.
+     *
+     * @param dest Destination array
+     * @param offset Start offset in dest
+     * @param length Maximum number of bytes to copy
+     *
+     * @return The number of bytes copied
+     */
+    public int peek(byte [] dest, int offset, int length) {
+        int count = Math.min(length, mCount);
+        int firstPart = Math.min(count, mByteArray.length - mHead);
+        System.arraycopy(mByteArray, mHead, dest, offset, firstPart);
+        if(firstPart < count) {
+            System.arraycopy(mByteArray, 0, dest, offset + firstPart, count - firstPart);
+        }
+        return count;
+    }
+
+    /**
+     * Discards up to count of the oldest bytes in the buffer.
+     *
+     * @param count Number of bytes to discard
+     *
+     * @return The number of bytes discarded
+     */
+    public int skip(int count) {
+        count = Math.min(Math.max(count, 0), mCount);
+        mHead = physicalIndex(count);
+        mCount -= count;
+        if(mCount == 0) {
+            mHead = 0;
+        }
+        return count;
+    }
+
+    /**
+     * Returns a copy of every byte in the buffer without consuming them.
+     *
+     * @return Byte array containing the buffered data
+     */
+    public byte [] toByteArray() {
+        byte [] copy = new byte [mCount];
+        peek(copy, 0, mCount);
+        return copy;
+    }
+
+    /**
+     * Appends all of the bytes in src to the buffer.
+     *
+     * @param src Source array
+     *
+     * @return True if every byte was stored without triggering the {@link OverflowPolicy}.
+     */
+    public boolean write(byte [] src) {
+        return write(src, 0, src.length);
+    }
+
+    /**
+     * Appends length bytes starting at offset in src to the buffer.
+     *
+     * @param src Source array
+     * @param offset Start offset in src
+     * @param length Number of bytes to write
+     *
+     * @return True if every byte was stored without triggering the {@link OverflowPolicy}.
+     * If false is returned, the oldest bytes were dropped ({@link OverflowPolicy#DROP_OLDEST})
+     * or none of the new bytes were stored ({@link OverflowPolicy#SIGNAL_MALFORMED}).
+     */
+    public boolean write(byte [] src, int offset, int length) {
+        if(length <= 0) {
+            return true;
+        }
+        final int capacity = mByteArray.length;
+        boolean overflowed = length > remaining();
+        if(overflowed) {
+            if(mPolicy == OverflowPolicy.SIGNAL_MALFORMED) {
+                return false;
+            }
+            // Only the newest bytes that fit are relevant.
+            if(length > capacity) {
+                offset += length - capacity;
+                length = capacity;
+            }
+            skip(length - remaining());
+        }
+        int tail = physicalIndex(mCount);
+        int firstPart = Math.min(length, capacity - tail);
+        System.arraycopy(src, offset, mByteArray, tail, firstPart);
+        if(firstPart < length) {
+            System.arraycopy(src, offset + firstPart, mByteArray, 0, length - firstPart);
+        }
+        mCount += length;
+        return !overflowed;
+    }
+
+    /**
+     * Reads the next chunk of data from input directly into the free space of the buffer, avoiding
+     * an intermediate copy.
+     *
+     * <p>If the buffer is full and uses {@link OverflowPolicy#DROP_OLDEST}, the new bytes overwrite
+     * the oldest bytes in place, so only as many bytes are dropped as are read. If it uses
+     * {@link OverflowPolicy#SIGNAL_MALFORMED}, nothing is read and zero is returned.</p>
+     *
+     * @param input Stream to read from
+     *
+     * @return The number of bytes read, or -1 if the end of the stream has been reached.
+     *
+     * @throws IOException If an I/O error occurs
+     */
+    public int readFrom(InputStream input) throws IOException {
+        final int capacity = mByteArray.length;
+        if(isFull()) {
+            if(mPolicy == OverflowPolicy.SIGNAL_MALFORMED) {
+                return 0;
+            }
+            // Read over the oldest bytes, up to the end of the backing array, and then advance the
+            // head past the bytes that were replaced.
+            int readSize = input.read(mByteArray, mHead, capacity - mHead);
+            if(readSize > 0) {
+                mHead = physicalIndex(readSize);
+            }
+            return readSize;
+        }
+        if(mCount == 0) {
+            mHead = 0;
+        }
+        int tail = physicalIndex(mCount);
+        // Read into the contiguous free region that follows the tail.
+        int contiguous = tail >= mHead ? capacity - tail : mHead - tail;
+        int readSize = input.read(mByteArray, tail, contiguous);
+        if(readSize > 0) {
+            mCount += readSize;
+        }
+        return readSize;
+    }
+
+    /**
+     * Converts an offset from the head of the buffer into an index in the backing array.
+     *
+     * @param offset Offset from the head
+     *
+     * @return Index into {@link #mByteArray}
+     */
+    private int physicalIndex(int offset) {
+        int index = mHead + offset;
+        final int capacity = mByteArray.length;
+        return index >= capacity ? index - capacity : index;
+    }
+}
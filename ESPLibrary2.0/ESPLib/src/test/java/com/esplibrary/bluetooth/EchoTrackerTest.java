@@ -0,0 +1,127 @@
+package com.esplibrary.bluetooth;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.request.RequestBatteryVoltage;
+import com.esplibrary.packets.request.RequestVersion;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EchoTrackerTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+    private final static DeviceId V1C = DeviceId.V1CONNECTION;
+    private final static int V1_DEST = V1.toByte() & 0x0F;
+    private final static int V1C_DEST = V1C.toByte() & 0x0F;
+    private final static long TIMEOUT = 1000;
+
+    private final EchoTracker mTracker = new EchoTracker();
+
+    private static ESPPacket sent(ESPPacket packet, long transmissionTime) {
+        packet.setTransmissionTime(transmissionTime);
+        return packet;
+    }
+
+    @Test
+    public void add_countsPacketsPerDestination() {
+        assertTrue(mTracker.isEmpty());
+        mTracker.add(sent(new RequestVersion(V1, V1), 0));
+        mTracker.add(sent(new RequestBatteryVoltage(V1), 0));
+        mTracker.add(sent(new RequestVersion(V1, V1C), 0));
+
+        assertFalse(mTracker.isEmpty());
+        assertEquals(2, mTracker.count(V1_DEST));
+        assertEquals(1, mTracker.count(V1C_DEST));
+    }
+
+    @Test
+    public void remove_matchesTheEchoOfAPendingPacket() {
+        mTracker.add(sent(new RequestVersion(V1, V1), 0));
+        mTracker.add(sent(new RequestBatteryVoltage(V1), 0));
+
+        // The echo is an identical packet, not the written instance.
+        assertTrue(mTracker.remove(new RequestVersion(V1, V1)));
+        assertFalse(mTracker.remove(new RequestVersion(V1, V1)));
+        assertEquals(1, mTracker.count(V1_DEST));
+    }
+
+    @Test
+    public void remove_matchesTheBytesAsWrittenAfterThePacketIsReframed() {
+        final ESPPacket packet = new RequestBatteryVoltage(V1);
+        mTracker.add(sent(packet, 0));
+        // Re-framing for another V1 type changes the packet's bytes but not what was written.
+        packet.setV1Type(DeviceId.VALENTINE_ONE_LEGACY);
+
+        assertTrue(mTracker.remove(new RequestBatteryVoltage(V1)));
+        assertTrue(mTracker.isEmpty());
+    }
+
+    @Test
+    public void remove_byPacketIdMatchesSameDestinationAsOrigin() {
+        mTracker.add(sent(new RequestVersion(V1, V1), 0));
+        mTracker.add(sent(new RequestVersion(V1, V1C), 0));
+
+        assertTrue(mTracker.remove(PacketId.REQVERSION, V1C_DEST, true));
+        assertEquals(0, mTracker.count(V1C_DEST));
+        assertFalse(mTracker.remove(PacketId.REQVERSION, V1_DEST, true));
+        assertTrue(mTracker.remove(PacketId.REQVERSION, V1_DEST, false));
+        assertTrue(mTracker.isEmpty());
+    }
+
+    @Test
+    public void removeAnyDestination_fallsBackToOtherDestinations() {
+        mTracker.add(sent(new RequestVersion(V1, V1C), 0));
+
+        assertTrue(mTracker.removeAnyDestination(PacketId.REQVERSION, V1_DEST));
+        assertFalse(mTracker.removeAnyDestination(PacketId.REQVERSION, V1_DEST));
+        assertTrue(mTracker.isEmpty());
+    }
+
+    @Test
+    public void removeExpired_onlyRemovesPacketsPastTheirTimeout() {
+        ESPPacket oldest = sent(new RequestVersion(V1, V1), 1000);
+        mTracker.add(oldest);
+        mTracker.add(sent(new RequestBatteryVoltage(V1), 2000));
+        List<ESPPacket> expired = new ArrayList<>();
+
+        assertEquals(1, mTracker.removeExpired(2500, TIMEOUT, false, expired::add));
+        assertEquals(1, expired.size());
+        assertSame(oldest, expired.get(0));
+        assertEquals(1, mTracker.count(V1_DEST));
+        assertEquals(3000, mTracker.nextDeadline(TIMEOUT));
+    }
+
+    @Test
+    public void removeExpired_rearmsPacketsWhileHolding() {
+        ESPPacket packet = sent(new RequestVersion(V1, V1), 1000);
+        mTracker.add(packet);
+
+        assertEquals(0, mTracker.removeExpired(2500, TIMEOUT, true, null));
+        assertEquals(1, mTracker.count(V1_DEST));
+        assertEquals(2500, packet.getTransmissionTime());
+        assertEquals(3500, mTracker.nextDeadline(TIMEOUT));
+    }
+
+    @Test
+    public void nextDeadline_skipsRemovedPackets() {
+        ESPPacket oldest = sent(new RequestVersion(V1, V1), 1000);
+        mTracker.add(oldest);
+        mTracker.add(sent(new RequestBatteryVoltage(V1), 2000));
+        mTracker.remove(oldest);
+
+        assertEquals(3000, mTracker.nextDeadline(TIMEOUT));
+        mTracker.clear();
+        assertEquals(Long.MAX_VALUE, mTracker.nextDeadline(TIMEOUT));
+        assertTrue(mTracker.isEmpty());
+        assertEquals(0, mTracker.count(V1_DEST));
+    }
+}
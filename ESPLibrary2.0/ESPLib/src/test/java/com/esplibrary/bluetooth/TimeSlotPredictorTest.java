@@ -0,0 +1,130 @@
+package com.esplibrary.bluetooth;
+
+import com.esplibrary.constants.PacketId;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TimeSlotPredictorTest {
+
+    private final static long PERIOD = 80_000_000L;
+    private final static long SLOT = PERIOD / TimeSlotPredictor.SLOT_COUNT;
+    private final static int OPEN_SLOT = 5;
+    private final static int PACKET_ID = PacketId.REQWRITEUSERBYTES;
+
+    private final TimeSlotPredictor mPredictor = new TimeSlotPredictor();
+
+    /**
+     * Feeds enough display data for the predictor to lock and returns the arrival time of the
+     * last display data packet.
+     */
+    private long lock() {
+        long nanos = 1_000_000_000L;
+        for (int i = 0; i < 10; i++) {
+            mPredictor.onDisplayData(nanos);
+            nanos += PERIOD;
+        }
+        return nanos - PERIOD;
+    }
+
+    private static int slotAt(long lastDisplay, long nanos) {
+        return (int) (((nanos - lastDisplay) % PERIOD) / SLOT);
+    }
+
+    @Test
+    public void nanosUntilSlot_zeroUntilLocked() {
+        mPredictor.onDisplayData(1_000_000_000L);
+        mPredictor.onDisplayData(1_000_000_000L + PERIOD);
+        assertFalse(mPredictor.isLocked());
+        assertEquals(0, mPredictor.nanosUntilSlot(1_000_000_000L + PERIOD + SLOT));
+    }
+
+    @Test
+    public void onDisplayData_learnsPeriod() {
+        lock();
+        assertTrue(mPredictor.isLocked());
+        assertEquals(PERIOD, mPredictor.getPeriodNanos());
+    }
+
+    @Test
+    public void nanosUntilSlot_triesEverySlotAndConvergesOnTheOpenSlot() {
+        final long lastDisplay = lock();
+        final int [] writes = new int[TimeSlotPredictor.SLOT_COUNT];
+        int lateOpenWrites = 0;
+        long now = lastDisplay + PERIOD;
+        for (int i = 0; i < 200; i++) {
+            now += mPredictor.nanosUntilSlot(now);
+            final int slot = slotAt(lastDisplay, now);
+            writes[slot]++;
+            if (i >= 100 && slot == OPEN_SLOT) {
+                lateOpenWrites++;
+            }
+            mPredictor.onPacketWritten(PACKET_ID, TransmitMode.Predictive, now);
+            // The V1 only processes packets written in the open slot.
+            if (slot != OPEN_SLOT) {
+                mPredictor.onNotProcessed(PACKET_ID);
+            }
+            now += 7_000_000L;
+        }
+        for (int slot = 0; slot < TimeSlotPredictor.SLOT_COUNT; slot++) {
+            assertTrue("Slot " + slot + " was never tried", writes[slot] > 0);
+        }
+        assertTrue("Only " + lateOpenWrites + " of the last 100 writes were in the open slot",
+                lateOpenWrites >= 75);
+    }
+
+    @Test
+    public void nanosUntilSlot_reevaluatesASlotThatLookedBad() {
+        final long lastDisplay = lock();
+        long now = lastDisplay + PERIOD;
+        boolean reopenedSlotChosen = false;
+        for (int i = 0; i < 400; i++) {
+            now += mPredictor.nanosUntilSlot(now);
+            final int slot = slotAt(lastDisplay, now);
+            mPredictor.onPacketWritten(PACKET_ID, TransmitMode.Predictive, now);
+            // Only slot 2 is open at first, then only the open slot.
+            final int open = i < 100 ? 2 : OPEN_SLOT;
+            if (slot != open) {
+                mPredictor.onNotProcessed(PACKET_ID);
+            }
+            else if (i >= 300 && slot == OPEN_SLOT) {
+                reopenedSlotChosen = true;
+            }
+            now += 7_000_000L;
+        }
+        assertTrue(reopenedSlotChosen);
+    }
+
+    @Test
+    public void getNotProcessedRate_isMeasuredPerMode() {
+        final long nanos = lock() + SLOT;
+        mPredictor.onPacketWritten(PACKET_ID, TransmitMode.Immediate, nanos);
+        mPredictor.onPacketWritten(PacketId.REQVERSION, TransmitMode.Immediate, nanos);
+        mPredictor.onPacketWritten(PACKET_ID, TransmitMode.Predictive, nanos);
+        mPredictor.onNotProcessed(PacketId.REQVERSION);
+
+        assertEquals(0.5, mPredictor.getNotProcessedRate(TransmitMode.Immediate), 0);
+        assertEquals(0, mPredictor.getNotProcessedRate(TransmitMode.Predictive), 0);
+    }
+
+    @Test
+    public void onNotProcessed_rejectsEachWriteOnce() {
+        final long nanos = lock() + SLOT;
+        mPredictor.onPacketWritten(PACKET_ID, TransmitMode.Immediate, nanos);
+        mPredictor.onNotProcessed(PACKET_ID);
+        mPredictor.onNotProcessed(PACKET_ID);
+
+        assertEquals(1, mPredictor.getNotProcessedRate(TransmitMode.Immediate), 0);
+    }
+
+    @Test
+    public void reset_forgetsCadence() {
+        lock();
+        mPredictor.reset();
+        assertFalse(mPredictor.isLocked());
+        assertEquals(0, mPredictor.getPeriodNanos());
+    }
+}
@@ -0,0 +1,219 @@
+package com.esplibrary.bluetooth;
+
+import com.esplibrary.client.ESPRequest;
+import com.esplibrary.client.ResponseHandler;
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.PacketFactory;
+import com.esplibrary.packets.request.RequestSerialNumber;
+import com.esplibrary.packets.request.RequestUserBytes;
+import com.esplibrary.packets.request.RequestVersion;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class V1connectionBaseWrapperTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+    private final static DeviceId V1C = DeviceId.V1CONNECTION;
+    private final static long WAIT_MILLIS = 2000;
+
+    /**
+     * Connection that records the packets the writer thread hands it.
+     */
+    private static class RecordingConnection extends V1connectionBaseWrapper {
+        final List<ESPPacket> written = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        boolean batching;
+        int failAfter = Integer.MAX_VALUE;
+        volatile Thread writer;
+
+        RecordingConnection() {
+            super(null, new PacketFactory(), 1000);
+        }
+
+        @Override
+        public ConnectionType getConnectionType() {
+            return ConnectionType.SPP;
+        }
+
+        @Override
+        public void setCanPerformBTWrite(boolean canWrite) {}
+
+        @Override
+        public boolean canPerformBTWrite() {
+            return true;
+        }
+
+        @Override
+        protected boolean write(byte[] data) {
+            return true;
+        }
+
+        @Override
+        protected boolean write(ESPPacket packet) {
+            synchronized (written) {
+                if (written.size() >= failAfter) {
+                    return false;
+                }
+                written.add(packet);
+            }
+            return true;
+        }
+
+        @Override
+        protected boolean supportsWriteBatching() {
+            return batching;
+        }
+
+        @Override
+        protected int write(List<ESPPacket> packets) {
+            synchronized (written) {
+                batchSizes.add(packets.size());
+            }
+            return super.write(packets);
+        }
+
+        @Override
+        protected void signalWriter() {
+            super.signalWriter();
+            LockSupport.unpark(writer);
+        }
+
+        int writtenCount() {
+            synchronized (written) {
+                return written.size();
+            }
+        }
+    }
+
+    private final RecordingConnection mConnection = new RecordingConnection();
+
+    @Before
+    public void setUp() {
+        mConnection.mState.set(V1connectionBaseWrapper.STATE_CONNECTED);
+        mConnection.setValentineType(V1);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        final Thread writer = mConnection.writer;
+        if (writer != null) {
+            writer.interrupt();
+            writer.join(WAIT_MILLIS);
+        }
+    }
+
+    private void startWriter() {
+        mConnection.writer = new Thread(mConnection, "TestWriter");
+        mConnection.writer.start();
+    }
+
+    private ESPRequest add(ESPPacket packet) {
+        ESPRequest request = new ESPRequest(packet, new ResponseHandler<>());
+        mConnection.addRequest(request);
+        return request;
+    }
+
+    private boolean awaitWritten(int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (mConnection.writtenCount() < count) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Test
+    public void setInFlightWindow_rejectsAnEmptyWindow() {
+        assertThrows(IllegalArgumentException.class, () -> mConnection.setInFlightWindow(V1C, 0));
+        mConnection.setInFlightWindow(V1C, 3);
+        assertEquals(3, mConnection.getInFlightWindow(V1C));
+    }
+
+    @Test
+    public void writer_holdsBackRequestsWhileTheInFlightWindowIsFull() throws InterruptedException {
+        mConnection.setInFlightWindow(V1C, 2);
+        add(new RequestVersion(V1, V1C));
+        add(new RequestSerialNumber(V1, V1C));
+        add(new RequestUserBytes(V1, V1C));
+        startWriter();
+
+        assertTrue(awaitWritten(2));
+        Thread.sleep(50);
+        assertEquals(2, mConnection.writtenCount());
+
+        // Receiving the echo of the first packet frees a slot in the window.
+        mConnection.removePacketFormEchoQueue(new RequestVersion(V1, V1C));
+        assertTrue(awaitWritten(3));
+    }
+
+    @Test
+    public void writer_batchesQueuedRequestsInOrder() throws InterruptedException {
+        mConnection.batching = true;
+        mConnection.setWriteBatching(4, 50_000);
+        mConnection.setInFlightWindow(V1C, 8);
+        ESPRequest version = add(new RequestVersion(V1, V1C));
+        ESPRequest serial = add(new RequestSerialNumber(V1, V1C));
+        ESPRequest userBytes = add(new RequestUserBytes(V1, V1C));
+        startWriter();
+
+        assertTrue(awaitWritten(3));
+        assertEquals(Arrays.asList(3), mConnection.batchSizes);
+        assertSame(version.packet, mConnection.written.get(0));
+        assertSame(serial.packet, mConnection.written.get(1));
+        assertSame(userBytes.packet, mConnection.written.get(2));
+    }
+
+    @Test
+    public void write_stopsTheBatchAtTheFirstFailure() {
+        mConnection.failAfter = 1;
+        List<ESPPacket> batch = Arrays.asList(new RequestVersion(V1, V1C),
+                new RequestSerialNumber(V1, V1C), new RequestUserBytes(V1, V1C));
+        assertEquals(1, mConnection.write(batch));
+    }
+
+    @Test
+    public void setWriteBatching_rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> mConnection.setWriteBatching(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> mConnection.setWriteBatching(2, -1));
+    }
+
+    @Test
+    public void removeRequest_removesRequestsThatWereNotSent() {
+        ESPRequest request = add(new RequestVersion(V1, V1C));
+        assertTrue(mConnection.removeRequest(request));
+        assertFalse(mConnection.removeRequest(request));
+    }
+
+    @Test
+    public void removeRequest_dropsARequestTheWriterIsHoldingOnTo() throws InterruptedException {
+        ESPRequest request = add(new RequestVersion(V1, V1C));
+        // The writer has taken the request off the submission queue but not yet placed it.
+        assertSame(request, mConnection.mRequestQueue.pollSubmission());
+        mConnection.removeRequest(request);
+        mConnection.mRequestQueue.submit(request, false);
+
+        add(new RequestSerialNumber(V1, V1C));
+        startWriter();
+        assertTrue(awaitWritten(1));
+        Thread.sleep(50);
+        assertEquals(1, mConnection.writtenCount());
+        assertTrue(mConnection.written.get(0) instanceof RequestSerialNumber);
+    }
+}
@@ -0,0 +1,51 @@
+package com.esplibrary.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BusyPacketIdsTest {
+
+    private final BusyPacketIds mBusy = new BusyPacketIds();
+
+    @Test
+    public void add_marksOnlyThatPacketId() {
+        assertTrue(mBusy.isEmpty());
+        mBusy.add(0x40);
+        assertFalse(mBusy.isEmpty());
+        assertTrue(mBusy.contains(0x40));
+        assertFalse(mBusy.contains(0x3F));
+        assertFalse(mBusy.contains(0x41));
+        assertFalse(mBusy.contains(0x00));
+    }
+
+    @Test
+    public void add_coversEveryWordOfTheSet() {
+        final int [] ids = {0x00, 0x3F, 0x40, 0x7F, 0x80, 0xBF, 0xC0, 0xFF};
+        for (int id : ids) {
+            mBusy.add(id);
+        }
+        for (int id : ids) {
+            assertTrue(mBusy.contains(id));
+        }
+        assertFalse(mBusy.contains(0x01));
+        assertFalse(mBusy.contains(0xFE));
+    }
+
+    @Test
+    public void contains_acceptsSignedPacketIds() {
+        mBusy.add((byte) 0xF0);
+        assertTrue(mBusy.contains(0xF0));
+        assertTrue(mBusy.contains((byte) 0xF0));
+    }
+
+    @Test
+    public void clear_emptiesTheSet() {
+        mBusy.add(0x12);
+        mBusy.add(0x12);
+        mBusy.clear();
+        assertTrue(mBusy.isEmpty());
+        assertFalse(mBusy.contains(0x12));
+    }
+}
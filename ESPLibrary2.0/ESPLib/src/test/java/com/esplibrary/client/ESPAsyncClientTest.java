@@ -0,0 +1,115 @@
+package com.esplibrary.client;
+
+import android.content.ContextWrapper;
+
+import com.esplibrary.bluetooth.IV1connectionWrapper;
+import com.esplibrary.constants.DeviceId;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ESPAsyncClientTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+    private final static long WAIT_MILLIS = 2000;
+
+    /**
+     * Requests queued on the connection, which never sends them.
+     */
+    private final List<ESPRequest> mQueued = new ArrayList<>();
+    private ESPValentineClient mClient;
+
+    @Before
+    public void setUp() {
+        mClient = new ESPValentineClient(new ContextWrapper(null), queueingConnection());
+    }
+
+    private IV1connectionWrapper queueingConnection() {
+        return (IV1connectionWrapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {IV1connectionWrapper.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "addRequest":
+                            synchronized (mQueued) {
+                                mQueued.add((ESPRequest) args[0]);
+                            }
+                            return null;
+                        case "removeRequest":
+                            synchronized (mQueued) {
+                                return mQueued.remove(args[0]);
+                            }
+                        case "getValentineType":
+                            return V1;
+                        default:
+                            // The default value of primitive return types, null otherwise.
+                            final Class<?> type = method.getReturnType();
+                            return type.isPrimitive() && type != void.class
+                                    ? Array.get(Array.newInstance(type, 1), 0) : null;
+                    }
+                });
+    }
+
+    private int queuedCount() {
+        synchronized (mQueued) {
+            return mQueued.size();
+        }
+    }
+
+    private boolean awaitQueued(int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (queuedCount() != count) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Test
+    public void withTimeout_removesTheQueuedRequestOfATimedOutFuture() throws InterruptedException {
+        CompletableFuture<String> version = ESPFutures.withTimeout(mClient.async().version(V1),
+                10, TimeUnit.MILLISECONDS);
+        assertEquals(1, queuedCount());
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> version.get(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        assertTrue(error.getCause() instanceof TimeoutException);
+        assertTrue(awaitQueued(0));
+    }
+
+    @Test
+    public void cancel_removesTheQueuedRequest() throws InterruptedException {
+        CompletableFuture<String> version = mClient.async().version(V1);
+        assertEquals(1, queuedCount());
+
+        version.cancel(false);
+        assertTrue(awaitQueued(0));
+    }
+
+    @Test
+    public void requestFailure_leavesTheQueueToTheLibrary() {
+        CompletableFuture<String> version = mClient.async().version(V1);
+        final ESPRequest request;
+        synchronized (mQueued) {
+            request = mQueued.get(0);
+        }
+        // The library fails a request once it has already dropped it from the queue itself.
+        request.respHandler.failureCallback.onFailure("Request timed out");
+
+        assertTrue(version.isCompletedExceptionally());
+        assertEquals(1, queuedCount());
+    }
+}
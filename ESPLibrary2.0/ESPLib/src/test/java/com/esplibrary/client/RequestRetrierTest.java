@@ -0,0 +1,95 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.request.RequestBatteryVoltage;
+import com.esplibrary.packets.request.RequestFactoryDefault;
+import com.esplibrary.packets.request.RequestVersion;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestRetrierTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+
+    private final List<ESPRequest> mResubmitted = new ArrayList<>();
+    private final List<Long> mDelays = new ArrayList<>();
+    private final RequestRetrier mRetrier = new RequestRetrier((request, delayMillis) -> {
+        mResubmitted.add(request);
+        mDelays.add(delayMillis);
+    });
+
+    @Before
+    public void setUp() {
+        mRetrier.setDefaultPolicy(new RetryPolicy(3, 100, 1000, 0, EnumSet.of(FailureClass.Timeout)));
+    }
+
+    private static ESPRequest send(ESPPacket packet) {
+        ESPRequest request = new ESPRequest(packet, new ResponseHandler<>());
+        request.respHandler.addSentRequest(request);
+        return request;
+    }
+
+    @Test
+    public void retry_resubmitsWithBackoff() {
+        ESPRequest request = send(new RequestVersion(V1, V1));
+        assertTrue(mRetrier.retry(request.respHandler, FailureClass.Timeout));
+        assertEquals(1, mResubmitted.size());
+        assertSame(request, mResubmitted.get(0));
+        assertEquals(100L, mDelays.get(0).longValue());
+
+        request.respHandler.addSentRequest(request);
+        assertTrue(mRetrier.retry(request.respHandler, FailureClass.Timeout));
+        assertEquals(200L, mDelays.get(1).longValue());
+    }
+
+    @Test
+    public void retry_givesUpAfterTheMaximumAttempts() {
+        ESPRequest request = send(new RequestVersion(V1, V1));
+        request.respHandler.addSentRequest(request);
+        request.respHandler.addSentRequest(request);
+        assertEquals(3, request.attempts);
+        assertFalse(mRetrier.retry(request.respHandler, FailureClass.Timeout));
+        assertTrue(mResubmitted.isEmpty());
+    }
+
+    @Test
+    public void retry_ignoresFailuresThePolicyDoesNotRetry() {
+        ESPRequest request = send(new RequestVersion(V1, V1));
+        assertFalse(mRetrier.retry(request.respHandler, FailureClass.WriteFailed));
+        assertFalse(mRetrier.retry(request.respHandler, null));
+        assertTrue(mResubmitted.isEmpty());
+    }
+
+    @Test
+    public void retry_neverRepeatsAFactoryDefault() {
+        ESPRequest request = send(new RequestFactoryDefault(V1, V1));
+        assertFalse(RequestRetrier.isRetryable(request.packet.getPacketID()));
+        assertFalse(mRetrier.retry(request.respHandler, FailureClass.Timeout));
+    }
+
+    @Test
+    public void retry_skipsHandlersOfSeveralRequests() {
+        ESPRequest request = send(new RequestVersion(V1, V1));
+        request.respHandler.addSentRequest(new ESPRequest(new RequestBatteryVoltage(V1), request.respHandler));
+        assertFalse(mRetrier.retry(request.respHandler, FailureClass.Timeout));
+    }
+
+    @Test
+    public void getPolicy_prefersThePacketPolicy() {
+        ESPRequest request = send(new RequestVersion(V1, V1));
+        mRetrier.setPolicy(request.packet.getPacketID(), RetryPolicy.NONE);
+        assertSame(RetryPolicy.NONE, mRetrier.getPolicy(request.packet.getPacketID()));
+        assertFalse(mRetrier.retry(request.respHandler, FailureClass.Timeout));
+    }
+}
@@ -0,0 +1,153 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.ESPPacket;
+import com.esplibrary.packets.request.RequestAllSweepDefinitions;
+import com.esplibrary.packets.request.RequestChangeMode;
+import com.esplibrary.packets.request.RequestFactoryDefault;
+import com.esplibrary.packets.request.RequestMuteOn;
+import com.esplibrary.packets.request.RequestStartAlertData;
+import com.esplibrary.packets.request.RequestStopAlertData;
+import com.esplibrary.packets.request.RequestVersion;
+import com.esplibrary.packets.request.RequestWriteUserBytes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RequestSchedulerTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+
+    private final RequestScheduler mScheduler = new RequestScheduler();
+
+    private static ESPRequest request(ESPPacket packet) {
+        return new ESPRequest(packet, new ResponseHandler<>());
+    }
+
+    private ESPRequest add(ESPPacket packet) {
+        ESPRequest request = request(packet);
+        mScheduler.add(request, false);
+        return request;
+    }
+
+    @Test
+    public void poll_servesLanesInPriorityOrder() {
+        ESPRequest bulk = add(new RequestAllSweepDefinitions(V1));
+        ESPRequest interactive = add(new RequestChangeMode(V1, (byte) 1));
+        ESPRequest safety = add(new RequestMuteOn(V1));
+        assertEquals(3, mScheduler.size());
+        assertSame(safety, mScheduler.poll());
+        assertSame(interactive, mScheduler.poll());
+        assertSame(bulk, mScheduler.poll());
+        assertNull(mScheduler.poll());
+        assertTrue(mScheduler.isEmpty());
+    }
+
+    @Test
+    public void poll_keepsTheOrderOfStateChangesToTheSameState() {
+        ESPRequest start = add(new RequestStartAlertData(V1));
+        ESPRequest stop = add(new RequestStopAlertData(V1));
+        assertSame(start, mScheduler.poll());
+        assertSame(stop, mScheduler.poll());
+
+        ESPRequest write = add(new RequestWriteUserBytes(V1, new byte[6]));
+        ESPRequest factoryDefault = add(new RequestFactoryDefault(V1, V1));
+        assertSame(write, mScheduler.poll());
+        assertSame(factoryDefault, mScheduler.poll());
+    }
+
+    @Test
+    public void poll_servesAgedRequestsAheadOfInteractiveButNotSafety() {
+        ESPRequest bulk = add(new RequestAllSweepDefinitions(V1));
+        bulk.queuedTime -= RequestScheduler.Lane.BULK.agingMillis;
+        ESPRequest interactive = add(new RequestChangeMode(V1, (byte) 1));
+        ESPRequest safety = add(new RequestMuteOn(V1));
+        assertSame(safety, mScheduler.poll());
+        assertSame(bulk, mScheduler.poll());
+        assertSame(interactive, mScheduler.poll());
+    }
+
+    @Test
+    public void poll_servesDestinationsRoundRobin() {
+        ESPRequest v1First = add(new RequestVersion(V1, V1));
+        ESPRequest v1Second = add(new RequestVersion(V1, V1));
+        ESPRequest savvyFirst = add(new RequestVersion(V1, DeviceId.SAVVY));
+        ESPRequest savvySecond = add(new RequestVersion(V1, DeviceId.SAVVY));
+        assertSame(savvyFirst, mScheduler.poll());
+        assertSame(v1First, mScheduler.poll());
+        assertSame(savvySecond, mScheduler.poll());
+        assertSame(v1Second, mScheduler.poll());
+    }
+
+    @Test
+    public void poll_skipsDestinationsThatAreNotReady() {
+        ESPRequest v1 = add(new RequestVersion(V1, V1));
+        ESPRequest savvy = add(new RequestVersion(V1, DeviceId.SAVVY));
+        final int v1Id = V1.toByte() & 0x0F;
+        assertSame(v1, mScheduler.poll(dest -> dest == v1Id));
+        assertNull(mScheduler.poll(dest -> dest == v1Id));
+        assertSame(savvy, mScheduler.poll());
+    }
+
+    @Test
+    public void add_nextToSendGoesToTheFrontOfItsLane() {
+        ESPRequest queued = add(new RequestVersion(V1, V1));
+        ESPRequest next = request(new RequestChangeMode(V1, (byte) 1));
+        mScheduler.add(next, true);
+        assertSame(next, mScheduler.poll());
+        assertSame(queued, mScheduler.poll());
+    }
+
+    @Test
+    public void releaseDeferred_requeuesAheadInDeferralOrder() {
+        ESPRequest queued = add(new RequestVersion(V1, V1));
+        ESPRequest first = request(new RequestChangeMode(V1, (byte) 1));
+        ESPRequest second = request(new RequestChangeMode(V1, (byte) 2));
+        mScheduler.defer(first);
+        mScheduler.defer(second);
+        assertEquals(2, mScheduler.deferredCount());
+        assertEquals(1, mScheduler.size());
+        assertSame(queued, mScheduler.poll());
+        assertNull(mScheduler.poll());
+
+        add(new RequestVersion(V1, V1));
+        assertEquals(2, mScheduler.releaseDeferred());
+        assertSame(first, mScheduler.poll());
+        assertSame(second, mScheduler.poll());
+    }
+
+    @Test
+    public void submissions_areQueuedWhenAdded() {
+        ESPRequest request = request(new RequestChangeMode(V1, (byte) 1));
+        mScheduler.submit(request, false);
+        assertTrue(mScheduler.isEmpty());
+        ESPRequest submitted = mScheduler.pollSubmission();
+        assertSame(request, submitted);
+        assertTrue(mScheduler.addSubmission(submitted));
+        assertSame(request, mScheduler.poll());
+    }
+
+    @Test
+    public void removeAndRemoveIf_coverQueuedSubmittedAndDeferredRequests() {
+        ESPRequest queued = add(new RequestVersion(V1, V1));
+        ESPRequest other = add(new RequestChangeMode(V1, (byte) 1));
+        ESPRequest deferred = request(new RequestVersion(V1, DeviceId.SAVVY));
+        mScheduler.defer(deferred);
+        ESPRequest submitted = request(new RequestVersion(V1, V1));
+        mScheduler.submit(submitted, false);
+
+        assertTrue(mScheduler.remove(other));
+        assertEquals(1, mScheduler.size());
+        assertEquals(3, mScheduler.removeIf(r -> r.packet.getPacketID() == PacketId.REQVERSION));
+        assertTrue(mScheduler.isEmpty());
+        assertEquals(0, mScheduler.deferredCount());
+        assertNull(mScheduler.pollSubmission());
+        assertFalse(mScheduler.remove(queued));
+    }
+}
@@ -0,0 +1,79 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.response.ResponseVersion;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseHandlerTest {
+
+    private final ArrayDeque<Runnable> mLeaderCallbacks = new ArrayDeque<>();
+    private final ArrayDeque<Runnable> mFollowerCallbacks = new ArrayDeque<>();
+    private final List<String> mCalls = new ArrayList<>();
+
+    private static ResponseHandler<ResponseVersion> handler() {
+        ResponseHandler<ResponseVersion> handler = new ResponseHandler<>();
+        handler.addResponseID(PacketId.RESPVERSION);
+        return handler;
+    }
+
+    private static void run(ArrayDeque<Runnable> callbacks) {
+        Runnable callback;
+        while ((callback = callbacks.poll()) != null) {
+            callback.run();
+        }
+    }
+
+    @Test
+    public void coalesce_runsFollowerCallbacksOnTheFollowersExecutor() {
+        ResponseHandler<ResponseVersion> leader = handler();
+        leader.callbackExecutor = mLeaderCallbacks::add;
+        leader.successCallback = packet -> mCalls.add("leader");
+        ResponseHandler<ResponseVersion> follower = handler();
+        follower.callbackExecutor = mFollowerCallbacks::add;
+        follower.successCallback = packet -> mCalls.add("follower");
+        follower.failureCallback = error -> mCalls.add("follower " + error);
+        assertTrue(leader.coalesce(follower));
+
+        // The leader's callbacks run on the leader's executor.
+        leader.successCallback.onPacketReceived(null);
+        assertEquals(1, mCalls.size());
+        assertEquals(1, mFollowerCallbacks.size());
+        run(mFollowerCallbacks);
+        assertEquals("follower", mCalls.get(1));
+
+        leader.failureCallback.onFailure("timeout", 1);
+        assertEquals(2, mCalls.size());
+        run(mFollowerCallbacks);
+        assertEquals("follower timeout", mCalls.get(2));
+    }
+
+    @Test
+    public void coalesce_runsFollowerCallbacksInlineOnTheSameExecutor() {
+        ResponseHandler<ResponseVersion> leader = handler();
+        leader.callbackExecutor = mLeaderCallbacks::add;
+        ResponseHandler<ResponseVersion> follower = handler();
+        follower.callbackExecutor = leader.callbackExecutor;
+        follower.successCallback = packet -> mCalls.add("follower");
+        assertTrue(leader.coalesce(follower));
+
+        leader.successCallback.onPacketReceived(null);
+        assertEquals(1, mCalls.size());
+        assertTrue(mFollowerCallbacks.isEmpty());
+    }
+
+    @Test
+    public void coalesce_refusesAFollowerThatUsesTheProcessorsExecutor() {
+        ResponseHandler<ResponseVersion> leader = handler();
+        leader.callbackExecutor = mLeaderCallbacks::add;
+        assertFalse(leader.coalesce(handler()));
+    }
+}
@@ -0,0 +1,130 @@
+package com.esplibrary.client;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.request.RequestVersion;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseProcessorTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+
+    private final ArrayDeque<Runnable> mCallbacks = new ArrayDeque<>();
+    private final List<ESPRequest> mResubmitted = new ArrayList<>();
+    private final List<String> mFailures = new ArrayList<>();
+    private final ResponseProcessor mProcessor = new ResponseProcessor(1000);
+
+    @Before
+    public void setUp() {
+        mProcessor.setCallbackExecutor(mCallbacks::add);
+        RequestRetrier retrier = new RequestRetrier((request, delayMillis) -> mResubmitted.add(request));
+        retrier.setDefaultPolicy(new RetryPolicy(3, 0, 0, 0, EnumSet.of(FailureClass.Timeout)));
+        mProcessor.setRetrier(retrier);
+    }
+
+    private ResponseHandler<?> sent() {
+        ResponseHandler<?> handler = new ResponseHandler<>();
+        handler.failureCallback = mFailures::add;
+        ESPRequest request = new ESPRequest(new RequestVersion(V1, V1), handler);
+        handler.addSentRequest(request);
+        mProcessor.addResponse(handler);
+        return handler;
+    }
+
+    private void runCallbacks() {
+        Runnable callback;
+        while ((callback = mCallbacks.poll()) != null) {
+            callback.run();
+        }
+    }
+
+    @Test
+    public void onRequestFailed_retriesBeforeFailing() {
+        ResponseHandler<?> handler = sent();
+        mProcessor.onRequestFailed(handler, FailureClass.Timeout, "timeout");
+        runCallbacks();
+        assertEquals(1, mResubmitted.size());
+        assertTrue(mFailures.isEmpty());
+    }
+
+    @Test
+    public void onRequestFailed_doesNotRetryACompleteHandler() {
+        ResponseHandler<?> handler = sent();
+        // The response was received before the failure.
+        assertTrue(handler.complete());
+        mProcessor.onRequestFailed(handler, FailureClass.Timeout, "timeout");
+        runCallbacks();
+        assertTrue(mResubmitted.isEmpty());
+        assertTrue(mFailures.isEmpty());
+    }
+
+    @Test
+    public void onRequestFailed_retriesOnlyOnceForConcurrentFailures() {
+        ResponseHandler<?> handler = sent();
+        mProcessor.onRequestFailed(handler, FailureClass.Timeout, "timeout");
+        mProcessor.onRequestFailed(handler, FailureClass.Timeout, "timeout");
+        runCallbacks();
+        assertEquals(1, mResubmitted.size());
+        assertTrue(mFailures.isEmpty());
+    }
+
+    @Test
+    public void onRequestFailed_failsWithoutARetryableFailure() {
+        ResponseHandler<?> handler = sent();
+        mProcessor.onRequestFailed(handler, null, "disconnected");
+        runCallbacks();
+        assertTrue(mResubmitted.isEmpty());
+        assertEquals(1, mFailures.size());
+        assertEquals("disconnected", mFailures.get(0));
+    }
+
+    @Test
+    public void dispatchKey_keepsDevicesSharingALowNibbleApart() {
+        final int packetId = PacketId.RESPVERSION;
+        assertNotEquals(ResponseProcessor.dispatchKey(packetId, DeviceId.VALENTINE_ONE_LEGACY.toByte()),
+                ResponseProcessor.dispatchKey(packetId, DeviceId.GENERAL_BROADCAST.toByte()));
+        assertNotEquals(ResponseProcessor.dispatchKey(PacketId.REQVERSION, V1.toByte()),
+                ResponseProcessor.dispatchKey(packetId, V1.toByte()));
+    }
+
+    @Test
+    public void onRequestFailed_isDroppedOnceTheResponseWasDelivered() {
+        ResponseHandler<?> handler = sent();
+        final boolean [] delivered = new boolean[1];
+        handler.successCallback = packet -> {
+            // The request expires while the callback is running.
+            mProcessor.onRequestFailed(handler, FailureClass.Timeout, "timeout");
+            delivered[0] = true;
+            return true;
+        };
+        mProcessor.onPacketReceivedBlocking(new RequestVersion(V1, V1), new BusyPacketIds());
+        runCallbacks();
+        assertTrue(delivered[0]);
+        assertTrue(mResubmitted.isEmpty());
+        assertTrue(mFailures.isEmpty());
+    }
+
+    @Test
+    public void deliver_isDroppedOnceTheHandlerFailed() {
+        ResponseHandler<?> handler = sent();
+        final boolean [] delivered = new boolean[1];
+        handler.successCallback = packet -> delivered[0] = true;
+        mProcessor.onRequestFailed(handler, null, "timeout");
+        mProcessor.onPacketReceivedBlocking(new RequestVersion(V1, V1), new BusyPacketIds());
+        runCallbacks();
+        assertFalse(delivered[0]);
+        assertEquals(1, mFailures.size());
+    }
+}
@@ -0,0 +1,70 @@
+package com.esplibrary.client;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    private static RetryPolicy noJitter(int maxAttempts, long initial, long max) {
+        return new RetryPolicy(maxAttempts, initial, max, 0,
+                EnumSet.of(FailureClass.Timeout, FailureClass.WriteFailed));
+    }
+
+    @Test
+    public void getBackoff_doublesUpToTheMaximum() {
+        RetryPolicy policy = noJitter(10, 100, 1000);
+        assertEquals(100, policy.getBackoff(1));
+        assertEquals(200, policy.getBackoff(2));
+        assertEquals(400, policy.getBackoff(3));
+        assertEquals(800, policy.getBackoff(4));
+        assertEquals(1000, policy.getBackoff(5));
+        assertEquals(1000, policy.getBackoff(64));
+    }
+
+    @Test
+    public void getBackoff_saturatesInsteadOfOverflowing() {
+        RetryPolicy policy = noJitter(10, 1, Long.MAX_VALUE);
+        assertEquals(1L << 30, policy.getBackoff(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void getBackoff_jitterOnlyShortensTheDelay() {
+        RetryPolicy policy = RetryPolicy.exponential(5, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            final long backoff = policy.getBackoff(2);
+            assertTrue(backoff > 100 && backoff <= 200);
+        }
+    }
+
+    @Test
+    public void shouldRetry_stopsAtTheMaximumAttempts() {
+        RetryPolicy policy = noJitter(3, 0, 0);
+        assertTrue(policy.shouldRetry(FailureClass.Timeout, 1));
+        assertTrue(policy.shouldRetry(FailureClass.Timeout, 2));
+        assertFalse(policy.shouldRetry(FailureClass.Timeout, 3));
+    }
+
+    @Test
+    public void shouldRetry_onlyRetriesTheListedFailures() {
+        RetryPolicy policy = noJitter(3, 0, 0);
+        assertTrue(policy.shouldRetry(FailureClass.WriteFailed, 1));
+        assertFalse(policy.shouldRetry(FailureClass.NotProcessed, 1));
+        assertFalse(policy.shouldRetry(null, 1));
+        assertFalse(RetryPolicy.NONE.shouldRetry(FailureClass.Timeout, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroAttempts() {
+        noJitter(0, 0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsAnInvertedBackoffRange() {
+        noJitter(1, 200, 100);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.request.RequestBatteryVoltage;
+import com.esplibrary.packets.request.RequestVersion;
+import com.esplibrary.utilities.RingByteBuffer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LEFrameDecoderTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+
+    private final LEFrameDecoder mDecoder = new LEFrameDecoder(new PacketFactory());
+    private final RingByteBuffer mBuffer = new RingByteBuffer(256, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+    private final List<ESPPacket> mPackets = new ArrayList<>();
+
+    private void receive(byte [] data, int offset, int length) {
+        mBuffer.write(data, offset, length);
+        mDecoder.decodeAll(mBuffer, () -> V1, mPackets::add);
+    }
+
+    private void receive(byte [] data) {
+        receive(data, 0, data.length);
+    }
+
+    private static byte [] concat(byte [] first, byte [] second) {
+        byte [] data = new byte[first.length + second.length];
+        System.arraycopy(first, 0, data, 0, first.length);
+        System.arraycopy(second, 0, data, first.length, second.length);
+        return data;
+    }
+
+    @Test
+    public void decodeAll_reassemblesFrameSplitAcrossNotifications() {
+        byte [] frame = new RequestVersion(V1, V1).getPacketData();
+        receive(frame, 0, 3);
+        assertTrue(mPackets.isEmpty());
+        receive(frame, 3, frame.length - 3);
+        assertEquals(1, mPackets.size());
+        assertEquals(PacketId.REQVERSION, mPackets.get(0).getPacketID());
+        assertArrayEquals(frame, mPackets.get(0).getPacketData());
+        assertTrue(mBuffer.isEmpty());
+        assertFalse(mDecoder.hasDiscardedData());
+    }
+
+    @Test
+    public void decodeAll_decodesFramesPackedIntoOneNotification() {
+        receive(concat(new RequestVersion(V1, V1).getPacketData(), new RequestBatteryVoltage(V1).getPacketData()));
+        assertEquals(2, mPackets.size());
+        assertEquals(PacketId.REQVERSION, mPackets.get(0).getPacketID());
+        assertEquals(PacketId.REQBATTERYVOLTAGE, mPackets.get(1).getPacketID());
+    }
+
+    @Test
+    public void decodeAll_resynchronizesAfterCorruptData() {
+        byte [] garbage = new byte [] {0x01, PacketUtils.ESP_PACKET_SOF, (byte) 0xD1, (byte) 0xEA, 0x01, 0x01, 0x00, 0x00};
+        receive(concat(garbage, new RequestVersion(V1, V1).getPacketData()));
+        assertEquals(1, mPackets.size());
+        assertEquals(PacketId.REQVERSION, mPackets.get(0).getPacketID());
+        assertTrue(mDecoder.hasDiscardedData());
+    }
+
+    @Test
+    public void decodeAll_doesNotWaitOnAnImpossibleLength() {
+        // A stray start of frame byte followed by a plausible header and a length byte that is
+        // longer than any ESP frame.
+        byte [] stray = new byte [] {PacketUtils.ESP_PACKET_SOF, (byte) 0xD1, (byte) 0xEA, 0x01, (byte) 0xF0};
+        receive(concat(stray, new RequestBatteryVoltage(V1).getPacketData()));
+        assertEquals(1, mPackets.size());
+        assertEquals(PacketId.REQBATTERYVOLTAGE, mPackets.get(0).getPacketID());
+        assertArrayEquals(stray, mDecoder.takeDiscardedData());
+    }
+
+    @Test
+    public void decodeAll_longDecoderAcceptsPayloadsLongerThanPLMax() {
+        // A frame from a V1 without checksums carrying a 32 byte payload.
+        byte [] frame = new byte[32 + 6];
+        frame[0] = PacketUtils.ESP_PACKET_SOF;
+        frame[1] = (byte) 0xD6;
+        frame[2] = (byte) 0xE9;
+        frame[3] = (byte) 0xF0;
+        frame[4] = 32;
+        frame[frame.length - 1] = PacketUtils.ESP_PACKET_EOF;
+
+        LEFrameDecoder longDecoder = new LEFrameDecoder(new PacketFactory(), LEFrameDecoder.MAX_LONG_PAYLOAD_LENGTH);
+        mBuffer.write(frame);
+        longDecoder.decodeAll(mBuffer, () -> V1, mPackets::add);
+        assertEquals(1, mPackets.size());
+        assertArrayEquals(frame, mPackets.get(0).getPacketData());
+        assertFalse(longDecoder.hasDiscardedData());
+
+        // The short characteristic never carries a frame this long.
+        mPackets.clear();
+        receive(frame);
+        assertTrue(mPackets.isEmpty());
+        assertTrue(mDecoder.hasDiscardedData());
+    }
+
+    @Test
+    public void decodeAll_skipsFramesRejectedByTheFilter() {
+        mDecoder.setPacketFilter((destination, origin, packetId) -> packetId != PacketId.REQVERSION);
+        receive(concat(new RequestVersion(V1, V1).getPacketData(), new RequestBatteryVoltage(V1).getPacketData()));
+        assertEquals(1, mPackets.size());
+        assertEquals(PacketId.REQBATTERYVOLTAGE, mPackets.get(0).getPacketID());
+        assertFalse(mDecoder.hasDiscardedData());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.response.ResponseVersion;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PacketFactoryTest {
+
+    /**
+     * Packet ID that isn't modeled by the library.
+     */
+    private final static int ACCESSORY_PACKET_ID = 0xF0;
+
+    private static class AccessoryPacket extends ESPPacket {
+        AccessoryPacket(int packetLength) {
+            super(packetLength);
+        }
+    }
+
+    private static class OtherAccessoryPacket extends ESPPacket {
+        OtherAccessoryPacket(int packetLength) {
+            super(packetLength);
+        }
+    }
+
+    @Test
+    public void getPacketForId_constructsModeledAndUnknownPackets() {
+        PacketFactory factory = new PacketFactory();
+        ESPPacket packet = factory.getPacketForId(PacketId.RESPVERSION, 14);
+        assertTrue(packet instanceof ResponseVersion);
+        assertEquals(14, packet.getPacketData().length);
+        assertTrue(factory.getPacketForId(ACCESSORY_PACKET_ID, 8) instanceof UnknownPacket);
+    }
+
+    @Test
+    public void registerPacket_replacesAndRestoresType() {
+        PacketFactory factory = new PacketFactory();
+        factory.registerPacket(ACCESSORY_PACKET_ID, AccessoryPacket::new);
+        assertTrue(factory.getPacketForId(ACCESSORY_PACKET_ID, 8) instanceof AccessoryPacket);
+
+        factory.unregisterPacket(ACCESSORY_PACKET_ID);
+        assertTrue(factory.getPacketForId(ACCESSORY_PACKET_ID, 8) instanceof UnknownPacket);
+    }
+
+    @Test
+    public void registerPacket_doesNotAffectOtherFactories() {
+        PacketFactory factory = new PacketFactory();
+        factory.registerPacket(ACCESSORY_PACKET_ID, AccessoryPacket::new);
+        assertTrue(new PacketFactory().getPacketForId(ACCESSORY_PACKET_ID, 8) instanceof UnknownPacket);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registerPacket_rejectsInvalidPacketId() {
+        new PacketFactory().registerPacket(256, AccessoryPacket::new);
+    }
+
+    @Test
+    public void release_recyclesPooledPackets() {
+        PacketFactory factory = new PacketFactory(2);
+        ESPPacket packet = factory.getPacketForId(PacketId.RESPVERSION, 14);
+        assertTrue(packet.isPooled());
+        packet.release();
+        assertSame(packet, factory.getPacketForId(PacketId.RESPVERSION, 14));
+    }
+
+    @Test
+    public void release_keepsPacketWhileRetained() {
+        PacketFactory factory = new PacketFactory(2);
+        ESPPacket packet = factory.getPacketForId(PacketId.RESPVERSION, 14);
+        packet.retain();
+        packet.release();
+        assertNotSame(packet, factory.getPacketForId(PacketId.RESPVERSION, 14));
+    }
+
+    @Test
+    public void release_dropsPacketsOfReplacedType() {
+        PacketFactory factory = new PacketFactory(2);
+        factory.registerPacket(ACCESSORY_PACKET_ID, AccessoryPacket::new);
+        ESPPacket outstanding = factory.getPacketForId(ACCESSORY_PACKET_ID, 8);
+
+        // The packet is released after a different type has been registered for its packet ID.
+        factory.registerPacket(ACCESSORY_PACKET_ID, OtherAccessoryPacket::new);
+        outstanding.release();
+
+        ESPPacket packet = factory.getPacketForId(ACCESSORY_PACKET_ID, 8);
+        assertTrue(packet instanceof OtherAccessoryPacket);
+        packet.release();
+        assertSame(packet, factory.getPacketForId(ACCESSORY_PACKET_ID, 8));
+    }
+}
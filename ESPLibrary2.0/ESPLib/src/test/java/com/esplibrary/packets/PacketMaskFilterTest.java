@@ -0,0 +1,54 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.PacketId;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PacketMaskFilterTest {
+
+    private static byte dest(DeviceId device) {
+        return (byte) (PacketUtils.DEST_INDENTIFIER_BASE_CONST | device.toByte());
+    }
+
+    private static byte orig(DeviceId device) {
+        return (byte) (PacketUtils.ORIG_INDENTIFIER_BASE_CONST | device.toByte());
+    }
+
+    @Test
+    public void accept_requiresAnAcceptedDestination() {
+        PacketMaskFilter filter = new PacketMaskFilter();
+        assertFalse(filter.accept(dest(DeviceId.THIRD_PARTY_1), orig(DeviceId.VALENTINE_ONE), PacketId.RESPVERSION));
+        filter.acceptDestination(DeviceId.THIRD_PARTY_1);
+        assertTrue(filter.accept(dest(DeviceId.THIRD_PARTY_1), orig(DeviceId.VALENTINE_ONE), PacketId.RESPVERSION));
+        filter.rejectDestination(DeviceId.THIRD_PARTY_1);
+        assertFalse(filter.accept(dest(DeviceId.THIRD_PARTY_1), orig(DeviceId.VALENTINE_ONE), PacketId.RESPVERSION));
+    }
+
+    @Test
+    public void accept_filtersOriginsAndPacketIds() {
+        PacketMaskFilter filter = new PacketMaskFilter().acceptDestination(DeviceId.GENERAL_BROADCAST);
+        filter.rejectOrigin(DeviceId.SAVVY);
+        filter.rejectPacketId(0xF0);
+        final byte broadcast = dest(DeviceId.GENERAL_BROADCAST);
+        assertFalse(filter.accept(broadcast, orig(DeviceId.SAVVY), PacketId.RESPSAVVYSTATUS));
+        assertFalse(filter.accept(broadcast, orig(DeviceId.VALENTINE_ONE), 0xF0));
+        assertTrue(filter.accept(broadcast, orig(DeviceId.VALENTINE_ONE), 0xEF));
+
+        filter.acceptPacketId(0xF0);
+        assertTrue(filter.accept(broadcast, orig(DeviceId.VALENTINE_ONE), 0xF0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void acceptPacketId_rejectsInvalidPacketId() {
+        new PacketMaskFilter().acceptPacketId(256);
+    }
+}
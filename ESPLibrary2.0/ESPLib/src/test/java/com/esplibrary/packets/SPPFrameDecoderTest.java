@@ -0,0 +1,115 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.constants.PacketId;
+import com.esplibrary.packets.request.RequestBatteryVoltage;
+import com.esplibrary.packets.request.RequestVersion;
+import com.esplibrary.utilities.RingByteBuffer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SPPFrameDecoderTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+
+    private final SPPFrameDecoder mDecoder = new SPPFrameDecoder(new PacketFactory());
+    private final List<ESPPacket> mPackets = new ArrayList<>();
+
+    private static byte [] spp(byte [] ... frames) {
+        SPPFrameEncoder encoder = new SPPFrameEncoder();
+        for (byte [] frame : frames) {
+            encoder.encode(frame);
+        }
+        byte [] data = new byte[encoder.length()];
+        System.arraycopy(encoder.getBuffer(), 0, data, 0, data.length);
+        return data;
+    }
+
+    /**
+     * Returns a battery voltage response sent by a V1 that uses checksums.
+     */
+    private static byte [] batteryVoltageFromV1() {
+        byte [] frame = new byte [] {PacketUtils.ESP_PACKET_SOF,
+                (byte) (PacketUtils.DEST_INDENTIFIER_BASE_CONST | DeviceId.V1CONNECTION.toByte()),
+                (byte) (PacketUtils.ORIG_INDENTIFIER_BASE_CONST | V1.toByte()),
+                (byte) PacketId.RESPBATTERYVOLTAGE, 0x03, 0x0C, 0x1E, 0x00, PacketUtils.ESP_PACKET_EOF};
+        frame[frame.length - 2] = PacketUtils.calculateChecksumFor(frame, frame.length - 2);
+        return frame;
+    }
+
+    @Test
+    public void decodeAll_decodesEveryFrameInAChunk() {
+        byte [] first = new RequestVersion(V1, V1).getPacketData();
+        byte [] second = new RequestBatteryVoltage(V1).getPacketData();
+        mDecoder.decodeAll(spp(first, second), 0, spp(first, second).length, () -> V1, mPackets::add);
+        assertEquals(2, mPackets.size());
+        assertArrayEquals(first, mPackets.get(0).getPacketData());
+        assertArrayEquals(second, mPackets.get(1).getPacketData());
+    }
+
+    @Test
+    public void decodeAll_retainsPartialFrameBetweenChunks() {
+        byte [] frame = new RequestVersion(V1, V1).getPacketData();
+        byte [] data = spp(frame);
+        mDecoder.decodeAll(data, 0, 4, () -> V1, mPackets::add);
+        assertTrue(mPackets.isEmpty());
+        mDecoder.decodeAll(data, 4, data.length - 4, () -> V1, mPackets::add);
+        assertEquals(1, mPackets.size());
+        assertArrayEquals(frame, mPackets.get(0).getPacketData());
+    }
+
+    @Test
+    public void decodeAll_queriesTheV1TypeForEveryFrame() {
+        // Until the V1 type is known, frames that weren't sent by a V1 are rejected. The first
+        // frame reveals the V1 type, so the second frame in the same chunk must be accepted.
+        final DeviceId [] v1Type = {DeviceId.UNKNOWN_DEVICE};
+        RingByteBuffer buffer = new RingByteBuffer(128, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        buffer.write(spp(batteryVoltageFromV1(), new RequestVersion(V1, V1).getPacketData()));
+        mDecoder.decodeAll(buffer, () -> v1Type[0], packet -> {
+            mPackets.add(packet);
+            v1Type[0] = packet.getValentineType();
+        });
+        assertEquals(2, mPackets.size());
+        assertEquals(PacketId.RESPBATTERYVOLTAGE, mPackets.get(0).getPacketID());
+        assertEquals(PacketId.REQVERSION, mPackets.get(1).getPacketID());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void decodeAll_queriesTheV1TypeForEveryFrameInAnArray() {
+        final DeviceId [] v1Type = {DeviceId.UNKNOWN_DEVICE};
+        byte [] data = spp(batteryVoltageFromV1(), new RequestVersion(V1, V1).getPacketData());
+        mDecoder.decodeAll(data, 0, data.length, () -> v1Type[0], packet -> {
+            mPackets.add(packet);
+            v1Type[0] = packet.getValentineType();
+        });
+        assertEquals(2, mPackets.size());
+        assertEquals(PacketId.REQVERSION, mPackets.get(1).getPacketID());
+    }
+
+    @Test
+    public void decodeAll_dropsFramesWithABadChecksum() {
+        byte [] data = spp(new RequestVersion(V1, V1).getPacketData(), new RequestBatteryVoltage(V1).getPacketData());
+        // Corrupt the SPP checksum of the first frame, the byte in front of its closing delimiter.
+        int firstClose = 1;
+        while (data[firstClose] != PacketUtils.SPP_PACKET_DELIMITER_BYTE) {
+            firstClose++;
+        }
+        data[firstClose - 1] ^= 0x01;
+        mDecoder.decodeAll(data, 0, data.length, () -> V1, mPackets::add);
+        assertEquals(1, mPackets.size());
+        assertEquals(PacketId.REQBATTERYVOLTAGE, mPackets.get(0).getPacketID());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.packets;
+
+import com.esplibrary.bluetooth.BTUtil;
+import com.esplibrary.constants.DeviceId;
+import com.esplibrary.packets.request.RequestVersion;
+import com.esplibrary.packets.request.RequestWriteUserBytes;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SPPFrameEncoderTest {
+
+    private final static DeviceId V1 = DeviceId.VALENTINE_ONE;
+
+    /**
+     * User bytes containing both bytes that must be escaped.
+     */
+    private final static byte [] ESCAPED_USER_BYTES = new byte [] {0x7F, 0x7D, 0x01, 0x7F, 0x7D, 0x00};
+
+    private static byte [] encoded(SPPFrameEncoder encoder) {
+        return Arrays.copyOf(encoder.getBuffer(), encoder.length());
+    }
+
+    @Test
+    public void encode_matchesDelimitingThenEscaping() {
+        byte [] frame = new RequestWriteUserBytes(V1, ESCAPED_USER_BYTES).getPacketData();
+        SPPFrameEncoder encoder = new SPPFrameEncoder();
+        int length = encoder.encode(frame);
+        byte [] expected = BTUtil.escapeV1cData(BTUtil.getV1cDelimitedData(frame));
+        assertEquals(expected.length, length);
+        assertArrayEquals(expected, encoded(encoder));
+    }
+
+    @Test
+    public void encode_roundTripsThroughTheDecoder() {
+        byte [] first = new RequestWriteUserBytes(V1, ESCAPED_USER_BYTES).getPacketData();
+        byte [] second = new RequestVersion(V1, V1).getPacketData();
+        SPPFrameEncoder encoder = new SPPFrameEncoder();
+        encoder.encode(first);
+        encoder.encode(second);
+
+        List<ESPPacket> packets = new ArrayList<>();
+        new SPPFrameDecoder(new PacketFactory()).decodeAll(encoder.getBuffer(), 0, encoder.length(), () -> V1, packets::add);
+        assertEquals(2, packets.size());
+        assertArrayEquals(first, packets.get(0).getPacketData());
+        assertArrayEquals(second, packets.get(1).getPacketData());
+    }
+
+    @Test
+    public void encode_growsTheBufferForLargeBatches() {
+        byte [] frame = new RequestWriteUserBytes(V1, ESCAPED_USER_BYTES).getPacketData();
+        byte [] single = BTUtil.escapeV1cData(BTUtil.getV1cDelimitedData(frame));
+        SPPFrameEncoder encoder = new SPPFrameEncoder();
+        for (int i = 0; i < 20; i++) {
+            encoder.encode(frame);
+        }
+        assertEquals(single.length * 20, encoder.length());
+        assertArrayEquals(single, Arrays.copyOfRange(encoder.getBuffer(), single.length * 19, single.length * 20));
+    }
+
+    @Test
+    public void writeTo_emptiesTheBuffer() throws IOException {
+        SPPFrameEncoder encoder = new SPPFrameEncoder();
+        encoder.encode(new RequestVersion(V1, V1));
+        byte [] expected = encoded(encoder);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeTo(out);
+        assertArrayEquals(expected, out.toByteArray());
+        assertEquals(0, encoder.length());
+        encoder.writeTo(out);
+        assertEquals(expected.length, out.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_rejectsInvalidRange() {
+        new SPPFrameEncoder().encode(new byte[4], 2, 3);
+    }
+}
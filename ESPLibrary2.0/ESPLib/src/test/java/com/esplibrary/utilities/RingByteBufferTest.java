@@ -0,0 +1,116 @@
+/*
+ * Copyright(c) 2016 Valentine Research, Inc
+ * This file is part of the ESP Library, which is licensed under the MIT license.
+ * You should have received a copy of the MIT license along with this file. If not, see http://opensource.org/licenses/MIT
+ */
+package com.esplibrary.utilities;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RingByteBufferTest {
+
+    private static byte [] bytes(int... values) {
+        byte [] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+        return data;
+    }
+
+    @Test
+    public void writeAndRead_wrapAroundTheBackingArray() {
+        RingByteBuffer buffer = new RingByteBuffer(4, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        assertTrue(buffer.write(bytes(1, 2, 3)));
+        assertEquals(1, buffer.read());
+        assertEquals(2, buffer.read());
+        // The tail wraps around to the start of the backing array.
+        assertTrue(buffer.write(bytes(4, 5, 6)));
+        assertTrue(buffer.isFull());
+        assertEquals(5, buffer.get(2));
+
+        byte [] dest = new byte[4];
+        assertEquals(4, buffer.read(dest, 0, 4));
+        assertArrayEquals(bytes(3, 4, 5, 6), dest);
+        assertTrue(buffer.isEmpty());
+        assertEquals(-1, buffer.read());
+    }
+
+    @Test
+    public void peekAndSkip_consumeOnlyOnSkip() {
+        RingByteBuffer buffer = new RingByteBuffer(8, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        buffer.write(bytes(1, 2, 3, 4));
+        byte [] dest = new byte[2];
+        assertEquals(2, buffer.peek(dest, 0, 2));
+        assertArrayEquals(bytes(1, 2), dest);
+        assertEquals(4, buffer.size());
+        assertEquals(2, buffer.skip(2));
+        assertArrayEquals(bytes(3, 4), buffer.toByteArray());
+        assertEquals(2, buffer.skip(10));
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void write_dropOldestKeepsTheNewestBytes() {
+        RingByteBuffer buffer = new RingByteBuffer(4, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        buffer.write(bytes(1, 2, 3));
+        assertFalse(buffer.write(bytes(4, 5)));
+        assertArrayEquals(bytes(2, 3, 4, 5), buffer.toByteArray());
+        // A write larger than the capacity keeps its last bytes.
+        assertFalse(buffer.write(bytes(6, 7, 8, 9, 10, 11)));
+        assertArrayEquals(bytes(8, 9, 10, 11), buffer.toByteArray());
+    }
+
+    @Test
+    public void write_signalMalformedRejectsTheNewBytes() {
+        RingByteBuffer buffer = new RingByteBuffer(4, RingByteBuffer.OverflowPolicy.SIGNAL_MALFORMED);
+        buffer.write(bytes(1, 2, 3));
+        assertFalse(buffer.write(bytes(4, 5)));
+        assertArrayEquals(bytes(1, 2, 3), buffer.toByteArray());
+
+        buffer.setOverflowPolicy(RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        assertFalse(buffer.write(bytes(4, 5)));
+        assertArrayEquals(bytes(2, 3, 4, 5), buffer.toByteArray());
+    }
+
+    @Test
+    public void readFrom_fillsTheFreeSpaceInContiguousChunks() throws IOException {
+        RingByteBuffer buffer = new RingByteBuffer(4, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        buffer.write(bytes(1, 2, 3));
+        buffer.skip(2);
+        ByteArrayInputStream input = new ByteArrayInputStream(bytes(4, 5, 6, 7));
+        // Only the bytes up to the end of the backing array are read at first.
+        assertEquals(1, buffer.readFrom(input));
+        assertEquals(2, buffer.readFrom(input));
+        assertArrayEquals(bytes(3, 4, 5, 6), buffer.toByteArray());
+        // The buffer is full so the oldest bytes are dropped to make room.
+        assertEquals(1, buffer.readFrom(input));
+        assertEquals(7, buffer.get(buffer.size() - 1));
+        assertEquals(-1, buffer.readFrom(input));
+    }
+
+    @Test
+    public void readFrom_dropsOnlyAsManyBytesAsAreReadWhenFull() throws IOException {
+        RingByteBuffer buffer = new RingByteBuffer(4, RingByteBuffer.OverflowPolicy.DROP_OLDEST);
+        buffer.write(bytes(1, 2, 3, 4));
+        assertEquals(1, buffer.readFrom(new ByteArrayInputStream(bytes(5))));
+        assertArrayEquals(bytes(2, 3, 4, 5), buffer.toByteArray());
+        assertEquals(2, buffer.readFrom(new ByteArrayInputStream(bytes(6, 7))));
+        assertArrayEquals(bytes(4, 5, 6, 7), buffer.toByteArray());
+    }
+
+    @Test
+    public void readFrom_signalMalformedReadsNothingWhenFull() throws IOException {
+        RingByteBuffer buffer = new RingByteBuffer(2, RingByteBuffer.OverflowPolicy.SIGNAL_MALFORMED);
+        buffer.write(bytes(1, 2));
+        assertEquals(0, buffer.readFrom(new ByteArrayInputStream(bytes(3))));
+        assertArrayEquals(bytes(1, 2), buffer.toByteArray());
+    }
+}